@@ -0,0 +1,195 @@
+package com.matthewn4444.voiceautomation;
+
+import android.content.Context;
+import android.os.Debug;
+import android.test.InstrumentationTestCase;
+
+import com.matthewn4444.voiceautomation.lights.LightsSpeechCategory;
+import com.matthewn4444.voiceautomation.speech.TextHypothesis;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the objects the main thread allocates while a category gets the same partial result
+ * again and again, which is most of what happens while a command is being said. Needs the
+ * microphone permission granted to the app before it runs.
+ */
+public class PartialResultAllocationTest extends InstrumentationTestCase {
+    private static final long READY_TIMEOUT = 60;
+    private static final int WARMUP_PARTIALS = 10;
+    private static final int COUNTED_PARTIALS = 100;
+
+    // Start of a lights command that is not a command by itself
+    private static final String PARTIAL_TEXT = "turn";
+
+    private SpeechController mController;
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (mController != null) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mController.shutdown();
+                }
+            });
+        }
+        super.tearDown();
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testSteadyPartialResultsDoNotAllocate() throws Exception {
+        final Context ctx = getInstrumentation().getTargetContext();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final LightsSpeechCategory[] category = new LightsSpeechCategory[1];
+        final Exception[] error = new Exception[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                category[0] = new AvailableLightsCategory(ctx);
+                HashMap<String, SpeechCategory> categories = new HashMap<>();
+                categories.put(category[0].getActivationCommand(), category[0]);
+                mController = new SpeechController(ctx, categories);
+                mController.setSpeechListener(new QuietListener() {
+                    @Override
+                    public void onSpeechReady() {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onSpeechError(Exception e) {
+                        error[0] = e;
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue("Speech was not ready in " + READY_TIMEOUT + "s",
+                latch.await(READY_TIMEOUT, TimeUnit.SECONDS));
+        if (error[0] != null) {
+            throw error[0];
+        }
+
+        // Everything runs in one pass on the main thread so no result from the microphone comes
+        // in between
+        final int[] allocations = new int[1];
+        final SpeechController.State[] state = new SpeechController.State[1];
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // Listen like the activity does, then say the category's keyword
+                mController.resume();
+                TextHypothesis hypothesis = new TextHypothesis();
+                hypothesis.set(category[0].getActivationCommand(), 0);
+                mController.onPartialResult(hypothesis);
+
+                hypothesis.set(PARTIAL_TEXT, 0);
+                for (int i = 0; i < WARMUP_PARTIALS; i++) {
+                    mController.onPartialResult(hypothesis);
+                }
+                Debug.startAllocCounting();
+                Debug.resetThreadAllocCount();
+                for (int i = 0; i < COUNTED_PARTIALS; i++) {
+                    mController.onPartialResult(hypothesis);
+                }
+                allocations[0] = Debug.getThreadAllocCount();
+                Debug.stopAllocCounting();
+                state[0] = mController.getState();
+            }
+        });
+        assertEquals(SpeechController.State.CATEGORY, state[0]);
+        assertEquals("Objects allocated by " + COUNTED_PARTIALS + " partial results", 0, allocations[0]);
+    }
+
+    /**
+     * Lights category that is always available with lights that are never connected, only the
+     * category's grammar is needed
+     */
+    private static class AvailableLightsCategory extends LightsSpeechCategory {
+        AvailableLightsCategory(Context ctx) {
+            super(ctx, new NoLightController());
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+
+    private static class NoLightController implements LightsSpeechCategory.ILightController {
+        @Override
+        public boolean isAvailable() {
+            return false;
+        }
+
+        @Override
+        public boolean isOn() {
+            return false;
+        }
+
+        @Override
+        public void setBrightnessPercentage(int percentage) {
+        }
+
+        @Override
+        public void setBrightnessPercentage(int percentage, int duration) {
+        }
+
+        @Override
+        public int getBrightnessPercentage() {
+            return 0;
+        }
+
+        @Override
+        public void turnOff() {
+        }
+
+        @Override
+        public void turnOn() {
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void setOnConnectionChangedListener(OnConnectionChangedListener listener) {
+        }
+    }
+
+    private static class QuietListener implements SpeechController.SpeechListener {
+        @Override
+        public void onSpeechReady() {
+        }
+
+        @Override
+        public void onSpeechError(Exception e) {
+        }
+
+        @Override
+        public void onBeginSpeechCategory(SpeechCategory category) {
+        }
+
+        @Override
+        public void onPartialResult(String text) {
+        }
+
+        @Override
+        public void onSpeechResult(String text) {
+        }
+
+        @Override
+        public void onLock(boolean isLocked) {
+        }
+
+        @Override
+        public void onCategoryUnavailable(SpeechCategory category) {
+        }
+    }
+}
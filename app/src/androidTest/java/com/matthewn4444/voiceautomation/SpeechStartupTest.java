@@ -0,0 +1,158 @@
+package com.matthewn4444.voiceautomation;
+
+import android.content.Context;
+import android.test.InstrumentationTestCase;
+
+import com.matthewn4444.voiceautomation.lights.LightsSpeechCategory;
+import com.matthewn4444.voiceautomation.music.MusicSpeechCategory;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guards the time from creating a SpeechController till onSpeechReady with the lights and music
+ * categories, so their grammars are loaded and expanded like in the app. The first controller
+ * loads everything, the second continues with the recognizer the first one left in SpeechEngine.
+ * Needs the microphone and storage permissions granted to the app before it runs.
+ */
+public class SpeechStartupTest extends InstrumentationTestCase {
+    // Raise these only when a slower startup is expected, includes timing the decoder profiles
+    private static final long COLD_START_BUDGET = 8000;
+    private static final long WARM_START_BUDGET = 1500;
+
+    private static final long READY_TIMEOUT = 60;
+
+    // Name of the startup stage that loads the grammars, see SpeechController
+    private static final String SEARCHES_STAGE = "searches";
+
+    public void testTimeToReady() throws Exception {
+        assertStartsWithin("Cold", COLD_START_BUDGET);
+        assertStartsWithin("Warm", WARM_START_BUDGET);
+    }
+
+    /**
+     * Starts a controller, checks the time it took to be ready and shuts it down
+     * @param name name of the start in the failure message
+     * @param budget milliseconds the controller has to be ready
+     */
+    private void assertStartsWithin(String name, long budget) throws Exception {
+        final Context ctx = getInstrumentation().getTargetContext();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final SpeechController[] controller = new SpeechController[1];
+        final Exception[] error = new Exception[1];
+
+        // The controller and its listener run on the main thread like in the activity
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                HashMap<String, SpeechCategory> categories = new HashMap<>();
+                addCategory(categories, new LightsSpeechCategory(ctx, new NoLightController()));
+                addCategory(categories, new MusicSpeechCategory(ctx));
+                controller[0] = new SpeechController(ctx, categories);
+                controller[0].setSpeechListener(new SpeechController.SpeechListener() {
+                    @Override
+                    public void onSpeechReady() {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onSpeechError(Exception e) {
+                        error[0] = e;
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onBeginSpeechCategory(SpeechCategory category) {
+                    }
+
+                    @Override
+                    public void onPartialResult(String text) {
+                    }
+
+                    @Override
+                    public void onSpeechResult(String text) {
+                    }
+
+                    @Override
+                    public void onLock(boolean isLocked) {
+                    }
+
+                    @Override
+                    public void onCategoryUnavailable(SpeechCategory category) {
+                    }
+                });
+            }
+        });
+        try {
+            assertTrue("Speech was not ready in " + READY_TIMEOUT + "s",
+                    latch.await(READY_TIMEOUT, TimeUnit.SECONDS));
+            if (error[0] != null) {
+                throw error[0];
+            }
+            long time = controller[0].getTimeToReady();
+            long searchesTime = controller[0].getStartupPipeline().getStageTime(SEARCHES_STAGE);
+            assertTrue(name + " start took " + time + "ms with " + searchesTime
+                    + "ms loading searches, budget is " + budget + "ms", time <= budget);
+        } finally {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    controller[0].shutdown();
+                }
+            });
+        }
+    }
+
+    private static void addCategory(HashMap<String, SpeechCategory> categories, SpeechCategory category) {
+        categories.put(category.getActivationCommand(), category);
+    }
+
+    /**
+     * Lights that are never connected, only the category's grammar is needed
+     */
+    private static class NoLightController implements LightsSpeechCategory.ILightController {
+        @Override
+        public boolean isAvailable() {
+            return false;
+        }
+
+        @Override
+        public boolean isOn() {
+            return false;
+        }
+
+        @Override
+        public void setBrightnessPercentage(int percentage) {
+        }
+
+        @Override
+        public void setBrightnessPercentage(int percentage, int duration) {
+        }
+
+        @Override
+        public int getBrightnessPercentage() {
+            return 0;
+        }
+
+        @Override
+        public void turnOff() {
+        }
+
+        @Override
+        public void turnOn() {
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public void setOnConnectionChangedListener(OnConnectionChangedListener listener) {
+        }
+    }
+}
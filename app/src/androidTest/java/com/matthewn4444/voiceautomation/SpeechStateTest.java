@@ -0,0 +1,50 @@
+package com.matthewn4444.voiceautomation;
+
+import com.matthewn4444.voiceautomation.SpeechController.State;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the transition table of the speech controller's state machine against the transitions
+ * the controller makes.
+ */
+public class SpeechStateTest extends TestCase {
+    public void testListeningStatesRestart() {
+        assertTrue(State.KWS.canEnter(State.KWS));
+        assertTrue(State.LOCKED.canEnter(State.LOCKED));
+        assertTrue(State.PAUSED.canEnter(State.PAUSED));
+        assertFalse(State.CATEGORY.canEnter(State.CATEGORY));
+    }
+
+    public void testCategoryOnlyEnteredFromKeyword() {
+        for (State state : State.values()) {
+            assertEquals(state.toString(), state == State.KWS, state.canEnter(State.CATEGORY));
+        }
+    }
+
+    public void testCategoryEndsInKeyword() {
+        assertTrue(State.CATEGORY.canEnter(State.KWS));
+        assertTrue(State.CATEGORY.canEnter(State.PAUSED));
+        assertFalse(State.CATEGORY.canEnter(State.LOCKED));
+    }
+
+    public void testLockAndUnlock() {
+        assertTrue(State.KWS.canEnter(State.LOCKED));
+        assertTrue(State.LOCKED.canEnter(State.KWS));
+    }
+
+    public void testPauseAndResume() {
+        for (State state : State.values()) {
+            assertEquals(state.toString(), state != State.SHUTDOWN, state.canEnter(State.PAUSED));
+        }
+        assertTrue(State.PAUSED.canEnter(State.KWS));
+        assertTrue(State.PAUSED.canEnter(State.LOCKED));
+    }
+
+    public void testShutdownIsFinal() {
+        for (State state : State.values()) {
+            assertEquals(state.toString(), state != State.SHUTDOWN, state.canEnter(State.SHUTDOWN));
+            assertFalse(state.toString(), State.SHUTDOWN.canEnter(state));
+        }
+    }
+}
@@ -0,0 +1,4 @@
+# Keyword detection thresholds per phrase, generate with the benchmark module's ThresholdTuner.
+# Phrases not listed here use the thresholds defined in code.
+@format 1
+@revision 0
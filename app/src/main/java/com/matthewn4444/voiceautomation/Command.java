@@ -1,10 +1,16 @@
 package com.matthewn4444.voiceautomation;
 
+import java.util.Collection;
+
 public class Command {
     public final static String DefaultThreshold = "1e-1";
 
+    // Time after a quick command runs that hearing it again does not run it again
+    public final static int DefaultDebounceTime = 3000;
+
     private String mCommand;
     private String mThreshold;
+    private int mDebounceTime = DefaultDebounceTime;
 
     public Command(String command) {
         this(command, DefaultThreshold);
@@ -14,6 +20,19 @@ public class Command {
         setThreshold(threshold);
     }
 
+    /**
+     * @param phrases phrases to detect with the default threshold
+     * @return a command for each phrase
+     */
+    public static Command[] fromPhrases(Collection<String> phrases) {
+        Command[] commands = new Command[phrases.size()];
+        int i = 0;
+        for (String phrase : phrases) {
+            commands[i++] = new Command(phrase);
+        }
+        return commands;
+    }
+
     public void setCommand(String command) {
         mCommand = command;
     }
@@ -30,6 +49,14 @@ public class Command {
         return mThreshold;
     }
 
+    public void setDebounceTime(int debounceTime) {
+        mDebounceTime = debounceTime;
+    }
+
+    public int getDebounceTime() {
+        return mDebounceTime;
+    }
+
     public String getGrammerLine() {
         return mCommand + " /" + mThreshold + "/";
     }
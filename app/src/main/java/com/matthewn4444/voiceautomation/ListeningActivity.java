@@ -2,21 +2,23 @@ package com.matthewn4444.voiceautomation;
 
 import android.Manifest;
 import android.app.AlertDialog;
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.os.PowerManager;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.view.WindowManager;
 
-import com.matthewn4444.voiceautomation.lights.LightsAutomator;
-import com.matthewn4444.voiceautomation.lights.LightsSpeechCategory;
-import com.matthewn4444.voiceautomation.music.MusicSpeechCategory;
 import com.matthewn4444.voiceautomation.settings.Settings;
 
 import java.util.ArrayList;
@@ -35,27 +37,39 @@ public class ListeningActivity extends AppCompatActivity implements
     };
 
     private UIPresenter mPresenter;
-    private HashMap<String, SpeechCategory> mCategories = new HashMap<>();
-    private SpeechController mController;
-    private LightsAutomator mLightAutomator;
-    private MusicSpeechCategory mMusicController;
+    private ListeningService mService;
+    private boolean mResumed;
 
     // Track settings so we know what changed
-    private boolean mEnableLights;
     private int mSettingsLastSunsetSteps;
-    private String mLifxRemoteToken;
+
+    // The service owns the controller and categories so listening continues without this activity
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            mService = ((ListeningService.LocalBinder) binder).getService();
+            mService.setSpeechListener(mPresenter);
+            mPresenter.speechHasReset(mService.getCategories());
+            if (mResumed) {
+                mService.onActivityShown();
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mService = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_listening);
-        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
 
         findViewById(SettingsButtonId).setOnClickListener(this);
-        mPresenter = new UIPresenter(this, mCategories);
+        mPresenter = new UIPresenter(this, new HashMap<String, SpeechCategory>());
         checkForPermissions();
-
-        mLifxRemoteToken = LazyPref.getString(this, R.string.settings_general_light_lifx_remote_token_key);
+        bindService(new Intent(this, ListeningService.class), mConnection, Context.BIND_AUTO_CREATE);
     }
 
     @Override
@@ -68,25 +82,31 @@ public class ListeningActivity extends AppCompatActivity implements
 
     @Override
     protected void onPause() {
-        if (mController != null) {
-            mController.pause(true);
-        }
-        if (mLightAutomator != null) {
-            mLightAutomator.onPause();
-        }
+        mResumed = false;
         if (mPresenter != null) {
             mPresenter.onPause();
             mPresenter.immediatelyHideCategory();
         }
-        for (String key: mCategories.keySet()) {
-            mCategories.get(key).pause();
+
+        // Covered by another activity it keeps listening at full power till it is stopped
+        if (mService != null && !isScreenOn()) {
+            mService.onActivityHidden();
         }
         super.onPause();
     }
 
+    @Override
+    protected void onStop() {
+        if (mService != null) {
+            mService.onActivityHidden();
+        }
+        super.onStop();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
+        mResumed = true;
 
         // Add immersive mode
         int uiOptions = getWindow().getDecorView().getSystemUiVisibility();
@@ -98,26 +118,31 @@ public class ListeningActivity extends AppCompatActivity implements
         }
         getWindow().getDecorView().setSystemUiVisibility(uiOptions);
 
-        if (mLightAutomator != null) {
-            mLightAutomator.onResume();
+        // Listening continues with the screen off when it is allowed to sleep
+        if (LazyPref.getBool(this, R.string.settings_speech_listen_screen_off_key)) {
+            getWindow().clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        } else {
+            getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
         }
+
         if (mPresenter != null) {
             mPresenter.onResume();
         }
-        if (mController != null) {
-            mController.resume();
-        }
-        for (String key: mCategories.keySet()) {
-            mCategories.get(key).resume();
+        if (mService != null) {
+            mService.onActivityShown();
         }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (mController != null) {
-            mController.shutdown();
+
+        // Listening only continues if the service was started to listen in the background
+        if (mService != null) {
+            mService.setSpeechListener(null);
         }
+        mPresenter.release();
+        unbindService(mConnection);
     }
 
     @Override
@@ -137,86 +162,18 @@ public class ListeningActivity extends AppCompatActivity implements
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
             super.onActivityResult(requestCode, resultCode, data);
 
-        if (requestCode == REQUEST_CODE_SETTINGS) {
-            // Check if any of the speech categories has changed their commands
-            boolean speechControllerNeedsReset = false;
-            for (String key : mCategories.keySet()) {
-                SpeechCategory cate = mCategories.get(key);
-                String oldCommand = cate.getActivationCommand();
-                if (cate.updateAndHasActivationCommand()) {
-                    // Since the command changed, change the key to the new command
-                    mCategories.remove(oldCommand);
-                    mCategories.put(cate.getActivationCommand(), cate);
-                    speechControllerNeedsReset = true;
-                }
-            }
-
-            // Check if user has enabled/disabled lights
-            String newToken = LazyPref.getString(this, R.string.settings_general_light_lifx_remote_token_key);
-            boolean newEnableLights = LightsSpeechCategory.areLightsEnabled(this);
-            if (newEnableLights != mEnableLights || (newToken != null && !newToken.equals(mLifxRemoteToken))) {
-                if (newEnableLights && newToken != null) {      // Temp till local is hacked
-                    // Just enabled the lights
-                    mLightAutomator = new LightsAutomator(this);
-
-                    // TODO this is a temp thing, make this smarter, wrap each category to control settings
-                    addCategory(new LightsSpeechCategory(this, mLightAutomator.getLightController()));
-                } else {
-                    // Just disabled the lights
-                    LightsAutomator.cancelAutomator(this);
-                    mLightAutomator.getLightController().disconnect();
-                    mLightAutomator.onPause();
-                    mLightAutomator = null;
-
-                    // TODO make this smarter
-                    String lightsCommand = LazyPref.getStringDefaultRes(this,
-                            R.string.settings_general_light_activation_command_key,
-                            R.string.settings_default_activation_command_lights);
-                    mCategories.remove(lightsCommand);
-                }
-                speechControllerNeedsReset = true;
-                mEnableLights = newEnableLights;
-            }
-
-            if (mLightAutomator != null) {
-                // Check for changes in Sunset Automation Steps, then we need to reset the scheduling
-                int newSunsetSteps = LazyPref.getIntDefaultRes(this,
-                        R.string.setting_light_auto_sunset_automation_step_key,
-                        R.integer.settings_default_sunset_automation_step);
-                if (newSunsetSteps != mSettingsLastSunsetSteps) {
-                    mLightAutomator.reschedule();
-                }
-            }
-
-            if (speechControllerNeedsReset) {
-                setupCategories();
-                setupSpeechController();
+        if (requestCode == REQUEST_CODE_SETTINGS && mService != null) {
+            if (mService.applySettings(mSettingsLastSunsetSteps)) {
+                mPresenter.speechHasReset(mService.getCategories());
             }
         }
     }
 
     @Override
     public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
-        setupCategories();
-        setupSpeechController();
-    }
-
-    private void setupLights() {
-        if (hasPermission(Manifest.permission.ACCESS_COARSE_LOCATION)) {
-            mEnableLights = LightsSpeechCategory.areLightsEnabled(this);
-            if (mEnableLights && mLightAutomator == null) {
-                mLightAutomator = new LightsAutomator(this);
-                addCategory(new LightsSpeechCategory(this, mLightAutomator.getLightController()));
-            }
-        }
-    }
-
-    private void setupMusic() {
-        if (hasPermission(Manifest.permission.READ_EXTERNAL_STORAGE)) {
-            if (mMusicController == null) {
-                mMusicController = new MusicSpeechCategory(this);
-                addCategory(mMusicController);
-            }
+        if (mService != null) {
+            mService.setupSpeech();
+            mPresenter.speechHasReset(mService.getCategories());
         }
     }
 
@@ -244,31 +201,18 @@ public class ListeningActivity extends AppCompatActivity implements
                 ActivityCompat.requestPermissions(this, requestPermissions.toArray(new String[requestPermissions.size()]), 1);
             }
         }
-        setupCategories();
-        setupSpeechController();
     }
 
-    private void setupSpeechController() {
-        mPresenter.speechHasReset(mCategories);
-        if (hasPermission(Manifest.permission.RECORD_AUDIO)) {
-            if (mController != null) {
-                mController.shutdown();
-            }
-            mController = new SpeechController(this, mCategories);
-            mController.setSpeechListener(mPresenter);
+    @SuppressWarnings("deprecation")
+    private boolean isScreenOn() {
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (Build.VERSION.SDK_INT >= 20) {
+            return pm.isInteractive();
         }
-    }
-
-    private void setupCategories() {
-        setupLights();
-        setupMusic();
+        return pm.isScreenOn();
     }
 
     private boolean hasPermission(String permission) {
         return ContextCompat.checkSelfPermission(this, permission) == PackageManager.PERMISSION_GRANTED;
     }
-
-    private void addCategory(SpeechCategory category) {
-        mCategories.put(category.getActivationCommand(), category);
-    }
 }
@@ -0,0 +1,393 @@
+package com.matthewn4444.voiceautomation;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.os.BatteryManager;
+import android.os.Binder;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import com.matthewn4444.voiceautomation.lights.LightsAutomator;
+import com.matthewn4444.voiceautomation.lights.LightsSpeechCategory;
+import com.matthewn4444.voiceautomation.music.MusicSpeechCategory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Owns the speech controller and its categories so listening outlives ListeningActivity, which
+ * binds to it to show the categories. When the activity is stopped or the screen turns off and
+ * listening with the screen off is allowed, the service is started in the foreground, keeps the
+ * processor awake and the controller listens in low power. It is sticky, if the system kills it
+ * the categories are set up again and listening continues without the activity. The notification
+ * shows how much battery listening costs per hour, measured from the battery level since the
+ * device was last unplugged.
+ */
+public class ListeningService extends Service {
+    private static final String TAG = "ListeningService";
+    private static final int NotificationId = 1;
+    private static final long UpdateIntervalMs = 5 * 60 * 1000;        // 5 minutes
+    private static final long MinMeasureTimeMs = 30 * 60 * 1000;       // 30 minutes
+
+    private final Handler mHandler = new Handler();
+    private final IBinder mBinder = new LocalBinder();
+    private final HashMap<String, SpeechCategory> mCategories = new HashMap<>();
+    private PowerManager.WakeLock mWakeLock;
+    private float mStartBatteryPercent = -1;
+    private long mStartTime;
+
+    private SpeechController mController;
+    private SpeechController.SpeechListener mSpeechListener;
+    private LightsAutomator mLightAutomator;
+    private MusicSpeechCategory mMusicController;
+    private boolean mInBackground;
+    private boolean mActivityVisible;
+
+    // Track settings so we know what changed
+    private boolean mEnableLights;
+    private String mLifxRemoteToken;
+
+    private final Runnable mUpdateRunnable = new Runnable() {
+        @Override
+        public void run() {
+            updateNotification();
+            mHandler.postDelayed(this, UpdateIntervalMs);
+        }
+    };
+
+    /**
+     * Binder given to ListeningActivity, it runs in the same process
+     */
+    class LocalBinder extends Binder {
+        ListeningService getService() {
+            return ListeningService.this;
+        }
+    }
+
+    /**
+     * Starts listening in the background
+     * @param ctx Context
+     */
+    static void start(Context ctx) {
+        ctx.startService(new Intent(ctx, ListeningService.class));
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        mWakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, TAG);
+        mLifxRemoteToken = LazyPref.getString(this, R.string.settings_general_light_lifx_remote_token_key);
+        setupSpeech();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Also called without an intent when the system restarts the service after killing it
+        if (mController == null || mActivityVisible
+                || !LazyPref.getBool(this, R.string.settings_speech_listen_screen_off_key)) {
+            stopSelf();
+            return START_NOT_STICKY;
+        }
+        enterBackground();
+        return START_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (mController != null) {
+            mController.shutdown();
+            mController = null;
+        }
+        leaveBackground();
+        if (mLightAutomator != null) {
+            mLightAutomator.onPause();
+        }
+        for (SpeechCategory category : mCategories.values()) {
+            category.pause();
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    /**
+     * @return the categories, changed by the service when the settings or permissions change
+     */
+    HashMap<String, SpeechCategory> getCategories() {
+        return mCategories;
+    }
+
+    /**
+     * @param listener listener of the controller, null when the activity is gone
+     */
+    void setSpeechListener(SpeechController.SpeechListener listener) {
+        mSpeechListener = listener;
+        if (mController != null) {
+            mController.setSpeechListener(listener);
+        }
+    }
+
+    /**
+     * The activity is shown, listening goes back to full power
+     */
+    void onActivityShown() {
+        if (mActivityVisible) {
+            return;
+        }
+        mActivityVisible = true;
+        if (mLightAutomator != null) {
+            mLightAutomator.onResume();
+        }
+        if (mInBackground) {
+            leaveBackground();
+            stopSelf();
+        } else {
+            if (mController != null) {
+                mController.resume();
+            }
+            for (SpeechCategory category : mCategories.values()) {
+                category.resume();
+            }
+        }
+    }
+
+    /**
+     * The activity stopped or the screen turned off, keeps listening in the background if the
+     * settings allow it and pauses otherwise
+     */
+    void onActivityHidden() {
+        if (!mActivityVisible) {
+            return;
+        }
+        mActivityVisible = false;
+        if (mLightAutomator != null) {
+            mLightAutomator.onPause();
+        }
+        if (mController != null && LazyPref.getBool(this, R.string.settings_speech_listen_screen_off_key)) {
+            // Keep listening for every command with the categories still connected
+            start(this);
+        } else {
+            if (mController != null) {
+                mController.pause(true);
+            }
+            for (SpeechCategory category : mCategories.values()) {
+                category.pause();
+            }
+        }
+    }
+
+    /**
+     * Sets up the categories and the controller allowed by the permissions granted so far
+     */
+    void setupSpeech() {
+        setupLights();
+        setupMusic();
+        setupSpeechController();
+    }
+
+    /**
+     * Applies the settings changed in the settings screen to the categories and the controller
+     * @param lastSunsetSteps sunset automation steps before the settings screen was opened
+     * @return true if the categories changed
+     */
+    boolean applySettings(int lastSunsetSteps) {
+        // Check if any of the speech categories has changed their commands
+        boolean speechControllerNeedsReset = false;
+        for (SpeechCategory cate : new ArrayList<>(mCategories.values())) {
+            String oldCommand = cate.getActivationCommand();
+            if (cate.updateAndHasActivationCommand()) {
+                // Since the command changed, change the key to the new command
+                mCategories.remove(oldCommand);
+                mCategories.put(cate.getActivationCommand(), cate);
+                speechControllerNeedsReset = true;
+            }
+        }
+
+        // Check if user has enabled/disabled lights
+        String newToken = LazyPref.getString(this, R.string.settings_general_light_lifx_remote_token_key);
+        boolean newEnableLights = LightsSpeechCategory.areLightsEnabled(this);
+        if (newEnableLights != mEnableLights || (newToken != null && !newToken.equals(mLifxRemoteToken))) {
+            if (newEnableLights && newToken != null) {      // Temp till local is hacked
+                // Just enabled the lights
+                mLightAutomator = new LightsAutomator(this);
+
+                // TODO this is a temp thing, make this smarter, wrap each category to control settings
+                addCategory(new LightsSpeechCategory(this, mLightAutomator.getLightController()));
+            } else {
+                // Just disabled the lights
+                LightsAutomator.cancelAutomator(this);
+                mLightAutomator.getLightController().disconnect();
+                mLightAutomator.onPause();
+                mLightAutomator = null;
+
+                // TODO make this smarter
+                String lightsCommand = LazyPref.getStringDefaultRes(this,
+                        R.string.settings_general_light_activation_command_key,
+                        R.string.settings_default_activation_command_lights);
+                mCategories.remove(lightsCommand);
+            }
+            speechControllerNeedsReset = true;
+            mEnableLights = newEnableLights;
+        }
+
+        if (mLightAutomator != null) {
+            // Check for changes in Sunset Automation Steps, then we need to reset the scheduling
+            int newSunsetSteps = LazyPref.getIntDefaultRes(this,
+                    R.string.setting_light_auto_sunset_automation_step_key,
+                    R.integer.settings_default_sunset_automation_step);
+            if (newSunsetSteps != lastSunsetSteps) {
+                mLightAutomator.reschedule();
+            }
+        }
+
+        if (speechControllerNeedsReset) {
+            setupSpeech();
+        }
+        return speechControllerNeedsReset;
+    }
+
+    private void setupLights() {
+        if (hasPermission(Manifest.permission.ACCESS_COARSE_LOCATION)) {
+            mEnableLights = LightsSpeechCategory.areLightsEnabled(this);
+            if (mEnableLights && mLightAutomator == null) {
+                mLightAutomator = new LightsAutomator(this);
+                addCategory(new LightsSpeechCategory(this, mLightAutomator.getLightController()));
+            }
+        }
+    }
+
+    private void setupMusic() {
+        if (hasPermission(Manifest.permission.READ_EXTERNAL_STORAGE)) {
+            if (mMusicController == null) {
+                mMusicController = new MusicSpeechCategory(this);
+                addCategory(mMusicController);
+            }
+        }
+    }
+
+    private void setupSpeechController() {
+        if (hasPermission(Manifest.permission.RECORD_AUDIO)) {
+            if (mController != null) {
+                // Categories changed, only their searches need to be loaded into the recognizer
+                mController.updateCategories();
+            } else {
+                mController = new SpeechController(this, mCategories);
+                mController.setSpeechListener(mSpeechListener);
+            }
+        }
+    }
+
+    private boolean hasPermission(String permission) {
+        return ContextCompat.checkSelfPermission(this, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private void addCategory(SpeechCategory category) {
+        mCategories.put(category.getActivationCommand(), category);
+    }
+
+    private void enterBackground() {
+        if (mInBackground) {
+            return;
+        }
+        mInBackground = true;
+        mWakeLock.acquire();
+
+        // Reads the battery level listening starts from
+        getBatteryPercentPerHour();
+        startForeground(NotificationId, buildNotification(getString(R.string.notification_listening)));
+        mHandler.postDelayed(mUpdateRunnable, UpdateIntervalMs);
+        if (mController.getState() == SpeechController.State.PAUSED) {
+            // Restarted by the system or paused before listening in the background was allowed
+            mController.resume();
+            for (SpeechCategory category : mCategories.values()) {
+                category.resume();
+            }
+        }
+        mController.setLowPower(true);
+    }
+
+    private void leaveBackground() {
+        if (!mInBackground) {
+            return;
+        }
+        mInBackground = false;
+        mHandler.removeCallbacks(mUpdateRunnable);
+        float cost = getBatteryPercentPerHour();
+        if (cost >= 0) {
+            Log.i(TAG, "Listening used " + cost + "% battery per hour");
+        }
+        mStartBatteryPercent = -1;
+        stopForeground(true);
+        if (mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+        if (mController != null) {
+            mController.setLowPower(false);
+        }
+    }
+
+    private void updateNotification() {
+        float cost = getBatteryPercentPerHour();
+        String text = cost >= 0 ? getString(R.string.notification_listening_battery, cost)
+                : getString(R.string.notification_listening);
+        NotificationManagerCompat.from(this).notify(NotificationId, buildNotification(text));
+    }
+
+    private Notification buildNotification(String text) {
+        Intent intent = new Intent(this, ListeningActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        return new NotificationCompat.Builder(this)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText(text)
+                .setOngoing(true)
+                .setContentIntent(PendingIntent.getActivity(this, 0, intent, 0))
+                .build();
+    }
+
+    /**
+     * @return percent of the battery used per hour since listening started or the device was last
+     *         unplugged, -1 if it was not measured for long enough yet
+     */
+    private float getBatteryPercentPerHour() {
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return -1;
+        }
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        boolean plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        if (level < 0 || scale <= 0) {
+            return -1;
+        }
+        float percent = level * 100f / scale;
+        long now = SystemClock.elapsedRealtime();
+        if (plugged || mStartBatteryPercent < 0 || percent > mStartBatteryPercent) {
+            // Charging, measure again from the next time it runs on battery
+            mStartBatteryPercent = plugged ? -1 : percent;
+            mStartTime = now;
+            return -1;
+        }
+        long elapsed = now - mStartTime;
+        if (elapsed < MinMeasureTimeMs) {
+            return -1;
+        }
+        return (mStartBatteryPercent - percent) * 3600000f / elapsed;
+    }
+}
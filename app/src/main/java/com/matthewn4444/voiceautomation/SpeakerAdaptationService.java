@@ -0,0 +1,74 @@
+package com.matthewn4444.voiceautomation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.google.android.gms.gcm.GcmNetworkManager;
+import com.google.android.gms.gcm.GcmTaskService;
+import com.google.android.gms.gcm.OneoffTask;
+import com.google.android.gms.gcm.Task;
+import com.google.android.gms.gcm.TaskParams;
+import com.matthewn4444.voiceautomation.speech.SpeakerAdaptation;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.cmu.pocketsphinx.Assets;
+
+/**
+ * Adapts the acoustic model to the speakers once enough commands were accepted since it last ran.
+ * Estimating the transform decodes the recordings again so it waits for the device to charge, the
+ * new transform is loaded the next time speech starts.
+ */
+public class SpeakerAdaptationService extends GcmTaskService {
+    private static final String TAG = "SpeakerAdaptation";
+    private static final int CommandsPerUpdate = 50;
+    private static final long MinExecutionTimeSec = 0;
+    private static final long MaxExecutionTimeSec = 24 * 60 * 60;      // 1 day
+
+    /**
+     * Counts a command whose recording was marked as accepted and schedules the adaptation once
+     * there are enough new ones
+     * @param ctx Context
+     */
+    static void onCommandAccepted(Context ctx) {
+        SharedPreferences pref = PreferenceManager.getDefaultSharedPreferences(ctx);
+        String key = ctx.getString(R.string.settings_speech_adaptation_commands_key);
+        int commands = pref.getInt(key, 0) + 1;
+        pref.edit().putInt(key, commands).apply();
+        if (commands >= CommandsPerUpdate) {
+            OneoffTask task = new OneoffTask.Builder()
+                    .setService(SpeakerAdaptationService.class)
+                    .setExecutionWindow(MinExecutionTimeSec, MaxExecutionTimeSec)
+                    .setRequiredNetwork(Task.NETWORK_STATE_ANY)
+                    .setRequiresCharging(true)
+                    .setUpdateCurrent(true)
+                    .setTag(TAG)
+                    .build();
+            GcmNetworkManager.getInstance(ctx).schedule(task);
+        }
+    }
+
+    @Override
+    public int onRunTask(TaskParams taskParams) {
+        Context ctx = getApplicationContext();
+        try {
+            File assetsDir = new Assets(ctx).getExternalDir();
+            long start = System.currentTimeMillis();
+            File transform = SpeakerAdaptation.update(assetsDir, SpeechController.getUtteranceLogDir(ctx));
+            Log.i(TAG, (transform != null ? "Created " + transform.getName() : "Kept the current transform")
+                    + " in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot adapt to the speakers", e);
+            return GcmNetworkManager.RESULT_FAILURE;
+        }
+
+        // Wait for more commands either way, the same recordings would give the same transform
+        PreferenceManager.getDefaultSharedPreferences(ctx).edit()
+                .putInt(ctx.getString(R.string.settings_speech_adaptation_commands_key), 0)
+                .apply();
+        return GcmNetworkManager.RESULT_SUCCESS;
+    }
+}
@@ -8,6 +8,8 @@ import com.matthewn4444.voiceautomation.SpeechController.SpeechModel;
 
 public abstract class SpeechCategory {
     public final static int NO_PRIORITY = -1;
+    public final static float DEFAULT_ACCEPT_CONFIDENCE = 0.9f;
+    public final static float DEFAULT_REJECT_CONFIDENCE = 0.3f;
 
     private final Context mCtx;
     private final SpeechModel mModel;
@@ -71,10 +73,36 @@ public abstract class SpeechCategory {
         return mAssetsGrammerFile;
     }
 
+    /**
+     * Called for every partial result while this category is listening, which can be many times
+     * a second. The result object is reused between calls so change it in place, avoid
+     * allocating and do not keep a reference to it.
+     * @param result partial result to filter
+     * @return the result passed in
+     */
     public PartialReturnResult filterPartialResult(PartialReturnResult result) {
         return result;
     }
 
+    /**
+     * Results of this category's grammar that the decoder is at least this sure of are accepted
+     * without waiting for them to stay the same, see ResultConfidence. Grammars with many
+     * similar phrases score lower and should lower it.
+     * @return confidence from 0 to 1
+     */
+    public float getAcceptConfidence() {
+        return DEFAULT_ACCEPT_CONFIDENCE;
+    }
+
+    /**
+     * Results of this category's grammar that the decoder is less sure of than this are treated
+     * as noise
+     * @return confidence from 0 to 1
+     */
+    public float getRejectConfidence() {
+        return DEFAULT_REJECT_CONFIDENCE;
+    }
+
     public int getUIPriority() {
         return NO_PRIORITY;
     }
@@ -106,6 +134,10 @@ public abstract class SpeechCategory {
         return mActivationCommand.getCommand();
     }
 
+    public String getActivationThreshold() {
+        return mActivationCommand.getThreshold();
+    }
+
     public Context getContext() {
         return mCtx;
     }
@@ -4,78 +4,222 @@ import android.content.Context;
 import android.media.AudioAttributes;
 import android.media.AudioManager;
 import android.media.SoundPool;
-import android.os.AsyncTask;
 import android.os.Build;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
+import com.matthewn4444.voiceautomation.speech.BufferedSpeechRecognizer;
+import com.matthewn4444.voiceautomation.speech.CombinedGrammar;
+import com.matthewn4444.voiceautomation.speech.CommandSplitter;
+import com.matthewn4444.voiceautomation.speech.DecoderProfile;
+import com.matthewn4444.voiceautomation.speech.DecoderProfileBenchmark;
+import com.matthewn4444.voiceautomation.speech.DecoderSetup;
+import com.matthewn4444.voiceautomation.speech.Endpointer;
+import com.matthewn4444.voiceautomation.speech.FsgGrammar;
+import com.matthewn4444.voiceautomation.speech.HashedFile;
+import com.matthewn4444.voiceautomation.speech.JsgfPhrases;
+import com.matthewn4444.voiceautomation.speech.LatencyHistogram;
+import com.matthewn4444.voiceautomation.speech.ListeningStats;
+import com.matthewn4444.voiceautomation.speech.PhraseTrie;
+import com.matthewn4444.voiceautomation.speech.QuickCommandIndex;
+import com.matthewn4444.voiceautomation.speech.Recognizer;
+import com.matthewn4444.voiceautomation.speech.RemoteRecognizer;
+import com.matthewn4444.voiceautomation.speech.ResultConfidence;
+import com.matthewn4444.voiceautomation.speech.SpeakerAdaptation;
+import com.matthewn4444.voiceautomation.speech.SpeechEngine;
+import com.matthewn4444.voiceautomation.speech.ThresholdProfile;
+import com.matthewn4444.voiceautomation.speech.TransitionLog;
+import com.matthewn4444.voiceautomation.speech.UtteranceLog;
+
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
 
 import edu.cmu.pocketsphinx.Assets;
+import edu.cmu.pocketsphinx.Config;
 import edu.cmu.pocketsphinx.Hypothesis;
 import edu.cmu.pocketsphinx.RecognitionListener;
-import edu.cmu.pocketsphinx.SpeechRecognizer;
-
-import static edu.cmu.pocketsphinx.SpeechRecognizerSetup.defaultSetup;
 
 public class SpeechController implements RecognitionListener {
     private static final String TAG = "SpeechController";
+    private static final boolean VERBOSE = Log.isLoggable(TAG, Log.VERBOSE);
 
     private static final String CommandFileName = "commands.gram";
+    private static final String LockFileName = "lock.gram";
+    private static final String ThresholdProfileAsset = "thresholds.profile";
+    private static final String UtteranceLogDirName = "utterances";
     private static final String LOCK_SEARCH = "lock";
     private static final String KWS_SEARCH = "command";
+    private static final String COMBINED_SEARCH_PREFIX = "combined_";
 
     private static final int SAME_PARTIAL_RESULT_TIMEOUT = 1000;
+    private static final int CONFIDENT_PARTIAL_RESULT_TIMEOUT = 300;
+    private static final int TRANSITION_LOG_SIZE = 32;
+    private static final String STARTUP_TRACE_FILE_NAME = "startup_trace.json";
+
+    // Startup stages
+    private static final String STAGE_COMMANDS = "commands";
+    private static final String STAGE_ASSETS = "assets";
+    private static final String STAGE_PROFILE = "profile";
+    private static final String STAGE_DECODER = "decoder";
+    private static final String STAGE_SEARCHES = "searches";
+    private static final String STAGE_PHRASES = "phrases";
+
+    // Kinds of phrases in the keyword trie
+    private static final int MATCH_CATEGORY = 0;
+    private static final int MATCH_QUICK_COMMAND = 1;
+    private static final int MATCH_LOCK = 2;
+    private static final int MATCH_UNLOCK = 3;
+    private static final int MATCH_COMMAND = 4;
 
     public static enum SpeechModel {
         DEFAULT, PHONETIC, LANGUAGE
     };
 
+    /**
+     * States of the recognition state machine. Each state runs one search on the recognizer:
+     * KWS spots activation and quick commands, CATEGORY runs the grammar of the detected category,
+     * LOCKED only listens for the unlock phrase and PAUSED listens for quick commands or nothing.
+     */
+    public static enum State {
+        KWS, CATEGORY, LOCKED, PAUSED, SHUTDOWN;
+
+        /**
+         * Transition table of the state machine. Entering the current state restarts its search,
+         * a category is only entered from its keyword and ends back in KWS, and nothing leaves
+         * SHUTDOWN.
+         * @param next state to enter
+         * @return true if the state machine can go from this state to the next
+         */
+        public boolean canEnter(State next) {
+            switch (this) {
+                case KWS:
+                    return true;
+                case CATEGORY:
+                    return next == KWS || next == PAUSED || next == SHUTDOWN;
+                case LOCKED:
+                case PAUSED:
+                    return next != CATEGORY;
+                default:
+                    return false;
+            }
+        }
+    };
+
     private final Context mCtx;
     private final HashMap<String, SpeechCategory> mCategories;
     private final AudioManager mAudioManager;
 
-    private SpeechRecognizer mRecognizer;
+    // Recognizer events and state changes are all handled in order on the main thread
+    private final TransitionLog<State> mTransitions;
+    private State mState = State.PAUSED;
+    private State mResumeState = State.KWS;
+    private boolean mListenWhilePaused;
+    private boolean mLowPower;
+
+    private Recognizer mRecognizer;
+    private volatile PhraseTrie<SpeechCategory> mKeywordPhrases;
+    private volatile HashMap<String, PhraseTrie<SpeechCategory>> mGrammarPhrases;
+    private volatile QuickCommandIndex<SpeechCategory> mQuickCommands = new QuickCommandIndex<>();
+    private volatile HashMap<String, String> mCombinedSearches = new HashMap<>();
+    private volatile CommandSplitter<SpeechCategory> mCommandSplitter;
+    private final List<String> mKeywords = new ArrayList<>();
     private SpeechListener mListener;
     private SpeechCategory mCurrentCategory;
-    private Handler mDelay = new Handler();
-    private Object mTimerLock = new Object();
-    private Timer mTimer;
+    private TimeoutScheduler.Token mNoiseTimer;
     private File mCommandFile;
-    private boolean mIsReady;
-    private boolean mIsLocked;
-    private boolean mAppScreenIsOff;
+    private String mCommandFileHash;
+    private File mLockFile;
+    private String mLockFileHash;
+
+    // Written by the startup stages, the pipeline orders the stages that read them
+    private final StartupPipeline mStartup;
+    private volatile File mAssetDir;
+    private volatile DecoderProfile mDecoderProfile;
+    private volatile Recognizer mNewRecognizer;
+    private long mStartupTime;
+    private boolean mUpdatingCategories;
+    private boolean mCategoriesChanged;
     private String LOCK_PHRASE;
     private String LOCK_PHRASE1;
     private String LOCK_PHRASE2;
     private String UNLOCK_PHRASE;
 
+    private final PartialReturnResult mPartialResult = new PartialReturnResult();
     private int mPartialResultDiffCount;
     private long mPartialResultTimeLastChange;
+    private long mLongestPartialResultPause;
     private String mLastPartialResult;
 
-    private String mLastQuickCommand;
-    private long mLastQuickCommandTime;
+    // Search the current category listens with, its combined search when it can hear several commands
+    private String mCategorySearch;
+    private boolean mCombinedSearch;
+
+    // Timeouts of the current category learned from its recent commands
+    private final HashMap<String, Endpointer> mEndpointers = new HashMap<>();
+    private Endpointer mEndpointer;
+    private int mStableResultTimeout = SAME_PARTIAL_RESULT_TIMEOUT;
+
+    // Settings resolved ahead of time so that partial results do not need to read them
+    private int mMaxPartialResultChanges;
+    private int mSubCommandTimeout;
+    private int mNoiseTimeout;
+    private boolean mQuickCommandsDisabled;
+    private boolean mVoiceGateEnabled;
+    private boolean mIsolatedProcess;
+    private boolean mCombinedCommands;
+    private int mUtteranceLogSizeMb;
+    private UtteranceLog mUtteranceLog;
+
+    private long mKeywordDetectedTime;
+    private long mFirstPartialTime;
+    private long mSpeechOnsetTime;
+    private long mLastKeywordToActionLatency = -1;
+    private final LatencyHistogram mKeywordToActionLatency = new LatencyHistogram();
+
+    private final Runnable mNoiseTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mNoiseTimer = null;
+            if (mState == State.CATEGORY) {
+                finishCategory(null, "noise timeout");
+            }
+        }
+    };
 
     private SoundPool mSoundPool;
     private int mSoundStartId;
     private int mSoundResultId;
     private int mSoundFailId;
 
-    public class PartialReturnResult {
+    /**
+     * Result passed to categories to filter partial results. Only one instance exists per
+     * controller, it is reset for each partial result so categories should change it in place
+     * and never keep a reference to it.
+     */
+    public static class PartialReturnResult {
         public boolean isFinished = false;
         public String filteredText;
 
+        public PartialReturnResult() {
+        }
+
         public PartialReturnResult(String text) {
             filteredText = text;
         }
+
+        void reset(String text) {
+            isFinished = false;
+            filteredText = text;
+        }
     }
 
     public interface SpeechListener {
@@ -92,55 +236,147 @@ public class SpeechController implements RecognitionListener {
         mCtx = ctx;
         mCategories = categories;
         mAudioManager = (AudioManager) ctx.getSystemService(Context.AUDIO_SERVICE);
-        mIsReady = false;
-        mIsLocked = false;
+        mGrammarPhrases = new HashMap<>();
+        mTransitions = new TransitionLog<>(TRANSITION_LOG_SIZE, State.values().length);
         LOCK_PHRASE = mCtx.getString(R.string.command_default_lock);
         LOCK_PHRASE1 = mCtx.getString(R.string.command_default_lock1);
         LOCK_PHRASE2 = mCtx.getString(R.string.command_default_lock2);
         UNLOCK_PHRASE = mCtx.getString(R.string.command_default_unlock);
+        loadSettings();
 
-        // Initialize the recognition software
-        new AsyncTask<Void, Void, Exception>() {
+        // Initialize the recognition software, independent stages run at the same time. The stages
+        // read a copy of the categories as the caller can change them while the stages run.
+        mStartupTime = SystemClock.elapsedRealtime();
+        final HashMap<String, SpeechCategory> startupCategories = new HashMap<>(mCategories);
+        mStartup = new StartupPipeline(TAG);
+        mStartup.addStage(STAGE_COMMANDS, new StartupPipeline.Task() {
             @Override
-            protected Exception doInBackground(Void... params) {
-                // Prepare speech recognition files
-                try {
-                    mCommandFile = generateCommandsFile();
-                    Assets assets = new Assets(mCtx);
-                    File assetDir = assets.syncAssets();
-                    setupRecognizer(assetDir);
-                } catch (IOException e) {
-                    return e;
-                }
-                return null;
+            public void run() throws IOException {
+                mCommandFile = generateCommandsFile(startupCategories);
             }
-
+        });
+        SpeechEngine engine = SpeechEngine.getInstance();
+        mDecoderProfile = getDecoderProfile(mCtx);
+        mNewRecognizer = mDecoderProfile != null ? engine.acquire(mDecoderProfile, mIsolatedProcess) : null;
+        if (mNewRecognizer != null) {
+            // Continue with the recognizer kept from the last controller, only the searches that
+            // changed since then are loaded
+            mAssetDir = engine.getAssetDir();
+            mStartup.addStage(STAGE_SEARCHES, new StartupPipeline.Task() {
+                @Override
+                public void run() throws IOException {
+                    addSearches(mNewRecognizer, mAssetDir, startupCategories);
+                }
+            }, STAGE_COMMANDS);
+            mStartup.addStage(STAGE_PHRASES, new StartupPipeline.Task() {
+                @Override
+                public void run() {
+                    buildPhraseTries(mAssetDir, startupCategories);
+                }
+            });
+        } else {
+            mStartup.addStage(STAGE_ASSETS, new StartupPipeline.Task() {
+                @Override
+                public void run() throws IOException {
+                    mAssetDir = new Assets(mCtx).syncAssets();
+                }
+            });
+            mStartup.addStage(STAGE_PROFILE, new StartupPipeline.Task() {
+                @Override
+                public void run() {
+                    if (mDecoderProfile == null) {
+                        mDecoderProfile = measureDecoderProfile(mAssetDir);
+                    }
+                }
+            }, STAGE_ASSETS);
+            mStartup.addStage(STAGE_DECODER, new StartupPipeline.Task() {
+                @Override
+                public void run() throws IOException {
+                    Recognizer recognizer = createRecognizer(mAssetDir);
+                    synchronized (mStartup) {
+                        if (!mStartup.hasFailed()) {
+                            mNewRecognizer = recognizer;
+                            return;
+                        }
+                    }
+                    // Another stage failed while this one was loading, nobody takes the recognizer
+                    SpeechEngine.getInstance().release(recognizer, mAssetDir);
+                }
+            }, STAGE_PROFILE);
+            mStartup.addStage(STAGE_SEARCHES, new StartupPipeline.Task() {
+                @Override
+                public void run() throws IOException {
+                    addSearches(mNewRecognizer, mAssetDir, startupCategories);
+                }
+            }, STAGE_DECODER, STAGE_COMMANDS);
+            mStartup.addStage(STAGE_PHRASES, new StartupPipeline.Task() {
+                @Override
+                public void run() {
+                    buildPhraseTries(mAssetDir, startupCategories);
+                }
+            }, STAGE_ASSETS);
+        }
+        mStartup.start(new StartupPipeline.Listener() {
             @Override
-            protected void onPostExecute(Exception result) {
-                mIsReady = true;
-                if (result != null) {
+            public void onPipelineFinished(Exception error) {
+                Recognizer recognizer;
+                synchronized (mStartup) {
+                    recognizer = mNewRecognizer;
+                    mNewRecognizer = null;
+                }
+                if (mState == State.SHUTDOWN) {
+                    if (recognizer != null) {
+                        SpeechEngine.getInstance().release(recognizer, mAssetDir);
+                    }
+                    return;
+                }
+                mStartupTime = SystemClock.elapsedRealtime() - mStartupTime;
+                Log.i(TAG, "Speech ready in " + mStartupTime + "ms");
+                if (VERBOSE) {
+                    mStartup.dump(TAG);
+                    try {
+                        mStartup.exportTrace(new File(mCtx.getFilesDir(), STARTUP_TRACE_FILE_NAME));
+                    } catch (IOException e) {
+                        Log.w(TAG, "Cannot export startup trace", e);
+                    }
+                }
+                if (error != null) {
+                    if (recognizer != null) {
+                        SpeechEngine.getInstance().release(recognizer, mAssetDir);
+                    }
                     if (mListener != null) {
-                        mListener.onSpeechError(result);
+                        mListener.onSpeechError(error);
                     }
                 } else {
-                    switchSearch(KWS_SEARCH);
+                    mRecognizer = recognizer;
+                    mRecognizer.addListener(SpeechController.this);
+                    mRecognizer.setDutyCycled(mLowPower);
+                    setupUtteranceLog();
+                    if (mCategoriesChanged) {
+                        updateCategories();
+                    } else {
+                        transition(mState, "ready");
+                    }
                     if (mListener != null) {
                         mListener.onSpeechReady();
                     }
                 }
             }
-        }.execute();
+        });
     }
 
     @Override
     public void onBeginningOfSpeech() {
-        mCurrentCategory = mCategories.get(mRecognizer.getSearchName());
+        if (mState == State.CATEGORY && mSpeechOnsetTime == 0) {
+            mSpeechOnsetTime = SystemClock.elapsedRealtime();
+        }
     }
 
     @Override
     public void onEndOfSpeech() {
-        if (!mRecognizer.getSearchName().equals(KWS_SEARCH) && !mIsLocked)
-            switchSearch(KWS_SEARCH);
+        if (mState == State.CATEGORY) {
+            finishCategoryWithDecoderResult("end of speech");
+        }
     }
 
     @Override
@@ -148,125 +384,429 @@ public class SpeechController implements RecognitionListener {
         if (hypothesis == null)
             return;
 
-        String text = hypothesis.getHypstr().trim();
-        Log.v(TAG, "Partial result: " + text);
+        // Recognizers trim the text once when it changes and hand out the same instance after
+        String text = hypothesis.getHypstr();
+        if (VERBOSE) {
+            Log.v(TAG, "Partial result: " + text);
+        }
+
+        switch (mState) {
+            case PAUSED:
+                // When app is paused, only allow quick commands to be said
+                checkQuickCommand(text);
+                transition(State.PAUSED, "paused partial result");
+                break;
+            case KWS:
+                onKeywordPartialResult(text);
+                break;
+            case LOCKED:
+                if (mKeywordPhrases.getKind(mKeywordPhrases.find(text)) == MATCH_UNLOCK) {
+                    if (mListener != null) {
+                        mListener.onLock(false);
+                    }
+                    transition(State.KWS, "unlock");
+                }
+                break;
+            case CATEGORY:
+                onCategoryPartialResult(text, mRecognizer.getLastResultConfidence());
+                break;
+        }
+    }
+
+    @Override
+    public void onResult(Hypothesis hypothesis) {
+        // Final results are read from the decoder when a category finishes, see finishCategory()
+    }
+
+    @Override
+    public void onError(Exception e) {
+        if (mListener != null) {
+            mListener.onSpeechError(e);
+        }
+    }
+
+    @Override
+    public void onTimeout() {
+        if (mState == State.CATEGORY) {
+            finishCategoryWithDecoderResult("timeout");
+        }
+    }
 
-        // When app is paused, only allow quick commands to be said
-        if (mAppScreenIsOff) {
-            checkQuickCommand(text);
-            endSpeech();
+    public void shutdown() {
+        if (VERBOSE) {
+            TimeoutScheduler scheduler = TimeoutScheduler.getInstance();
+            Log.v(TAG, "Timeouts pending: " + scheduler.getPendingCount() + ", fired: "
+                    + scheduler.getFiredCount() + ", average late: " + scheduler.getAverageLateness()
+                    + "ms, max late: " + scheduler.getMaxLateness() + "ms");
+            mTransitions.dump(TAG);
+            if (mRecognizer != null) {
+                Log.v(TAG, "Listening: " + mRecognizer.getStats());
+                Log.v(TAG, "Result delivery latency " + (mRecognizer instanceof RemoteRecognizer
+                        ? "from the speech process: " : "in process: ") + mRecognizer.getDeliveryLatency());
+            }
+            Log.v(TAG, "Keyword to action latency: " + mKeywordToActionLatency);
+            Log.v(TAG, "Quick commands: " + mQuickCommands);
+        }
+        transition(State.SHUTDOWN, "shutdown");
+    }
+
+    public void pause(boolean continueListen) {
+        Log.v(TAG, "Pause speech recognition");
+        if (mState == State.SHUTDOWN) {
+            return;
+        }
+        if (mState != State.PAUSED) {
+            mResumeState = mState == State.LOCKED ? State.LOCKED : State.KWS;
+        }
+        if (mState == State.CATEGORY) {
+            speechFinishedWithResult(null);
+        }
+        mListenWhilePaused = continueListen;
+        transition(State.PAUSED, "pause");
+        if (mSoundPool != null) {
+            mSoundPool.release();
+            mSoundPool = null;
+        }
+    }
+
+    public void resume() {
+        if (mState == State.SHUTDOWN) {
+            return;
+        }
+        loadSettings();
+        Log.v(TAG, "Resume speech recognition");
+        setupUtteranceLog();
+        transition(mResumeState, "resume");
+        setupSoundEffects();
+    }
+
+    /**
+     * Keeps listening for every command while the activity is stopped and the screen is off, the
+     * recognizer duty cycles the microphone and only decodes once the voice activity gate opens.
+     * Leaving low power reloads the settings like resume() does.
+     * @param lowPower true to enter low power listening
+     */
+    public void setLowPower(boolean lowPower) {
+        if (mState == State.SHUTDOWN || mLowPower == lowPower) {
+            return;
+        }
+        Log.v(TAG, (lowPower ? "Enter" : "Leave") + " low power listening");
+        mLowPower = lowPower;
+        if (!lowPower) {
+            loadSettings();
+            setupUtteranceLog();
+        }
+        if (mRecognizer != null) {
+            mRecognizer.setDutyCycled(lowPower);
+        }
+
+        // Restart the search so it is gated as needed, a command being said is left to finish
+        if (mState == State.PAUSED) {
+            transition(mResumeState, lowPower ? "low power" : "full power");
+        } else if (mState != State.CATEGORY) {
+            transition(mState, lowPower ? "low power" : "full power");
+        }
+    }
+
+    public boolean isLowPower() {
+        return mLowPower;
+    }
+
+    /**
+     * Applies changes made to the categories map, such as added or removed categories and changed
+     * activation commands, to the running recognizer. Only the keyword list and the searches of new
+     * categories are loaded; the acoustic model and dictionary stay loaded. Listening stops while
+     * the searches are loaded and continues in the same state afterwards. The update reads a copy
+     * of the map taken when it starts, call this again after changing the map.
+     */
+    public void updateCategories() {
+        if (mState == State.SHUTDOWN) {
+            return;
+        }
+        if (mRecognizer == null || mUpdatingCategories) {
+            // Applied once the recognizer is ready or the running update finishes
+            mCategoriesChanged = true;
             return;
         }
+        mCategoriesChanged = false;
+        mUpdatingCategories = true;
+        State next = mState;
+        if (mState == State.CATEGORY) {
+            speechFinishedWithResult(null);
+            next = State.KWS;
+        }
+        transition(next, "updating categories");
 
-        SpeechCategory cate = mCategories.get(text);
-        if (cate != null) {
+        final long startTime = SystemClock.elapsedRealtime();
+        final Recognizer recognizer = mRecognizer;
+        final HashMap<String, SpeechCategory> categories = new HashMap<>(mCategories);
+        StartupPipeline update = new StartupPipeline(TAG + " update");
+        update.addStage(STAGE_COMMANDS, new StartupPipeline.Task() {
+            @Override
+            public void run() throws IOException {
+                mCommandFile = generateCommandsFile(categories);
+            }
+        });
+        update.addStage(STAGE_SEARCHES, new StartupPipeline.Task() {
+            @Override
+            public void run() throws IOException {
+                addSearches(recognizer, mAssetDir, categories);
+            }
+        }, STAGE_COMMANDS);
+        update.addStage(STAGE_PHRASES, new StartupPipeline.Task() {
+            @Override
+            public void run() {
+                buildPhraseTries(mAssetDir, categories);
+            }
+        });
+        update.start(new StartupPipeline.Listener() {
+            @Override
+            public void onPipelineFinished(Exception error) {
+                mUpdatingCategories = false;
+                if (mState == State.SHUTDOWN) {
+                    SpeechEngine.getInstance().release(recognizer, mAssetDir);
+                    return;
+                }
+                Log.i(TAG, "Categories updated in " + (SystemClock.elapsedRealtime() - startTime) + "ms");
+                if (error != null) {
+                    if (mListener != null) {
+                        mListener.onSpeechError(error);
+                    }
+                } else if (mCategoriesChanged) {
+                    updateCategories();
+                } else {
+                    transition(mState, "categories updated");
+                }
+            }
+        });
+    }
+
+    public void setSpeechListener(SpeechListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return milliseconds from construction till speech was ready, -1 if still starting
+     */
+    public long getTimeToReady() {
+        return mRecognizer != null ? mStartupTime : -1;
+    }
+
+    /**
+     * @return the timed startup stages, can be exported to view how long each took
+     */
+    public StartupPipeline getStartupPipeline() {
+        return mStartup;
+    }
+
+    /**
+     * @return CPU time and wakeups of listening with and without the voice activity gate, null if
+     *         speech is not ready
+     */
+    public ListeningStats getListeningStats() {
+        return mRecognizer != null ? mRecognizer.getStats() : null;
+    }
+
+    public State getState() {
+        return mState;
+    }
+
+    /**
+     * @return timestamped log of the most recent state transitions and time spent in each state
+     */
+    public TransitionLog<State> getTransitionLog() {
+        return mTransitions;
+    }
+
+    /**
+     * @return milliseconds from detecting the activation keyword till its category handled the
+     *         command, -1 if no command was run yet
+     */
+    public long getLastKeywordToActionLatency() {
+        return mLastKeywordToActionLatency;
+    }
+
+    /**
+     * @return distribution of the keyword to action latency of the commands run since speech
+     *         started, only read on the main thread
+     */
+    public LatencyHistogram getKeywordToActionLatency() {
+        return mKeywordToActionLatency;
+    }
+
+    private void onKeywordPartialResult(String text) {
+        int node = mKeywordPhrases.find(text);
+        int match = mKeywordPhrases.getKind(node);
+        if (match == MATCH_CATEGORY) {
+            SpeechCategory cate = mKeywordPhrases.getValue(node);
             if (cate.isAvailable()) {
-                switchSearch(text);
-                mLastPartialResult = null;
-                mPartialResultDiffCount = 0;
+                mCurrentCategory = cate;
+                transition(State.CATEGORY, "keyword");
             } else {
                 if (mListener != null) {
                     mListener.onCategoryUnavailable(cate);
                 }
-                endSpeech();
+                transition(State.KWS, "category unavailable");
             }
-        } else if (!mIsLocked && (text.equals(LOCK_PHRASE) || text.equals(LOCK_PHRASE1)
-                || text.equals(LOCK_PHRASE2))) {
-            switchSearch(LOCK_SEARCH);
-        } else if (mIsLocked && text.equals(UNLOCK_PHRASE)) {
-            mIsLocked = false;
-            if (mListener != null) {
-                mListener.onLock(false);
+        } else if (match == MATCH_LOCK) {
+            transition(State.LOCKED, "lock");
+        } else if (checkQuickCommand(text)) {
+            transition(State.KWS, "quick command");
+        }
+    }
+
+    /**
+     * @param text partial result
+     * @param confidence how sure the decoder is of the result, UNKNOWN if it was not scored
+     */
+    private void onCategoryPartialResult(String text, float confidence) {
+        if (mFirstPartialTime == 0) {
+            mFirstPartialTime = SystemClock.elapsedRealtime();
+        }
+        mPartialResult.reset(text);
+        PartialReturnResult res = mCurrentCategory.filterPartialResult(mPartialResult);
+        text = res.filteredText;
+
+        // The category filter told that search is finished
+        if (res.isFinished) {
+            finishCategory(text, "filtered result");
+            return;
+        }
+
+        // Show the result on screen
+        if (mListener != null) {
+            mListener.onPartialResult(text);
+        }
+
+        if (VERBOSE && confidence != ResultConfidence.UNKNOWN) {
+            Log.v(TAG, "Partial result confidence: " + confidence);
+        }
+        boolean isConfident = confidence == ResultConfidence.UNKNOWN
+                || confidence >= mCurrentCategory.getRejectConfidence();
+
+        // Finish right away when the result is a command that no other command continues, unless
+        // the decoder thinks it is noise. A combined search waits for the stable result timeout
+        // instead as another command can follow any of them.
+        PhraseTrie<SpeechCategory> phrases = mGrammarPhrases.get(getSearchName(mCurrentCategory));
+        boolean isCommand = false;
+        if (phrases != null && !mCombinedSearch) {
+            int command = phrases.find(text);
+            isCommand = command != PhraseTrie.NO_MATCH;
+            if (isCommand && phrases.isFinal(command) && isConfident) {
+                finishCategory(text, "complete command");
+                return;
             }
-            switchSearch(KWS_SEARCH);
-        } else {
-            if (mCurrentCategory != null) {
-                PartialReturnResult res = new PartialReturnResult(text);
-                res = mCurrentCategory.filterPartialResult(res);
-                text = res.filteredText;
-
-                // The category filter told that search is finished
-                if (res.isFinished) {
-                    endSpeech(text);
-                    return;
-                }
+        }
 
-                // Show the result on screen
-                if (mListener != null) {
-                    mListener.onPartialResult(text);
-                }
+        // A scored result decides after a short wait instead of the full one, the wait still lets
+        // a longer command that starts with this one be said
+        if (confidence != ResultConfidence.UNKNOWN && text.equals(mLastPartialResult)
+                && System.currentTimeMillis() - mPartialResultTimeLastChange > CONFIDENT_PARTIAL_RESULT_TIMEOUT) {
+            if (!isConfident) {
+                finishCategory(null, "low confidence result");
+                return;
+            } else if (isCommand && confidence >= mCurrentCategory.getAcceptConfidence()) {
+                finishCategory(text, "confident result");
+                return;
+            }
+        }
 
-                // Keep track of constantly changing partial results, if we exceed said amount, end speech
-                if (mLastPartialResult == null || !text.startsWith(mLastPartialResult)) {
-                    mPartialResultDiffCount++;
-                    if (mPartialResultDiffCount >= LazyPref.getIntDefaultRes(mCtx,
-                            R.string.settings_speech_partial_result_changed_key,
-                            R.integer.settings_default_speech_max_partial_result_changed)) {
-                        endSpeech();
-                    }
-                }
+        // Keep track of constantly changing partial results, if we exceed said amount, end speech
+        if (mLastPartialResult == null || !text.startsWith(mLastPartialResult)) {
+            mPartialResultDiffCount++;
+            if (mPartialResultDiffCount >= mMaxPartialResultChanges) {
+                finishCategory(null, "too many partial results");
+                return;
+            }
+        }
 
-                // When the partial result does not change for a couple of seconds, decide whether to select or end
-                if (!text.equals(mLastPartialResult)) {
-                    mPartialResultTimeLastChange = System.currentTimeMillis();
-                } else if (System.currentTimeMillis() - mPartialResultTimeLastChange > SAME_PARTIAL_RESULT_TIMEOUT) {
-                    if (mPartialResultDiffCount == 1) {
-                        // Found phrase first try but waiting too long might be voice command
-                        onResult(hypothesis);
-                        onTimeout();
-                    } else {
-                        // End speech because it changed a couple of times and waiting too long - noise
-                        endSpeech();
-                    }
-                }
-                mLastPartialResult = text;
+        // When the partial result does not change for a while, decide whether to select or end
+        if (!text.equals(mLastPartialResult)) {
+            long now = System.currentTimeMillis();
+            if (mLastPartialResult != null) {
+                mLongestPartialResultPause = Math.max(mLongestPartialResultPause,
+                        now - mPartialResultTimeLastChange);
+            }
+            mPartialResultTimeLastChange = now;
+        } else if (System.currentTimeMillis() - mPartialResultTimeLastChange > mStableResultTimeout) {
+            if (mPartialResultDiffCount == 1) {
+                // Found phrase first try but waiting too long might be voice command
+                finishCategory(text, "stable partial result");
             } else {
-                checkQuickCommand(text);
+                // End speech because it changed a couple of times and waiting too long - noise
+                finishCategory(null, "unstable partial result");
             }
+            return;
         }
+        mLastPartialResult = text;
     }
 
-    @Override
-    public void onResult(Hypothesis hypothesis) {
-        if (!mIsLocked && !mAppScreenIsOff) {
-            if (hypothesis != null) {
-                String text = hypothesis.getHypstr();
-                if (!text.equals(UNLOCK_PHRASE)) {
-                    speechFinishedWithResult(text);
-                }
-                mCurrentCategory = null;
-            } else {
-                speechFinishedWithResult(null);
-            }
+    /**
+     * Runs the quick command said unless it already ran within its debounce window
+     * @param text hypothesis
+     * @return true if the text is a quick command, whether it ran or was suppressed
+     */
+    private boolean checkQuickCommand(String text) {
+        if (mQuickCommandsDisabled) {
+            return false;
+        }
+        QuickCommandIndex.Entry<SpeechCategory> entry = mQuickCommands.find(text);
+        if (entry == null) {
+            return false;
+        }
+        if (mQuickCommands.hit(entry, SystemClock.elapsedRealtime())) {
+            entry.owner.onQuickCommand(entry.phrase);
         }
+        return true;
     }
 
-    private void checkQuickCommand(String text) {
-        if (!LazyPref.getBool(mCtx, R.string.settings_speech_disable_quick_commands_key)) {
-            // Check quick commands for each category
-            boolean isSimilarToLastTime = mLastQuickCommand != null && text.startsWith(mLastQuickCommand);
-            long now = System.currentTimeMillis();
-            if (!isSimilarToLastTime || (now - mLastQuickCommandTime > 3000)) {
-                mLastQuickCommandTime = now;
-                mLastQuickCommand = text;
-                for (String command: mCategories.keySet()) {
-                    SpeechCategory category = mCategories.get(command);
-                    if (category.onQuickCommand(text)) {
-                        endSpeech();
-                        return;
-                    }
-                }
-            }
+    private void finishCategoryWithDecoderResult(String reason) {
+        mRecognizer.cancel();
+        String text = mRecognizer.getFinalResult();
+        float confidence = mRecognizer.getFinalResultConfidence();
+        if (confidence != ResultConfidence.UNKNOWN && mCurrentCategory != null
+                && confidence < mCurrentCategory.getRejectConfidence()) {
+            finishCategory(null, reason + " with low confidence");
+            return;
+        }
+        finishCategory(text, reason);
+    }
+
+    private void finishCategory(String text, String reason) {
+        String search = mCurrentCategory != null ? mCategorySearch : null;
+        speechFinishedWithResult(text);
+        transition(State.KWS, reason);
+
+        // The category's search stopped above so its recording is already queued to be saved
+        if (text != null && search != null && mUtteranceLog != null) {
+            mRecognizer.markAccepted(search, text);
+            SpeakerAdaptationService.onCommandAccepted(mCtx);
         }
     }
 
     private void speechFinishedWithResult(String text) {
         endTimeout();
         if (mCurrentCategory != null) {
+            long resultTime = SystemClock.elapsedRealtime();
             if (text != null) {
                 playSoundEffect(mSoundResultId);
             }
-            mCurrentCategory.onResult(text);
+            dispatchResult(text);
+            if (text != null) {
+                if (mEndpointer != null) {
+                    long onset = mSpeechOnsetTime > 0 ? mSpeechOnsetTime : resultTime;
+                    mEndpointer.addCommand(onset - mKeywordDetectedTime, mLongestPartialResultPause,
+                            resultTime - mKeywordDetectedTime);
+                }
+                long actionTime = SystemClock.elapsedRealtime();
+                mLastKeywordToActionLatency = actionTime - mKeywordDetectedTime;
+                mKeywordToActionLatency.add(mLastKeywordToActionLatency);
+                Log.i(TAG, "Keyword to action latency: " + mLastKeywordToActionLatency
+                        + "ms (first partial +" + (mFirstPartialTime > 0 ? mFirstPartialTime - mKeywordDetectedTime : -1)
+                        + "ms, result +" + (resultTime - mKeywordDetectedTime)
+                        + "ms, action took " + (actionTime - resultTime) + "ms)");
+            }
+            mCurrentCategory = null;
         }
         if (text == null) {
             playSoundEffect(mSoundFailId);
@@ -277,238 +817,492 @@ public class SpeechController implements RecognitionListener {
         mAudioManager.setStreamMute(AudioManager.STREAM_MUSIC, false);
     }
 
+    /**
+     * Gives the result to the current category, the result of a combined search is split and each
+     * command is given to its category in the same pass so that their actions run at once
+     * @param text final result, null if nothing was heard
+     */
+    private void dispatchResult(String text) {
+        List<CommandSplitter.Command<SpeechCategory>> commands = null;
+        if (text != null && mCombinedSearch && mCommandSplitter != null) {
+            commands = mCommandSplitter.split(mCurrentCategory, text);
+            if (commands == null) {
+                Log.w(TAG, "Cannot split '" + text + "' into commands");
+            }
+        }
+        if (commands == null || commands.size() == 1) {
+            mCurrentCategory.onResult(commands != null ? commands.get(0).phrase : text);
+            return;
+        }
+        if (VERBOSE) {
+            Log.v(TAG, "Running " + commands.size() + " commands: " + commands);
+        }
+        for (CommandSplitter.Command<SpeechCategory> command : commands) {
+            if (command.owner.isAvailable()) {
+                command.owner.onResult(command.phrase);
+            } else if (mListener != null) {
+                mListener.onCategoryUnavailable(command.owner);
+            }
+        }
+    }
+
     private void playSoundEffect(int id) {
         if (mSoundPool != null) {
             mSoundPool.play(id, 1, 1, 1, 0, 1);
         }
     }
 
-    @Override
-    public void onError(Exception e) {
-        if (mListener != null) {
-            mListener.onSpeechError(e);
+    /**
+     * Moves the state machine to the next state and starts the search for it. Transitioning to
+     * the current state restarts its search. Must be called from the event queue's thread.
+     * @param next state to enter
+     * @param reason constant describing why, used for the transition log
+     */
+    private void transition(State next, String reason) {
+        if (mState == State.SHUTDOWN) {
+            return;
+        }
+        if (!mState.canEnter(next)) {
+            throw new IllegalStateException("Cannot go from " + mState + " to " + next + " (" + reason + ")");
         }
-    }
-
-    @Override
-    public void onTimeout() {
-        endTimeout();
-        if (!mIsLocked)
-            switchSearch(KWS_SEARCH);
-    }
-
-    public void shutdown() {
         endTimeout();
+        long keywordEndPosition = BufferedSpeechRecognizer.CURRENT_POSITION;
         if (mRecognizer != null) {
-            mRecognizer.removeListener(this);
+            keywordEndPosition = mRecognizer.getLastResultPosition();
             mRecognizer.cancel();
-            mRecognizer.shutdown();
-            mRecognizer = null;
         }
-    }
+        if (next != State.CATEGORY) {
+            mCurrentCategory = null;
+        }
+        long now = SystemClock.elapsedRealtime();
+        mTransitions.record(mState, next, reason, now);
+        mState = next;
+        if (VERBOSE) {
+            Log.v(TAG, "Transition to " + next + " (" + reason + ")");
+        }
 
-    private void switchSearch(final String searchName) {
-        if (mRecognizer == null) {
+        if (next == State.SHUTDOWN) {
+            if (mRecognizer != null) {
+                mRecognizer.removeListener(this);
+                if (!mUpdatingCategories) {
+                    // Otherwise released once the update stops using the decoder
+                    SpeechEngine.getInstance().release(mRecognizer, mAssetDir);
+                }
+                mRecognizer = null;
+            }
+            return;
+        } else if (mRecognizer == null || mUpdatingCategories) {
+            // Not ready yet, the search starts once the recognizer is setup or updated
             return;
         }
-        mRecognizer.stop();
 
-        // If we are not spotting, start listening with timeout
-        Log.v(TAG, "Switch search to " + searchName);
-        if (searchName.equals(KWS_SEARCH)) {
-            mRecognizer.startListening(searchName);
-            if (mListener != null) {
-                mListener.onBeginSpeechCategory(null);
-            }
-        } else if (searchName.equals(LOCK_SEARCH)) {
-            mIsLocked = true;
-            mRecognizer.startListening(searchName);
-            if (mListener != null) {
-                mListener.onLock(true);
-            }
-        } else {
-            playSoundEffect(mSoundStartId);
-            final SpeechCategory cate = mCategories.get(searchName);
-            if (cate != null) {
-                mDelay.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        mAudioManager.setStreamMute(AudioManager.STREAM_MUSIC, true);
-                        mRecognizer.startListening(searchName, getSubCommandTimeout());
-                        if (mListener != null) {
-                            mListener.onBeginSpeechCategory(cate);
-                        }
+        switch (next) {
+            case KWS:
+                mRecognizer.startListening(KWS_SEARCH, mVoiceGateEnabled || mLowPower);
+                if (mListener != null) {
+                    mListener.onBeginSpeechCategory(null);
+                }
+                break;
+            case LOCKED:
+                mRecognizer.startListening(LOCK_SEARCH, mVoiceGateEnabled || mLowPower);
+                if (mListener != null) {
+                    mListener.onLock(true);
+                }
+                break;
+            case PAUSED:
+                if (mListenWhilePaused) {
+                    mRecognizer.startListening(KWS_SEARCH, mVoiceGateEnabled);
+                } else {
+                    mRecognizer.stopCapture();
+                }
+                break;
+            case CATEGORY:
+                playSoundEffect(mSoundStartId);
+                mKeywordDetectedTime = now;
+                mFirstPartialTime = 0;
+                mSpeechOnsetTime = 0;
+                mLastPartialResult = null;
+                mPartialResultDiffCount = 0;
+                mLongestPartialResultPause = 0;
 
-                        // Noise timeout, the above timeout restarts at each sound input
-                        synchronized (mTimerLock) {
-                            endTimeout();
-                            mTimer = new Timer();
-                            mTimer.schedule(new TimerTask() {
-                                @Override
-                                public void run() {
-                                    endSpeech();
-                                }
-                            }, getNoiseTimeout());
-                        }
-                    }
-                }, 300);
-            }
+                // Listen only as long as this category's recent commands needed
+                mEndpointer = getEndpointer(mCurrentCategory);
+                mStableResultTimeout = mEndpointer.getStableTimeout(SAME_PARTIAL_RESULT_TIMEOUT);
+                int silenceTimeout = mEndpointer.getSilenceTimeout(getSubCommandTimeout());
+                int listeningTimeout = mEndpointer.getListeningTimeout(getNoiseTimeout(),
+                        mRecognizer.getNoiseDecibels());
+                if (VERBOSE) {
+                    Log.v(TAG, "Endpointing " + getSearchName(mCurrentCategory) + ": silence "
+                            + silenceTimeout + "ms, stable " + mStableResultTimeout + "ms, listening "
+                            + listeningTimeout + "ms, noise " + mRecognizer.getNoiseDecibels() + "dB");
+                }
+
+                // The combined search also hears more commands after the conjunction
+                mCategorySearch = getSearchName(mCurrentCategory);
+                String combined = mCombinedCommands ? mCombinedSearches.get(mCategorySearch) : null;
+                mCombinedSearch = combined != null;
+                if (mCombinedSearch) {
+                    mCategorySearch = combined;
+                }
+
+                // Continue decoding from the end of the keyword in the buffered audio so the
+                // command can be said right after the activation phrase
+                mAudioManager.setStreamMute(AudioManager.STREAM_MUSIC, true);
+                mRecognizer.startListening(mCategorySearch, silenceTimeout, keywordEndPosition);
+                if (mListener != null) {
+                    mListener.onBeginSpeechCategory(mCurrentCategory);
+                }
+
+                // Noise timeout, the above timeout restarts at each sound input
+                mNoiseTimer = TimeoutScheduler.getInstance().scheduleOnMainThread(mNoiseTimeoutRunnable,
+                        listeningTimeout);
+                break;
         }
     }
 
-    public void pause(boolean continueListen) {
-        mAppScreenIsOff = true;
-        Log.v(TAG, "Pause speech recognition");
-        if (continueListen) {
-            endSpeech();
-        } else {
-            endTimeout();
-            if (mRecognizer != null) {
-                mRecognizer.stop();
-            }
-        }
-        if (mSoundPool != null) {
-            mSoundPool.release();
-            mSoundPool = null;
+    private Endpointer getEndpointer(SpeechCategory category) {
+        String name = getSearchName(category);
+        Endpointer endpointer = mEndpointers.get(name);
+        if (endpointer == null) {
+            endpointer = new Endpointer();
+            mEndpointers.put(name, endpointer);
         }
+        return endpointer;
     }
 
-    public void resume() {
-        mAppScreenIsOff = false;
-        if (mIsReady) {
-            Log.v(TAG, "Resume speech recognition");
-            if (mIsLocked) {
-                switchSearch(LOCK_SEARCH);
-            } else {
-                switchSearch(KWS_SEARCH);
-            }
-        }
-        setupSoundEffects();
+    private int getSubCommandTimeout() {
+        return mSubCommandTimeout;
     }
 
-    public void setSpeechListener(SpeechListener listener) {
-        mListener = listener;
+    private int getNoiseTimeout() {
+        return mNoiseTimeout;
     }
 
-    private int getSubCommandTimeout() {
-        return 1000 * LazyPref.getIntDefaultRes(mCtx, R.string.settings_speech_timeout_key,
+    private void loadSettings() {
+        mSubCommandTimeout = 1000 * LazyPref.getIntDefaultRes(mCtx, R.string.settings_speech_timeout_key,
                 R.integer.settings_default_speech_keyword_timeout_min);
+        mNoiseTimeout = 1000 * LazyPref.getIntDefaultRes(mCtx, R.string.settings_speech_noise_timeout_key,
+                R.integer.settings_default_speech_noise_timeout_min);
+        mMaxPartialResultChanges = LazyPref.getIntDefaultRes(mCtx,
+                R.string.settings_speech_partial_result_changed_key,
+                R.integer.settings_default_speech_max_partial_result_changed);
+        mQuickCommandsDisabled = LazyPref.getBool(mCtx, R.string.settings_speech_disable_quick_commands_key);
+        mVoiceGateEnabled = !LazyPref.getBool(mCtx, R.string.settings_speech_disable_voice_gate_key);
+        mUtteranceLogSizeMb = LazyPref.getIntDefaultRes(mCtx, R.string.settings_speech_audio_log_size_key,
+                R.integer.settings_default_speech_audio_log_size_mb);
+        mIsolatedProcess = LazyPref.getBool(mCtx, R.string.settings_speech_isolated_process_key);
+        mCombinedCommands = LazyPref.getBool(mCtx, R.string.settings_speech_combined_commands_key);
     }
 
-    private int getNoiseTimeout() {
-        return 1000 * LazyPref.getIntDefaultRes(mCtx, R.string.settings_speech_noise_timeout_key,
-                R.integer.settings_default_speech_noise_timeout_min);
+    /**
+     * Saves the audio of decoded utterances for tuning within the size chosen in settings, a size of
+     * 0 turns it off
+     */
+    private void setupUtteranceLog() {
+        if (mRecognizer == null) {
+            return;
+        }
+        long budget = mUtteranceLogSizeMb * 1024L * 1024L;
+        if (budget <= 0) {
+            mUtteranceLog = null;
+        } else if (mUtteranceLog == null || mUtteranceLog.getBudgetBytes() != budget) {
+            mUtteranceLog = new UtteranceLog(getUtteranceLogDir(mCtx), budget, mRecognizer.getSampleRate());
+        }
+        mRecognizer.setUtteranceLog(mUtteranceLog);
     }
 
-    private void setupRecognizer(File assetsDir) throws IOException {
-        mRecognizer = defaultSetup()
-                .setAcousticModel(new File(assetsDir, "en-us-ptm"))
-                .setDictionary(new File(assetsDir, "cmudict-en-us.dict"))
+    /**
+     * @param ctx context
+     * @return folder the audio of decoded utterances is saved in
+     */
+    public static File getUtteranceLogDir(Context ctx) {
+        File dir = ctx.getExternalFilesDir(UtteranceLogDirName);
+        if (dir == null) {
+            dir = new File(ctx.getFilesDir(), UtteranceLogDirName);
+        }
+        return dir;
+    }
 
-                        // To disable logging of raw audio comment out this call (takes a lot of space on the device)
-                .setRawLogDir(assetsDir)
+    private Recognizer createRecognizer(File assetsDir) throws IOException {
+        File transform = SpeakerAdaptation.findTransform(assetsDir);
+        if (transform != null) {
+            Log.i(TAG, "Using speaker adaptation " + transform.getName());
+        }
+        if (mIsolatedProcess) {
+            return RemoteRecognizer.create(mCtx, mDecoderProfile, assetsDir, transform,
+                    SpeechEngine.getInstance().getHandler());
+        }
+        Config config = DecoderSetup.createConfig(assetsDir, mDecoderProfile, transform);
+        return new BufferedSpeechRecognizer(config, mDecoderProfile, SpeechEngine.getInstance().getHandler());
+    }
 
-                        // Threshold to tune for keyphrase to balance between false alarms and misses
-                .setKeywordThreshold(1e-45f)
+    /**
+     * Times the decoder profiles on this device and remembers the one it can afford, only done
+     * once as it takes a few seconds
+     * @param assetsDir synced assets directory
+     * @return the profile picked
+     */
+    private DecoderProfile measureDecoderProfile(File assetsDir) {
+        LinkedHashMap<DecoderProfile, Float> costs = DecoderProfileBenchmark.measure(assetsDir, LOCK_PHRASE);
+        DecoderProfile profile = DecoderProfileBenchmark.select(costs);
+        String costsText = DecoderProfileBenchmark.format(costs);
+        Log.i(TAG, "Decoder profile real time factors " + costsText + ", using " + profile.getKey());
+        PreferenceManager.getDefaultSharedPreferences(mCtx).edit()
+                .putString(mCtx.getString(R.string.settings_speech_decoder_profile_auto_key), profile.getKey())
+                .putString(mCtx.getString(R.string.settings_speech_decoder_profile_costs_key), costsText)
+                .apply();
+        return profile;
+    }
 
-                        // Use context-independent phonetic search, context-dependent is too slow for mobile
-                .setBoolean("-allphone_ci", true)
+    /**
+     * @param ctx context
+     * @return the decoder profile chosen in settings or the one measured for this device, null
+     *         when it is left to the measurement and that did not run yet
+     */
+    public static DecoderProfile getDecoderProfile(Context ctx) {
+        DecoderProfile profile = DecoderProfile.fromKey(LazyPref.getStringDefaultRes(ctx,
+                R.string.settings_speech_decoder_profile_key, R.string.settings_default_speech_decoder_profile));
+        if (profile == null) {
+            profile = DecoderProfile.fromKey(LazyPref.getString(ctx, R.string.settings_speech_decoder_profile_auto_key));
+        }
+        return profile;
+    }
 
-                .getRecognizer();
-        mRecognizer.addListener(this);
+    private void addSearches(Recognizer recognizer, File assetsDir,
+            HashMap<String, SpeechCategory> categories) throws IOException {
+        addMissingWords(recognizer);
 
         // Create keyword-activation search.
-        mRecognizer.addKeyphraseSearch(LOCK_SEARCH, UNLOCK_PHRASE);
+        recognizer.addKeywordSearch(LOCK_SEARCH, mLockFile, mLockFileHash);
 
-        mRecognizer.addKeywordSearch(KWS_SEARCH, mCommandFile);
+        recognizer.addKeywordSearch(KWS_SEARCH, mCommandFile, mCommandFileHash);
 
-        // Add grammar searches and setup quick commands
-        for (String command: mCategories.keySet()) {
-            SpeechCategory cate = mCategories.get(command);
+        // Add grammar searches of categories that are not loaded yet
+        for (String command: categories.keySet()) {
+            SpeechCategory cate = categories.get(command);
+            String name = getSearchName(cate);
+            if (recognizer.hasSearch(name)) {
+                continue;
+            }
             File grammerFile = new File(assetsDir, cate.getGrammerFileName());
             switch (cate.getModelType()) {
                 case DEFAULT:
-                    mRecognizer.addGrammarSearch(command, grammerFile);
+                    // Use the grammar compiled by the build unless the grammar changed since
+                    File fsgFile = FsgGrammar.getFsgFile(grammerFile);
+                    if (FsgGrammar.isCompiledFrom(fsgFile, grammerFile)) {
+                        recognizer.addFsgSearch(name, fsgFile);
+                    } else {
+                        recognizer.addGrammarSearch(name, grammerFile);
+                    }
                     break;
                 case LANGUAGE:
-                    mRecognizer.addNgramSearch(command, grammerFile);
+                    recognizer.addNgramSearch(name, grammerFile);
                     break;
                 case PHONETIC:
-                    mRecognizer.addAllphoneSearch(command, grammerFile);
+                    recognizer.addAllphoneSearch(name, grammerFile);
                     break;
                 default:
                     throw new InvalidParameterException("Invalid speech model was specified");
             }
         }
+
+        if (mCombinedCommands) {
+            addCombinedSearches(recognizer, assetsDir, categories);
+        }
     }
 
-    private File generateCommandsFile() throws IOException {
-        File commandFile = null;
-        FileOutputStream writeStream = null;
-        // Create the speech file
-        try {
-            writeStream = mCtx.openFileOutput(CommandFileName, Context.MODE_PRIVATE);
-            for (String key: mCategories.keySet()) {
-                SpeechCategory category = mCategories.get(key);
-                writeStream.write((category.getCommandGrammerLine() + "\n").getBytes());
-
-                // Add all the quick commands
-                Command[] qCommands = category.getQuickCommands();
-                if (qCommands != null) {
-                    for (Command command: qCommands) {
-                        writeStream.write((command.getCommand() + "\n").getBytes());
-                    }
+    /**
+     * Adds a search for each grammar category that hears one of its commands followed by more
+     * commands of any grammar category, see CombinedGrammar. Searches are named after the hash of
+     * their grammar so a recognizer kept from the last controller only loads the ones that changed.
+     * @param recognizer the recognizer to add the searches to
+     * @param assetsDir synced assets directory with the grammars
+     * @param allCategories copy of the categories taken when the pipeline started
+     * @throws IOException if a grammar cannot be read or the combined one cannot be written
+     */
+    private void addCombinedSearches(Recognizer recognizer, File assetsDir,
+            HashMap<String, SpeechCategory> allCategories) throws IOException {
+        List<SpeechCategory> categories = new ArrayList<>();
+        for (SpeechCategory category: allCategories.values()) {
+            if (category.getModelType() == SpeechModel.DEFAULT) {
+                categories.add(category);
+            }
+        }
+        Set<String> unknown = recognizer.addMissingWords(mCtx,
+                Collections.singletonList(CombinedGrammar.CONJUNCTION));
+        if (!unknown.isEmpty()) {
+            Log.w(TAG, "No pronunciation for " + unknown + ", commands cannot be combined");
+            return;
+        }
+
+        HashMap<String, String> searches = new HashMap<>();
+        for (SpeechCategory first: categories) {
+            CombinedGrammar grammar = new CombinedGrammar();
+            grammar.add(first.getActivationCommand(), new File(assetsDir, first.getGrammerFileName()));
+            for (SpeechCategory category: categories) {
+                if (category != first) {
+                    grammar.add(category.getActivationCommand(),
+                            new File(assetsDir, category.getGrammerFileName()));
                 }
             }
+            String name = getSearchName(first);
+            File file = new File(mCtx.getFilesDir(), COMBINED_SEARCH_PREFIX + first.getGrammerFileName());
+            String hash = HashedFile.writeIfChanged(file, grammar.build("combined"));
+            String search = COMBINED_SEARCH_PREFIX + name + "_" + hash.substring(0, 8);
+            if (!recognizer.hasSearch(search)) {
+                recognizer.addGrammarSearch(search, file);
+            }
+            searches.put(name, search);
+        }
+        mCombinedSearches = searches;
+    }
 
-            // Add phrases to stop listening
-            writeStream.write((LOCK_PHRASE + " /" + Command.DefaultThreshold + "/\n").getBytes());
-            writeStream.write((LOCK_PHRASE1 + " /" + Command.DefaultThreshold + "/\n").getBytes());
-            writeStream.write((LOCK_PHRASE2 + " /" + Command.DefaultThreshold + "/\n").getBytes());
+    /**
+     * The synced dictionary only has the words of the default commands, the words of commands the
+     * user changed are looked up in the full dictionary bundled in the apk
+     * @param recognizer the recognizer to add the words to
+     * @throws IOException if the full dictionary cannot be read
+     */
+    private void addMissingWords(Recognizer recognizer) throws IOException {
+        Set<String> unknown = recognizer.addMissingWords(mCtx, mKeywords);
+        if (!unknown.isEmpty()) {
+            Log.w(TAG, "No pronunciation for " + unknown + ", commands with them cannot be heard");
+        }
+    }
 
-            commandFile = new File(mCtx.getFilesDir() + "/" + CommandFileName);
-        } catch(IOException e) {
-            throw e;
-        } finally {
-            if (writeStream != null) {
+    /**
+     * Searches are named after the category's grammar instead of its activation command so that
+     * changing the command does not need the grammar to be loaded again
+     * @param category the category
+     * @return name of the category's search
+     */
+    private static String getSearchName(SpeechCategory category) {
+        return category.getGrammerFileName();
+    }
+
+    private void buildPhraseTries(File assetsDir, HashMap<String, SpeechCategory> categories) {
+        HashMap<String, PhraseTrie<SpeechCategory>> grammarPhrases = new HashMap<>();
+        PhraseTrie<SpeechCategory> keywords = new PhraseTrie<>();
+        QuickCommandIndex<SpeechCategory> quickCommands = new QuickCommandIndex<>();
+        for (String command: categories.keySet()) {
+            SpeechCategory category = categories.get(command);
+            Command[] qCommands = category.getQuickCommands();
+            if (qCommands != null) {
+                for (Command qCommand: qCommands) {
+                    keywords.add(qCommand.getCommand(), MATCH_QUICK_COMMAND, category);
+                    quickCommands.add(qCommand.getCommand(), category, qCommand.getDebounceTime());
+                }
+            }
+
+            // Only grammars list every phrase they can return, reuse the ones already expanded
+            String name = getSearchName(category);
+            PhraseTrie<SpeechCategory> phrases = mGrammarPhrases.get(name);
+            if (phrases != null) {
+                grammarPhrases.put(name, phrases);
+            } else if (category.getModelType() == SpeechModel.DEFAULT) {
                 try {
-                    writeStream.close();
-                } catch (Exception e) {}
+                    phrases = new PhraseTrie<>();
+                    for (String phrase: JsgfPhrases.expand(new File(assetsDir, category.getGrammerFileName()))) {
+                        phrases.add(phrase, MATCH_COMMAND, category);
+                    }
+                    grammarPhrases.put(name, phrases);
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot expand grammar " + category.getGrammerFileName(), e);
+                }
             }
         }
-        return commandFile;
+
+        // Activation commands take precedence over quick commands
+        CommandSplitter<SpeechCategory> splitter = new CommandSplitter<>();
+        for (String command: categories.keySet()) {
+            SpeechCategory category = categories.get(command);
+            keywords.add(command, MATCH_CATEGORY, category);
+            PhraseTrie<SpeechCategory> phrases = grammarPhrases.get(getSearchName(category));
+            if (phrases != null) {
+                splitter.add(category, category.getActivationCommand(), phrases);
+            }
+        }
+        keywords.add(LOCK_PHRASE, MATCH_LOCK, null);
+        keywords.add(LOCK_PHRASE1, MATCH_LOCK, null);
+        keywords.add(LOCK_PHRASE2, MATCH_LOCK, null);
+        keywords.add(UNLOCK_PHRASE, MATCH_UNLOCK, null);
+        mGrammarPhrases = grammarPhrases;
+        mKeywordPhrases = keywords;
+        mQuickCommands = quickCommands;
+        mCommandSplitter = splitter;
     }
 
-    private void endTimeout() {
-        synchronized (mTimerLock) {
-            if (mTimer != null) {
-                mTimer.cancel();
-                mTimer = null;
+    /**
+     * Builds the keyword list in memory and only writes it to the commands file when it changed
+     * since it was last written
+     * @param categories copy of the categories taken when the pipeline started
+     * @return the commands file
+     * @throws IOException if the file cannot be written
+     */
+    private File generateCommandsFile(HashMap<String, SpeechCategory> categories) throws IOException {
+        ThresholdProfile profile = loadThresholdProfile();
+        StringBuilder sb = new StringBuilder();
+        mKeywords.clear();
+        for (String key: categories.keySet()) {
+            SpeechCategory category = categories.get(key);
+            appendKeyword(sb, profile, category.getActivationCommand(), category.getActivationThreshold());
+
+            // Add all the quick commands
+            Command[] qCommands = category.getQuickCommands();
+            if (qCommands != null) {
+                for (Command command: qCommands) {
+                    appendKeyword(sb, profile, command.getCommand(), command.getThreshold());
+                }
             }
         }
+
+        // Add phrases to stop listening
+        appendKeyword(sb, profile, LOCK_PHRASE, Command.DefaultThreshold);
+        appendKeyword(sb, profile, LOCK_PHRASE1, Command.DefaultThreshold);
+        appendKeyword(sb, profile, LOCK_PHRASE2, Command.DefaultThreshold);
+
+        File commandFile = new File(mCtx.getFilesDir(), CommandFileName);
+        mCommandFileHash = HashedFile.writeIfChanged(commandFile, sb.toString());
+
+        // The phrase to start listening again is the only keyword while locked
+        sb.setLength(0);
+        appendKeyword(sb, profile, UNLOCK_PHRASE, String.valueOf(DecoderSetup.KWS_THRESHOLD));
+        mLockFile = new File(mCtx.getFilesDir(), LockFileName);
+        mLockFileHash = HashedFile.writeIfChanged(mLockFile, sb.toString());
+        return commandFile;
     }
 
-    private void endSpeech() {
-        endSpeech(null);
+    private void appendKeyword(StringBuilder sb, ThresholdProfile profile, String phrase, String fallback) {
+        mKeywords.add(phrase);
+        sb.append(phrase).append(" /").append(profile.getThreshold(phrase, fallback)).append("/\n");
     }
 
-    private void endSpeech(final String text) {
-        endSpeech(text, KWS_SEARCH);
+    /**
+     * @return the tuned keyword thresholds bundled with the app, empty if there are none
+     */
+    private ThresholdProfile loadThresholdProfile() {
+        InputStream in = null;
+        try {
+            in = mCtx.getAssets().open(ThresholdProfileAsset);
+            ThresholdProfile profile = ThresholdProfile.read(in);
+            Log.i(TAG, "Using keyword threshold profile revision " + profile.getRevision());
+            return profile;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read keyword threshold profile, using default thresholds", e);
+            return new ThresholdProfile();
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
     }
 
-    private void endSpeech(final String text, final String newSearch) {
-        endTimeout();
-        if (mRecognizer != null) {
-            mRecognizer.cancel();
-            new Handler(Looper.getMainLooper()).post(new Runnable() {
-                @Override
-                public void run() {
-                    if (mCurrentCategory != null) {
-                        speechFinishedWithResult(text);
-                    }
-                    switchSearch(newSearch);
-                }
-            });
+    private void endTimeout() {
+        if (mNoiseTimer != null) {
+            mNoiseTimer.cancel();
+            mNoiseTimer = null;
         }
     }
 
@@ -0,0 +1,57 @@
+package com.matthewn4444.voiceautomation;
+
+import android.app.Service;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+
+import com.matthewn4444.voiceautomation.speech.RecognizerHost;
+import com.matthewn4444.voiceautomation.speech.RemoteRecognizer;
+
+import java.util.ArrayList;
+
+/**
+ * Runs the recognizers of RemoteRecognizer in a process of its own, declared with
+ * android:process=":speech" in the manifest. Each RemoteRecognizer that binds sends the pipes it
+ * talks through and gets a RecognizerHost, the service stops once the last one unbinds.
+ */
+public class SpeechProcessService extends Service {
+    private final ArrayList<RecognizerHost> mHosts = new ArrayList<>();
+
+    private final Messenger mMessenger = new Messenger(new Handler(Looper.getMainLooper(),
+            new Handler.Callback() {
+                @Override
+                public boolean handleMessage(Message msg) {
+                    if (msg.what != RemoteRecognizer.MSG_CONNECT) {
+                        return false;
+                    }
+                    // Forget the hosts whose app side disconnected
+                    for (int i = mHosts.size() - 1; i >= 0; i--) {
+                        if (!mHosts.get(i).isAlive()) {
+                            mHosts.remove(i);
+                        }
+                    }
+                    RecognizerHost host = new RecognizerHost(SpeechProcessService.this, msg.getData());
+                    mHosts.add(host);
+                    host.start();
+                    return true;
+                }
+            }));
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mMessenger.getBinder();
+    }
+
+    @Override
+    public void onDestroy() {
+        for (RecognizerHost host : mHosts) {
+            host.close();
+        }
+        mHosts.clear();
+        super.onDestroy();
+    }
+}
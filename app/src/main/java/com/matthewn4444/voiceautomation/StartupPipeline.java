@@ -0,0 +1,278 @@
+package com.matthewn4444.voiceautomation;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs startup work as a graph of stages where each stage starts as soon as the stages it depends
+ * on are done, so independent stages run at the same time. Every stage is timed into a trace that
+ * can be logged or exported in the Chrome trace event format (chrome://tracing).
+ */
+public class StartupPipeline {
+    private static final int THREAD_COUNT = 3;
+    private static ExecutorService sExecutor;
+
+    private final String mName;
+    private final LinkedHashMap<String, Stage> mStages = new LinkedHashMap<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mRemaining = new AtomicInteger();
+    private Listener mListener;
+    private long mStartTime;
+    private long mEndTime;
+    private boolean mFailed;
+
+    public interface Task {
+        public void run() throws Exception;
+    }
+
+    public interface Listener {
+        /**
+         * Called on the main thread when all stages finished or one of them failed
+         * @param error the exception of the failed stage, null if all stages finished
+         */
+        public void onPipelineFinished(Exception error);
+    }
+
+    private class Stage implements Runnable {
+        final String name;
+        final Task task;
+        final String[] dependencies;
+        final List<Stage> dependents = new ArrayList<>();
+        int waitingOn;
+        long start;
+        long end;
+        String threadName;
+
+        Stage(String name, Task task, String[] dependencies) {
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+        }
+
+        @Override
+        public void run() {
+            synchronized (StartupPipeline.this) {
+                if (mFailed) {
+                    return;
+                }
+            }
+            threadName = Thread.currentThread().getName();
+            start = System.nanoTime();
+            try {
+                task.run();
+            } catch (Exception e) {
+                end = System.nanoTime();
+                fail(e);
+                return;
+            }
+            end = System.nanoTime();
+            onStageFinished(this);
+        }
+    }
+
+    public StartupPipeline(String name) {
+        mName = name;
+    }
+
+    /**
+     * Adds a stage, must be called before start()
+     * @param name unique name of the stage
+     * @param task work of the stage, runs on a background thread
+     * @param dependencies names of the stages that must finish before this one starts, they must
+     *                     already be added
+     */
+    public void addStage(String name, Task task, String... dependencies) {
+        if (mStages.containsKey(name)) {
+            throw new IllegalArgumentException("Stage " + name + " already exists");
+        }
+        Stage stage = new Stage(name, task, dependencies);
+        for (String dependency : dependencies) {
+            Stage parent = mStages.get(dependency);
+            if (parent == null) {
+                throw new IllegalArgumentException("Stage " + name + " depends on unknown stage " + dependency);
+            }
+            parent.dependents.add(stage);
+        }
+        stage.waitingOn = dependencies.length;
+        mStages.put(name, stage);
+    }
+
+    public void start(Listener listener) {
+        mListener = listener;
+        mRemaining.set(mStages.size());
+        mStartTime = System.nanoTime();
+        List<Stage> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Stage stage : mStages.values()) {
+                if (stage.waitingOn == 0) {
+                    ready.add(stage);
+                }
+            }
+        }
+        if (ready.isEmpty()) {
+            finish(null);
+            return;
+        }
+        for (Stage stage : ready) {
+            getExecutor().execute(stage);
+        }
+    }
+
+    /**
+     * A stage that hands its result to the listener should check this while synchronized on the
+     * pipeline, the listener of a failed pipeline may already have run without it
+     * @return true if a stage failed
+     */
+    public synchronized boolean hasFailed() {
+        return mFailed;
+    }
+
+    /**
+     * @return milliseconds from start() till the last stage finished, -1 if not finished
+     */
+    public long getTotalTime() {
+        return mEndTime > 0 ? (mEndTime - mStartTime) / 1000000 : -1;
+    }
+
+    /**
+     * @param name stage name
+     * @return milliseconds the stage took, -1 if it did not finish
+     */
+    public long getStageTime(String name) {
+        Stage stage = mStages.get(name);
+        return stage != null && stage.end > 0 ? (stage.end - stage.start) / 1000000 : -1;
+    }
+
+    /**
+     * Writes each stage's start offset and duration to the log
+     * @param tag log tag
+     */
+    public void dump(String tag) {
+        for (Stage stage : mStages.values()) {
+            if (stage.end > 0) {
+                Log.i(tag, mName + " " + stage.name + " started +" + (stage.start - mStartTime) / 1000000
+                        + "ms on " + stage.threadName + ", took " + (stage.end - stage.start) / 1000000 + "ms");
+            } else {
+                Log.i(tag, mName + " " + stage.name + " did not run");
+            }
+        }
+        Log.i(tag, mName + " finished in " + getTotalTime() + "ms");
+    }
+
+    /**
+     * @return the trace in the Chrome trace event json format
+     */
+    public String toTraceJson() {
+        StringBuilder sb = new StringBuilder("{\"traceEvents\":[");
+        boolean first = true;
+        for (Stage stage : mStages.values()) {
+            if (stage.end == 0) {
+                continue;
+            }
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"name\":\"").append(stage.name)
+                    .append("\",\"cat\":\"").append(mName)
+                    .append("\",\"ph\":\"X\",\"pid\":0,\"tid\":\"").append(stage.threadName)
+                    .append("\",\"ts\":").append((stage.start - mStartTime) / 1000)
+                    .append(",\"dur\":").append((stage.end - stage.start) / 1000)
+                    .append('}');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    /**
+     * Exports the trace to a file that can be opened in chrome://tracing
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void exportTrace(File file) throws IOException {
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(toTraceJson().getBytes("UTF-8"));
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    private void onStageFinished(Stage stage) {
+        List<Stage> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Stage dependent : stage.dependents) {
+                if (--dependent.waitingOn == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        for (Stage next : ready) {
+            getExecutor().execute(next);
+        }
+        if (mRemaining.decrementAndGet() == 0) {
+            finish(null);
+        }
+    }
+
+    private void fail(Exception e) {
+        synchronized (this) {
+            if (mFailed) {
+                return;
+            }
+            mFailed = true;
+        }
+        finish(e);
+    }
+
+    private void finish(final Exception error) {
+        mEndTime = System.nanoTime();
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (mListener != null) {
+                    mListener.onPipelineFinished(error);
+                }
+            }
+        });
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            // Separate from AsyncTask's serial executor so startup does not queue behind other work
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 30,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Startup #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+}
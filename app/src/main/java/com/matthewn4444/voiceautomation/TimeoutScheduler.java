@@ -0,0 +1,188 @@
+package com.matthewn4444.voiceautomation;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * App wide scheduler for timeouts so that each timeout does not need its own Timer thread. Main
+ * thread timeouts are posted straight to the main looper's handler, the others share one
+ * background thread. Scheduling returns a token that cancels the timeout, and the scheduler
+ * keeps track of how many timeouts are pending and how late they run compared to when they were
+ * due.
+ */
+public class TimeoutScheduler {
+    private static TimeoutScheduler sInstance;
+
+    private final ScheduledThreadPoolExecutor mExecutor;
+    private final Handler mMainHandler;
+    private final AtomicInteger mPendingCount = new AtomicInteger();
+
+    private final Object mStatsLock = new Object();
+    private long mFiredCount;
+    private long mTotalLateness;
+    private long mMaxLateness;
+
+    public class Token {
+        private final AtomicBoolean mDone = new AtomicBoolean();
+        private final Runnable mRunnable;
+        private final long mDueTime;
+        private final boolean mOnMainThread;
+        private volatile ScheduledFuture<?> mFuture;
+
+        private final Runnable mFireRunnable = new Runnable() {
+            @Override
+            public void run() {
+                fire();
+            }
+        };
+
+        private Token(Runnable runnable, long dueTime, boolean onMainThread) {
+            mRunnable = runnable;
+            mDueTime = dueTime;
+            mOnMainThread = onMainThread;
+        }
+
+        /**
+         * Cancels the timeout if it has not run yet
+         * @return true if the timeout will no longer run
+         */
+        public boolean cancel() {
+            if (mDone.compareAndSet(false, true)) {
+                mPendingCount.decrementAndGet();
+                if (mOnMainThread) {
+                    mMainHandler.removeCallbacks(mFireRunnable, this);
+                } else {
+                    ScheduledFuture<?> future = mFuture;
+                    if (future != null) {
+                        future.cancel(false);
+                        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+                            // No remove on cancel policy, drop it from the queue now
+                            mExecutor.purge();
+                        }
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isDone() {
+            return mDone.get();
+        }
+
+        private void fire() {
+            if (mDone.compareAndSet(false, true)) {
+                mPendingCount.decrementAndGet();
+                recordLateness(SystemClock.uptimeMillis() - mDueTime);
+                mRunnable.run();
+            }
+        }
+    }
+
+    private TimeoutScheduler() {
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TimeoutScheduler");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mExecutor.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    public static synchronized TimeoutScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new TimeoutScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Runs the runnable on the scheduler's background thread after the delay
+     * @param runnable work to do, keep it short since all timeouts share the thread
+     * @param delayMs delay in milliseconds
+     * @return token to cancel the timeout
+     */
+    public Token schedule(Runnable runnable, long delayMs) {
+        return schedule(runnable, delayMs, false);
+    }
+
+    /**
+     * Runs the runnable on the main thread after the delay
+     * @param runnable work to do
+     * @param delayMs delay in milliseconds
+     * @return token to cancel the timeout
+     */
+    public Token scheduleOnMainThread(Runnable runnable, long delayMs) {
+        return schedule(runnable, delayMs, true);
+    }
+
+    /**
+     * Posts the runnable to the main thread's shared handler
+     * @param runnable work to do
+     */
+    public void post(Runnable runnable) {
+        mMainHandler.post(runnable);
+    }
+
+    public int getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    public long getFiredCount() {
+        synchronized (mStatsLock) {
+            return mFiredCount;
+        }
+    }
+
+    /**
+     * @return the average amount of milliseconds timeouts ran after they were due
+     */
+    public long getAverageLateness() {
+        synchronized (mStatsLock) {
+            return mFiredCount > 0 ? mTotalLateness / mFiredCount : 0;
+        }
+    }
+
+    /**
+     * @return the most amount of milliseconds a timeout ran after it was due
+     */
+    public long getMaxLateness() {
+        synchronized (mStatsLock) {
+            return mMaxLateness;
+        }
+    }
+
+    private Token schedule(Runnable runnable, long delayMs, boolean onMainThread) {
+        Token token = new Token(runnable, SystemClock.uptimeMillis() + delayMs, onMainThread);
+        mPendingCount.incrementAndGet();
+        if (onMainThread) {
+            // The token tags the callback so that cancelling only removes this timeout
+            mMainHandler.postAtTime(token.mFireRunnable, token, token.mDueTime);
+        } else {
+            token.mFuture = mExecutor.schedule(token.mFireRunnable, delayMs, TimeUnit.MILLISECONDS);
+        }
+        return token;
+    }
+
+    private void recordLateness(long lateness) {
+        synchronized (mStatsLock) {
+            mFiredCount++;
+            mTotalLateness += lateness;
+            mMaxLateness = Math.max(mMaxLateness, lateness);
+        }
+    }
+}
@@ -17,8 +17,6 @@ import android.widget.Toast;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
 
 public class UIPresenter implements SpeechController.SpeechListener, SpeechCategory.OnUIStateChangedListener {
     public static final int CATEGORY_IMAGE_TIMEOUT = 5000;
@@ -41,7 +39,7 @@ public class UIPresenter implements SpeechController.SpeechListener, SpeechCateg
 
     private SpeechCategory mPriorityCategory;
     private SpeechCategory mCurrentCategory;
-    private Timer mHideTimer;
+    private TimeoutScheduler.Token mHideTimer;
     private SecondCounter mSecondCounter;
     private boolean mCategoryImageIsShowing;
     private boolean mIsReady;
@@ -119,19 +117,13 @@ public class UIPresenter implements SpeechController.SpeechListener, SpeechCateg
             mResultField.setText(text);
             mResultField.clearAnimation();
             mResultField.startAnimation(mResultTextFadeOut);
-            mHideTimer = new Timer();
-            mHideTimer.schedule(new TimerTask() {
+            mHideTimer = TimeoutScheduler.getInstance().scheduleOnMainThread(new Runnable() {
                 @Override
                 public void run() {
-                    mActivity.runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            cancelTimer();
-                            mCategoryImageIsShowing = false;
-                            hideCategory(mCurrentCategory);
-                            mCurrentCategory = null;
-                        }
-                    });
+                    mHideTimer = null;
+                    mCategoryImageIsShowing = false;
+                    hideCategory(mCurrentCategory);
+                    mCurrentCategory = null;
                 }
             }, CATEGORY_IMAGE_TIMEOUT);
 
@@ -188,16 +180,7 @@ public class UIPresenter implements SpeechController.SpeechListener, SpeechCateg
             mSharedUI.setText(R.string.prompt_no_permissions);
         }
         mIsReady = false;
-
-        for (SpeechCategory category : mCategoryViews.keySet()) {
-            View view = mCategoryViews.get(category);
-            ViewGroup layout = (ViewGroup)view.getParent();
-            layout.removeAllViews();
-            category.getPresenter().onDetachView(layout);
-            mMainCategoryHolder.removeView(layout);
-            category.setOnStateChangedListener(null);
-        }
-        mCategoryViews.clear();
+        detachCategories();
 
         // Setup the view categories lookup
         for (String command: categories.keySet()) {
@@ -214,6 +197,26 @@ public class UIPresenter implements SpeechController.SpeechListener, SpeechCateg
         updatePriority();
     }
 
+    /**
+     * Detaches the views from the categories, they outlive the activity in ListeningService
+     */
+    public void release() {
+        mSecondCounter.stop();
+        detachCategories();
+    }
+
+    private void detachCategories() {
+        for (SpeechCategory category : mCategoryViews.keySet()) {
+            View view = mCategoryViews.get(category);
+            ViewGroup layout = (ViewGroup)view.getParent();
+            layout.removeAllViews();
+            category.getPresenter().onDetachView(layout);
+            mMainCategoryHolder.removeView(layout);
+            category.setOnStateChangedListener(null);
+        }
+        mCategoryViews.clear();
+    }
+
     public void onConfigurationChanged(Configuration newConfig) {
         if (mPriorityCategory != null) {
             mPriorityCategory.getPresenter().onConfigurationChanged(newConfig, mSharedUI);
@@ -0,0 +1,22 @@
+package com.matthewn4444.voiceautomation.lights;
+
+import com.matthewn4444.voiceautomation.speech.CommandTable;
+
+/**
+ * Phrases of the lights category, the build writes lights.gram from these
+ */
+public class LightsCommands {
+    public enum Action {
+        TURN_ON, TURN_OFF, BRIGHTER, DIMMER, SET_PERCENT
+    }
+
+    public static CommandTable<Action> create() {
+        return new CommandTable<Action>()
+                .add(Action.TURN_ON, "turn on")
+                .add(Action.TURN_OFF, "turn off")
+                .add(Action.BRIGHTER, "brighter")
+                .add(Action.DIMMER, "dimmer")
+                .addNumberSlot(Action.SET_PERCENT, "percentage", "percent")
+                .addRule("percentage", "zero | <number> | [one] hundred");
+    }
+}
@@ -9,19 +9,18 @@ import com.matthewn4444.voiceautomation.LazyPref;
 import com.matthewn4444.voiceautomation.R;
 import com.matthewn4444.voiceautomation.SpeechCategory;
 import com.matthewn4444.voiceautomation.SpeechController.SpeechModel;
-
-import java.security.InvalidParameterException;
+import com.matthewn4444.voiceautomation.lights.LightsCommands.Action;
+import com.matthewn4444.voiceautomation.speech.CommandTable;
 
 public class LightsSpeechCategory extends SpeechCategory {
     private final ILightController mLightController;
     private final ConnectivityManager mConManager;
 
-    // Commands
-    private static final String COMMAND_BRIGHTER = "brighter";
-    private static final String COMMAND_DIMMER = "dimmer";
-    private static final String COMMAND_TURN_OFF = "turn off";
-    private static final String COMMAND_TURN_ON = "turn on";
-    private static final String COMMAND_PERCENT = "percent";
+    private static final CommandTable<Action> COMMANDS = LightsCommands.create();
+
+    // Percentages that sound alike, such as "forty" and "fourteen", split the confidence
+    private static final float ACCEPT_CONFIDENCE = 0.8f;
+    private static final float REJECT_CONFIDENCE = 0.2f;
 
     public interface ILightController {
         public interface OnConnectionChangedListener {
@@ -80,25 +79,33 @@ public class LightsSpeechCategory extends SpeechCategory {
     public void onResult(String result) {
         if (result != null) {
             if (mLightController.isAvailable()) {
-                if (result.equals(COMMAND_TURN_OFF)) {
-                    mLightController.turnOff();
-                } else if (result.equals(COMMAND_TURN_ON)) {
-                    mLightController.turnOn();
-                } else if (result.equals(COMMAND_BRIGHTER)) {
-                    int brightness = mLightController.getBrightnessPercentage();
-                    mLightController.setBrightnessPercentage(brightness + getDimBrightenStep());
-                } else if (result.equals(COMMAND_DIMMER)) {
-                    int brightness = mLightController.getBrightnessPercentage();
-                    mLightController.setBrightnessPercentage(brightness - getDimBrightenStep());
-                } else if (result.endsWith(COMMAND_PERCENT)) {
-                    String text = result.substring(0, result.lastIndexOf(COMMAND_PERCENT));
-                    int percent = convertEnglishNumberStringToInteger(text);
-                    mLightController.setBrightnessPercentage(percent);
-                } else {
-                    Toast.makeText(getContext(), "Light Command '" + result + "' not supported",
-                            Toast.LENGTH_SHORT).show();
+                Action action = COMMANDS.find(result);
+                if (action == null) {
+                    showNotSupported(result);
                     return;
                 }
+                switch (action) {
+                    case TURN_OFF:
+                        mLightController.turnOff();
+                        break;
+                    case TURN_ON:
+                        mLightController.turnOn();
+                        break;
+                    case BRIGHTER:
+                        mLightController.setBrightnessPercentage(
+                                mLightController.getBrightnessPercentage() + getDimBrightenStep());
+                        break;
+                    case DIMMER:
+                        mLightController.setBrightnessPercentage(
+                                mLightController.getBrightnessPercentage() - getDimBrightenStep());
+                        break;
+                    case SET_PERCENT:
+                        mLightController.setBrightnessPercentage(Math.min(COMMANDS.getNumber(result), 100));
+                        break;
+                    default:
+                        showNotSupported(result);
+                        return;
+                }
                 ((LightsPresenter)getPresenter()).animateChange(mLightController.getBrightnessPercentage(),
                         mLightController.isOn());
 
@@ -114,150 +121,27 @@ public class LightsSpeechCategory extends SpeechCategory {
                 && LightsAutomator.isAutomationAllowedBySSID(getContext());     // TODO Temp till lifx fixes lan
     }
 
+    @Override
+    public float getAcceptConfidence() {
+        return ACCEPT_CONFIDENCE;
+    }
+
+    @Override
+    public float getRejectConfidence() {
+        return REJECT_CONFIDENCE;
+    }
+
+    private void showNotSupported(String result) {
+        Toast.makeText(getContext(), "Light Command '" + result + "' not supported",
+                Toast.LENGTH_SHORT).show();
+    }
+
     private int getDimBrightenStep() {
         return LazyPref.getIntDefaultRes(getContext(),
                 R.string.settings_general_light_dim_brighten_step_key,
                 R.integer.settings_default_dim_brighten_step);
     }
 
-    private int convertEnglishNumberStringToInteger(String number) {
-        String[] words = number.split(" ");
-        int sum = 0;
-        for (String word: words) {
-            InvalidParameterException e = new InvalidParameterException(
-                    "It is impossible to get here with " + word);
-            int len = word.length();
-            if (len >= 3) {
-                char c = word.charAt(2);
-                switch (len) {
-                    case 3:
-                        switch (c) {
-                            case 'e':
-                                sum += 1;
-                                break;
-                            case 'x':
-                                sum += 6;
-                                break;
-                            case 'o':
-                                sum += 2;
-                                break;
-                            case 'n':
-                                sum += 10;
-                                break;
-                            default:
-                                throw e;
-                        }
-                        break;
-                    case 4:
-                        switch (c) {
-                            case 'u':
-                                sum += 4;
-                                break;
-                            case 'v':
-                                sum += 5;
-                                break;
-                            case 'n':
-                                sum += 9;
-                                break;
-                            case 'r':       // Zero
-                                break;
-                            default:
-                                throw e;
-                        }
-                        break;
-                    case 5:
-                        switch (c) {
-                            case 'g':
-                                sum += 8;
-                                break;
-                            case 'f':
-                                sum += 50;
-                                break;
-                            case 'r':
-                                sum += word.charAt(0) == 'f' ? 40 : 3;
-                                break;
-                            case 'v':
-                                sum += 7;
-                                break;
-                            case 'x':
-                                sum += 60;
-                                break;
-                            default:
-                                throw e;
-                        }
-                        break;
-                    case 6:
-                        c = word.charAt(3);
-                        switch (c) {
-                            case 'h':
-                                sum += 80;
-                                break;
-                            case 'v':
-                                sum += 11;
-                                break;
-                            case 'e':
-                                sum += 90;
-                                break;
-                            case 'l':
-                                sum += 12;
-                                break;
-                            case 'r':
-                                sum += 30;
-                                break;
-                            case 'n':
-                                sum += 20;
-                                break;
-                            default:
-                                throw e;
-                        }
-                        break;
-                    case 7:
-                        switch (c) {
-                            case 'f':
-                                sum += 15;
-                                break;
-                            case 'x':
-                                sum += 16;
-                                break;
-                            case 'n':
-                                sum += 100;
-                                break;
-                            case 'v':
-                                sum += 70;
-                                break;
-                            default:
-                                throw e;
-                        }
-                        break;
-                    case 8:
-                        switch (c) {
-                            case 'u':
-                                sum += 14;
-                                break;
-                            case 'n':
-                                sum += 19;
-                                break;
-                            case 'i':
-                                sum += 13;
-                                break;
-                            case 'g':
-                                sum += 18;
-                                break;
-                            default:
-                                throw e;
-                        }
-                        break;
-                    case 9:
-                        sum += 17;
-                        break;
-                    default:
-                        throw e;
-                }
-            }
-        }
-        return Math.min(sum, 100);
-    }
-
     private boolean isWifiConnected() {
         NetworkInfo info = mConManager.getActiveNetworkInfo();
         return info.getType() == ConnectivityManager.TYPE_WIFI && info.isConnected();
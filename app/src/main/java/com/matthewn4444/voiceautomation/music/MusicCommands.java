@@ -0,0 +1,41 @@
+package com.matthewn4444.voiceautomation.music;
+
+import com.matthewn4444.voiceautomation.speech.CommandTable;
+
+/**
+ * Phrases of the music category, the build writes music.gram from these
+ */
+public class MusicCommands {
+    public enum Action {
+        PLAY, PAUSE, NEXT_SONG, PREVIOUS_SONG, VOLUME_UP, VOLUME_DOWN, SHUFFLE_ALL, MUTE, UNMUTE,
+        PLAY_AGAIN, SHUFFLE_ON, SHUFFLE_OFF, REPEAT_ON, REPEAT_OFF
+    }
+
+    public static CommandTable<Action> create() {
+        return new CommandTable<Action>()
+                .add(Action.PLAY, "play", "play music", "play song")
+                .add(Action.NEXT_SONG, "next", "next song", "play next song")
+                .add(Action.PREVIOUS_SONG, "previous", "previous song", "play previous song", "play last song")
+                .add(Action.PAUSE, "pause", "pause music", "pause song")
+                .add(Action.VOLUME_UP, "increase volume", "volume up", "louder")
+                .add(Action.VOLUME_DOWN, "decrease volume", "volume down", "lower volume", "quieter")
+                .add(Action.MUTE, "mute")
+                .add(Action.UNMUTE, "unmute")
+                .add(Action.SHUFFLE_ALL, "shuffle all", "shuffle all songs")
+                .add(Action.SHUFFLE_ON, "shuffle on", "enable shuffle")
+                .add(Action.SHUFFLE_OFF, "shuffle off", "disable shuffle")
+                .add(Action.REPEAT_ON, "repeat on", "enable repeat")
+                .add(Action.REPEAT_OFF, "repeat off", "disable repeat")
+                .add(Action.PLAY_AGAIN, "start over", "play again", "play song again", "play this song again");
+    }
+
+    /**
+     * @return the phrases said without the activation command
+     */
+    public static CommandTable<Action> createQuickCommands() {
+        return new CommandTable<Action>()
+                .add(Action.SHUFFLE_ALL, "shuffle all my songs")
+                .add(Action.NEXT_SONG, "play next song")
+                .add(Action.PREVIOUS_SONG, "play previous song");
+    }
+}
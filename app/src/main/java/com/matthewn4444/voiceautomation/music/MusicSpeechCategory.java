@@ -10,35 +10,15 @@ import com.matthewn4444.voiceautomation.R;
 import com.matthewn4444.voiceautomation.SharedMainUI;
 import com.matthewn4444.voiceautomation.SpeechCategory;
 import com.matthewn4444.voiceautomation.SpeechController;
+import com.matthewn4444.voiceautomation.music.MusicCommands.Action;
+import com.matthewn4444.voiceautomation.speech.CommandTable;
 
 public class MusicSpeechCategory extends SpeechCategory implements MusicController.OnStateChangedListener {
     private static final String TAG = "MusicSpeechCategory";
 
-    public static final String COMMAND_SHUFFLE_ALL_MY_SONGS = "shuffle all my songs";
-    public static final String COMMAND_PLAY_NEXT_SONG = "play next song";
-    public static final String COMMAND_MUTE = "mute";
-    public static final String COMMAND_UNMUTE = "unmute";
-
-    public static final String[] COMMANDS_PLAY_PREV_SONG = {"play previous song", "play last song"};
-
-    public static final String[] COMMANDS_PLAY_MUSIC = {"play", "play music", "play song"};
-    public static final String[] COMMANDS_NEXT_SONG = {"next", COMMAND_PLAY_NEXT_SONG, "next song"};
-    public static final String[] COMMANDS_PREV_SONG = {"previous", "previous song", COMMANDS_PLAY_PREV_SONG[0], COMMANDS_PLAY_PREV_SONG[1]};
-    public static final String[] COMMANDS_PAUSE = {"pause", "pause music", "pause song"};
-    public static final String[] COMMANDS_VOLUME_UP = {"volume up", "louder", "increase volume"};
-    public static final String[] COMMANDS_VOLUME_DOWN = {"volume down", "quieter", "decrease volume", "lower volume"};
-    public static final String[] COMMANDS_SHUFFLE_ALL = {"shuffle all", COMMAND_SHUFFLE_ALL_MY_SONGS, "shuffle all songs"};
-    public static final String[] COMMANDS_SHUFFLE_ON = {"shuffle on", "enable shuffle"};
-    public static final String[] COMMANDS_SHUFFLE_OFF = {"shuffle off", "disable shuffle"};
-    public static final String[] COMMANDS_REPEAT_ON = {"repeat on", "disable repeat"};
-    public static final String[] COMMANDS_REPEAT_OFF = {"repeat off", "disable repeat"};
-    public static final String[] COMMANDS_PLAY_AGAIN = {"start over", "play again", "play song again", "play this song again"};
-
-    public static final Command[] QUICK_COMMANDS = {
-            new Command(COMMAND_SHUFFLE_ALL_MY_SONGS, "1e-0.00000000000000000000000001f"),
-            new Command(COMMAND_PLAY_NEXT_SONG),
-            new Command(COMMANDS_PLAY_PREV_SONG[0], "1e-0.000000000000000000001f"),
-    };
+    private static final CommandTable<Action> COMMANDS = MusicCommands.create();
+    private static final CommandTable<Action> QUICK_COMMANDS = MusicCommands.createQuickCommands();
+    private static final Command[] QUICK_COMMAND_LIST = Command.fromPhrases(QUICK_COMMANDS.getPhrases());
 
     private final MusicController mController;
 
@@ -56,34 +36,9 @@ public class MusicSpeechCategory extends SpeechCategory implements MusicControll
     public void onResult(final String result) {
         if (result != null && isAvailable()) {
             MusicPresenter presenter = (MusicPresenter) getPresenter();
-            if (matchOneOf(result, COMMANDS_PLAY_MUSIC)) {
-                mController.play();
-            } else if (matchOneOf(result, COMMANDS_PAUSE)) {
-                mController.pause();
-            } else if (matchOneOf(result, COMMANDS_NEXT_SONG)) {
-                mController.playNextSong();
-            } else if (matchOneOf(result, COMMANDS_PREV_SONG)) {
-                mController.playPreviousSong();
-            } else if (matchOneOf(result, COMMANDS_VOLUME_UP)) {
-                mController.increaseVolume();
-            } else if (matchOneOf(result, COMMANDS_VOLUME_DOWN)) {
-                mController.decreaseVolume();
-            } else if (matchOneOf(result, COMMANDS_SHUFFLE_ALL)) {
-                mController.shuffleAll();
-            } else if (result.equals(COMMAND_UNMUTE)) {
-                mController.setMute(false);
-            } else if (result.equals(COMMAND_MUTE)) {
-                mController.setMute(true);
-            } else if (matchOneOf(result, COMMANDS_PLAY_AGAIN)) {
-                mController.seek(0);
-            } else if (matchOneOf(result, COMMANDS_SHUFFLE_ON)) {
-                mController.setShuffle(true);
-            } else if (matchOneOf(result, COMMANDS_SHUFFLE_OFF)) {
-                mController.setShuffle(false);
-            } else if (matchOneOf(result, COMMANDS_REPEAT_ON)) {
-                mController.setRepeat(true);
-            } else if (matchOneOf(result, COMMANDS_REPEAT_OFF)) {
-                mController.setRepeat(false);
+            Action action = COMMANDS.find(result);
+            if (action != null) {
+                perform(action);
             } else {
                 Toast.makeText(getContext(), "Music Command '" + result + "' is not supported",
                         Toast.LENGTH_SHORT).show();
@@ -125,21 +80,17 @@ public class MusicSpeechCategory extends SpeechCategory implements MusicControll
     @Override
     public boolean onQuickCommand(String command) {
         Toast.makeText(getContext(), command, Toast.LENGTH_SHORT).show();
-        if (command.equals(COMMAND_SHUFFLE_ALL_MY_SONGS)) {
-            mController.shuffleAll();
-        } else if (command.equals(COMMAND_PLAY_NEXT_SONG)) {
-            mController.playNextSong();
-        } else if (matchOneOf(command, COMMANDS_PLAY_PREV_SONG)) {
-            mController.playPreviousSong();
-        } else {
+        Action action = QUICK_COMMANDS.find(command);
+        if (action == null) {
             return false;
         }
+        perform(action);
         return true;
     }
 
     @Override
     public Command[] getQuickCommands() {
-        return QUICK_COMMANDS;
+        return QUICK_COMMAND_LIST;
     }
 
     public boolean isMute() {
@@ -154,12 +105,50 @@ public class MusicSpeechCategory extends SpeechCategory implements MusicControll
         return mController.isShuffleOn();
     }
 
-    private boolean matchOneOf(String text, String[] listOfWords) {
-        for (int i = 0; i < listOfWords.length; i++) {
-            if (text.equals(listOfWords[i])) {
-                return true;
-            }
+    private void perform(Action action) {
+        switch (action) {
+            case PLAY:
+                mController.play();
+                break;
+            case PAUSE:
+                mController.pause();
+                break;
+            case NEXT_SONG:
+                mController.playNextSong();
+                break;
+            case PREVIOUS_SONG:
+                mController.playPreviousSong();
+                break;
+            case VOLUME_UP:
+                mController.increaseVolume();
+                break;
+            case VOLUME_DOWN:
+                mController.decreaseVolume();
+                break;
+            case SHUFFLE_ALL:
+                mController.shuffleAll();
+                break;
+            case MUTE:
+                mController.setMute(true);
+                break;
+            case UNMUTE:
+                mController.setMute(false);
+                break;
+            case PLAY_AGAIN:
+                mController.seek(0);
+                break;
+            case SHUFFLE_ON:
+                mController.setShuffle(true);
+                break;
+            case SHUFFLE_OFF:
+                mController.setShuffle(false);
+                break;
+            case REPEAT_ON:
+                mController.setRepeat(true);
+                break;
+            case REPEAT_OFF:
+                mController.setRepeat(false);
+                break;
         }
-        return false;
     }
 }
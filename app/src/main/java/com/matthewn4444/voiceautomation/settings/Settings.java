@@ -6,6 +6,7 @@ import android.content.SharedPreferences;
 import android.net.wifi.WifiInfo;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
+import android.preference.ListPreference;
 import android.preference.Preference;
 import android.preference.PreferenceActivity;
 import android.preference.PreferenceFragment;
@@ -16,6 +17,9 @@ import android.widget.CompoundButton;
 import android.widget.Switch;
 
 import com.matthewn4444.voiceautomation.R;
+import com.matthewn4444.voiceautomation.SpeechController;
+import com.matthewn4444.voiceautomation.speech.DecoderProfile;
+import com.matthewn4444.voiceautomation.speech.DecoderProfileBenchmark;
 import com.matthewn4444.voiceautomation.settings.preferences.SummaryEditTextPreference;
 
 import java.util.List;
@@ -64,7 +68,11 @@ public class Settings extends PreferenceActivity {
         return true;
     }
 
-    public static class SpeechPrefFragment extends PreferenceFragment {
+    public static class SpeechPrefFragment extends PreferenceFragment implements
+            SharedPreferences.OnSharedPreferenceChangeListener {
+
+        private ListPreference mDecoderProfilePref;
+
         @Override
         public void onCreate(Bundle savedInstanceState) {
             super.onCreate(savedInstanceState);
@@ -73,6 +81,52 @@ public class Settings extends PreferenceActivity {
                 bar.setTitle(R.string.settings_speech_header_title);
             }
             addPreferencesFromResource(R.xml.settings_speech);
+
+            mDecoderProfilePref = (ListPreference) findPreference(getString(R.string.settings_speech_decoder_profile_key));
+            updateDecoderProfileSummary(getPreferenceManager().getSharedPreferences());
+        }
+
+        @Override
+        public void onResume() {
+            super.onResume();
+            getPreferenceManager().getSharedPreferences().registerOnSharedPreferenceChangeListener(this);
+        }
+
+        @Override
+        public void onPause() {
+            super.onPause();
+            getPreferenceManager().getSharedPreferences().unregisterOnSharedPreferenceChangeListener(this);
+        }
+
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences pref, String key) {
+            updateDecoderProfileSummary(pref);
+        }
+
+        /**
+         * Shows the profile in use and how much of the processor it took when it was measured
+         */
+        private void updateDecoderProfileSummary(SharedPreferences pref) {
+            DecoderProfile profile = SpeechController.getDecoderProfile(getActivity());
+            CharSequence name = mDecoderProfilePref.getEntry();
+            if (profile != null && DecoderProfile.fromKey(mDecoderProfilePref.getValue()) == null) {
+                CharSequence[] values = mDecoderProfilePref.getEntryValues();
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i].equals(profile.getKey())) {
+                        name = getString(R.string.settings_speech_decoder_profile_summary_auto,
+                                mDecoderProfilePref.getEntries()[i]);
+                    }
+                }
+            }
+            Float cost = DecoderProfileBenchmark.parse(pref.getString(
+                    getString(R.string.settings_speech_decoder_profile_costs_key), null)).get(profile);
+            if (cost != null) {
+                mDecoderProfilePref.setSummary(getString(R.string.settings_speech_decoder_profile_summary,
+                        name, Math.round(cost * 100)));
+            } else {
+                mDecoderProfilePref.setSummary(getString(
+                        R.string.settings_speech_decoder_profile_summary_unmeasured, name));
+            }
         }
     }
 
@@ -0,0 +1,257 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+
+/**
+ * The Gaussians of a phonetically tied acoustic model such as en-us-ptm, read from its means,
+ * variances and model definition. Each base phone has a codebook of Gaussians shared by all of its
+ * states, so frames only need to be aligned to phones to know which Gaussians explain them. The
+ * mixture weights of each state are not read, every Gaussian of a codebook is treated as equally
+ * likely which is close enough to align phones and collect adaptation statistics. Only uses plain
+ * Java so it can be run anywhere.
+ */
+public class AcousticModel {
+    public static final String MEANS_FILE = "means";
+    public static final String VARIANCES_FILE = "variances";
+    public static final String DEFINITION_FILE = "mdef";
+
+    private static final int BYTE_ORDER_MAGIC = 0x11223344;
+    private static final String HEADER_END = "endhdr\n";
+    private static final String DEFINITION_MAGIC = "BMDF";
+    private static final float VARIANCE_FLOOR = 1e-4f;
+
+    private final int mCodebooks;
+    private final int mStreams;
+    private final int mDensities;
+    private final int[] mVectorLengths;
+    private final float[][][] mMeans;
+    private final float[][][] mInverseVariances;
+    private final float[][][] mNormalizers;
+    private final HashMap<String, Integer> mPhones = new HashMap<>();
+
+    /**
+     * @param modelDir directory of the acoustic model
+     * @throws IOException if the model cannot be read or is not phonetically tied
+     */
+    public AcousticModel(File modelDir) throws IOException {
+        ByteBuffer means = openGaussians(new File(modelDir, MEANS_FILE));
+        ByteBuffer variances = openGaussians(new File(modelDir, VARIANCES_FILE));
+        mCodebooks = means.getInt();
+        mStreams = means.getInt();
+        mDensities = means.getInt();
+        if (variances.getInt() != mCodebooks || variances.getInt() != mStreams
+                || variances.getInt() != mDensities) {
+            throw new IOException("Means and variances do not match");
+        }
+        mVectorLengths = new int[mStreams];
+        for (int s = 0; s < mStreams; s++) {
+            mVectorLengths[s] = means.getInt();
+            if (variances.getInt() != mVectorLengths[s]) {
+                throw new IOException("Means and variances do not match");
+            }
+        }
+        means.getInt();
+        variances.getInt();
+
+        // Stored by codebook, stream, density then dimension
+        mMeans = new float[mCodebooks][mStreams][];
+        mInverseVariances = new float[mCodebooks][mStreams][];
+        mNormalizers = new float[mCodebooks][mStreams][mDensities];
+        for (int c = 0; c < mCodebooks; c++) {
+            for (int s = 0; s < mStreams; s++) {
+                int length = mVectorLengths[s];
+                float[] mean = mMeans[c][s] = new float[mDensities * length];
+                float[] inverse = mInverseVariances[c][s] = new float[mDensities * length];
+                for (int m = 0; m < mDensities; m++) {
+                    double logDeterminant = 0;
+                    for (int d = 0; d < length; d++) {
+                        mean[m * length + d] = means.getFloat();
+                        float variance = Math.max(variances.getFloat(), VARIANCE_FLOOR);
+                        inverse[m * length + d] = 1 / variance;
+                        logDeterminant += Math.log(2 * Math.PI * variance);
+                    }
+                    mNormalizers[c][s][m] = (float) (-0.5 * logDeterminant);
+                }
+            }
+        }
+        readPhones(new File(modelDir, DEFINITION_FILE));
+        if (mPhones.size() != mCodebooks) {
+            throw new IOException("Not a phonetically tied model, " + mCodebooks + " codebooks for "
+                    + mPhones.size() + " phones");
+        }
+    }
+
+    /**
+     * @param phone base phone such as "AH" or "SIL"
+     * @return its codebook, -1 if the model does not have the phone
+     */
+    public int getCodebook(String phone) {
+        Integer codebook = mPhones.get(phone);
+        return codebook != null ? codebook : -1;
+    }
+
+    public int getCodebooks() {
+        return mCodebooks;
+    }
+
+    public int getStreams() {
+        return mStreams;
+    }
+
+    public int getDensities() {
+        return mDensities;
+    }
+
+    /**
+     * @param stream stream index
+     * @return the length of the stream's part of a feature
+     */
+    public int getVectorLength(int stream) {
+        return mVectorLengths[stream];
+    }
+
+    /**
+     * @return the offset of the stream's part of a feature
+     */
+    public int getStreamOffset(int stream) {
+        int offset = 0;
+        for (int s = 0; s < stream; s++) {
+            offset += mVectorLengths[s];
+        }
+        return offset;
+    }
+
+    public float[] getMeans(int codebook, int stream) {
+        return mMeans[codebook][stream];
+    }
+
+    public float[] getInverseVariances(int codebook, int stream) {
+        return mInverseVariances[codebook][stream];
+    }
+
+    /**
+     * @param codebook codebook index
+     * @param feature feature of a frame, see MfccFrontEnd
+     * @return the log likelihood of the frame in the codebook, summed over the streams
+     */
+    public double logLikelihood(int codebook, float[] feature) {
+        double[] densities = new double[mDensities];
+        double total = 0;
+        for (int s = 0; s < mStreams; s++) {
+            total += densityLogLikelihoods(codebook, s, feature, densities);
+        }
+        return total;
+    }
+
+    /**
+     * @param codebook codebook index
+     * @param stream stream index
+     * @param feature feature of a frame
+     * @param out log likelihood of each density in the codebook's stream
+     * @return the log likelihood of the stream, every density being equally likely
+     */
+    public double densityLogLikelihoods(int codebook, int stream, float[] feature, double[] out) {
+        int length = mVectorLengths[stream];
+        int offset = getStreamOffset(stream);
+        float[] means = mMeans[codebook][stream];
+        float[] inverse = mInverseVariances[codebook][stream];
+        float[] normalizers = mNormalizers[codebook][stream];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int m = 0; m < mDensities; m++) {
+            double distance = 0;
+            int base = m * length;
+            for (int d = 0; d < length; d++) {
+                double diff = feature[offset + d] - means[base + d];
+                distance += diff * diff * inverse[base + d];
+            }
+            out[m] = normalizers[m] - 0.5 * distance;
+            max = Math.max(max, out[m]);
+        }
+        double sum = 0;
+        for (int m = 0; m < mDensities; m++) {
+            sum += Math.exp(out[m] - max);
+        }
+        return max + Math.log(sum / mDensities);
+    }
+
+    /**
+     * Reads a means or variances file
+     * @return the file positioned after its header and byte order mark
+     */
+    private static ByteBuffer openGaussians(File file) throws IOException {
+        byte[] data = readFile(file);
+        String start = new String(data, 0, Math.min(data.length, 1024), "US-ASCII");
+        int end = start.indexOf(HEADER_END);
+        if (!start.startsWith("s3") || end < 0) {
+            throw new IOException(file + " is not a sphinx model file");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(end + HEADER_END.length());
+        int magic = buffer.getInt();
+        if (magic != BYTE_ORDER_MAGIC) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.position(buffer.position() - 4);
+            if (buffer.getInt() != BYTE_ORDER_MAGIC) {
+                throw new IOException(file + " has no byte order mark");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Reads the base phones from a binary model definition, in the order of their codebooks
+     */
+    private void readPhones(File file) throws IOException {
+        byte[] data = readFile(file);
+        if (data.length < 12 || !new String(data, 0, 4, "US-ASCII").equals(DEFINITION_MAGIC)) {
+            throw new IOException(file + " is not a binary model definition");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(4);
+        int version = buffer.getInt();
+        if (version != 1) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.position(4);
+            buffer.getInt();
+        }
+
+        // Skip the format description then the padding to four bytes
+        int headerLength = buffer.getInt();
+        int position = buffer.position() + headerLength;
+        buffer.position((position + 3) & ~3);
+
+        int phones = buffer.getInt();
+        buffer.position(buffer.position() + 9 * 4);
+        int pos = buffer.position();
+        for (int i = 0; i < phones; i++) {
+            int end = pos;
+            while (end < data.length && data[end] != 0) {
+                end++;
+            }
+            mPhones.put(new String(data, pos, end - pos, "US-ASCII"), i);
+            pos = end + 1;
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
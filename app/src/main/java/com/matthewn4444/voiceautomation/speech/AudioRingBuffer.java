@@ -0,0 +1,74 @@
+package com.matthewn4444.voiceautomation.speech;
+
+/**
+ * Fixed sized circular buffer of 16 bit PCM samples. The microphone thread continuously writes
+ * into it while the decoder reads from it. Audio is addressed by its absolute sample position
+ * (number of samples recorded since the buffer was created), so any position that has not been
+ * overwritten yet can be decoded again, e.g. the audio right after an activation keyword.
+ */
+public class AudioRingBuffer {
+    public static final int OVERRUN = -1;
+
+    private final short[] mBuffer;
+    private long mWritePosition;
+
+    public AudioRingBuffer(int capacity) {
+        mBuffer = new short[capacity];
+    }
+
+    public synchronized void write(short[] data, int length) {
+        int offset = 0;
+        if (length > mBuffer.length) {
+            // Only the newest samples fit
+            offset = length - mBuffer.length;
+            mWritePosition += offset;
+            length = mBuffer.length;
+        }
+        int start = (int) (mWritePosition % mBuffer.length);
+        int firstPart = Math.min(length, mBuffer.length - start);
+        System.arraycopy(data, offset, mBuffer, start, firstPart);
+        if (firstPart < length) {
+            System.arraycopy(data, offset + firstPart, mBuffer, 0, length - firstPart);
+        }
+        mWritePosition += length;
+        notifyAll();
+    }
+
+    /**
+     * Copies the samples starting at position into the destination, waiting for the microphone
+     * when the position has not been recorded yet.
+     * @param position absolute sample position to read from
+     * @param dst destination array
+     * @param length max amount of samples to read
+     * @return the amount of samples read or OVERRUN if the position was already overwritten
+     * @throws InterruptedException
+     */
+    public synchronized int read(long position, short[] dst, int length) throws InterruptedException {
+        while (position >= mWritePosition) {
+            wait();
+        }
+        if (position < getOldestPosition()) {
+            return OVERRUN;
+        }
+        length = (int) Math.min(length, mWritePosition - position);
+        int start = (int) (position % mBuffer.length);
+        int firstPart = Math.min(length, mBuffer.length - start);
+        System.arraycopy(mBuffer, start, dst, 0, firstPart);
+        if (firstPart < length) {
+            System.arraycopy(mBuffer, 0, dst, firstPart, length - firstPart);
+        }
+        return length;
+    }
+
+    public synchronized long getWritePosition() {
+        return mWritePosition;
+    }
+
+    public synchronized long getOldestPosition() {
+        return Math.max(0, mWritePosition - mBuffer.length);
+    }
+
+    public int getCapacity() {
+        return mBuffer.length;
+    }
+}
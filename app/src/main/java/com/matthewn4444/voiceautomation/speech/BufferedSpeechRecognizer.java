@@ -0,0 +1,788 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.FsgModel;
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * Replacement for pocketsphinx's SpeechRecognizer that separates recording from decoding. The
+ * microphone is read on its own thread into an AudioRingBuffer for as long as the recognizer is
+ * capturing, the decoder then reads from any position still held in that buffer. This allows a
+ * search to start at the exact point where the previous search produced its hypothesis so that
+ * nothing said in between is lost.
+ *
+ * Recognition events are posted to the handler given when it is created; stopping or cancelling
+ * removes any events that have not been delivered yet. Result events and their hypotheses are
+ * reused once delivered, so listeners must read the hypothesis during the call and decoding does
+ * not allocate an event for every block.
+ *
+ * When duty cycled, the microphone is only read for short windows while nothing is being decoded,
+ * so a command said in a quiet room may need to be repeated once the gate has woken up.
+ */
+public class BufferedSpeechRecognizer implements Recognizer {
+    private static final String TAG = "BufferedSpeechRecognizer";
+
+    public static final long CURRENT_POSITION = -1;
+
+    private static final int NO_TIMEOUT = -1;
+    private static final float RECORDER_BUFFER_SECONDS = 0.4f;
+    private static final float READ_SIZE_SECONDS = 0.1f;
+    private static final int PRE_ROLL_BUFFER_SECONDS = 10;
+
+    // Audio before the gate opened that is decoded so the start of the speech is not lost
+    private static final float GATE_ONSET_SECONDS = 0.3f;
+
+    // Duty cycle of the microphone, long enough to hear the start of a phrase in each window
+    private static final int DUTY_CYCLE_ON_MS = 400;
+    private static final int DUTY_CYCLE_OFF_MS = 600;
+
+    // The microphone stays on this long after decoding so a missed command can be repeated
+    private static final int DUTY_CYCLE_HOLD_MS = 10 * 1000;
+
+    private final Decoder mDecoder;
+    private final DecoderProfile mProfile;
+    private final int mSampleRate;
+    private final int mReadSize;
+    private final AudioRecord mRecorder;
+    private final AudioRingBuffer mAudioBuffer;
+    private final short[] mDecodeBuffer;
+    private final Handler mHandler;
+    private final HashMap<String, String> mKeywordHashes = new HashMap<>();
+    private final HashSet<String> mSearches = new HashSet<>();
+    private final HashSet<String> mScoredSearches = new HashSet<>();
+    private final HashSet<RecognitionListener> mListeners = new HashSet<>();
+    private volatile RecognitionListener[] mListenerArray = new RecognitionListener[0];
+    private final Object mEventPoolLock = new Object();
+    private ResultEvent mFreeEvents;
+    private final VoiceActivityGate mGate;
+    private final ListeningStats mStats;
+    private final LatencyHistogram mDeliveryLatency = new LatencyHistogram();
+
+    private Thread mCaptureThread;
+    private Thread mRecognizerThread;
+    private long mLastResultPosition;
+    private float mLastResultConfidence = ResultConfidence.UNKNOWN;
+    private long mLastResultTime;
+    private volatile UtteranceLog mUtteranceLog;
+    private volatile boolean mDutyCycled;
+    private volatile long mLastDecodeTime;
+
+    /**
+     * @param config decoder configuration, the profile's parameters are applied to it
+     * @param profile search parameters, keyword searches use it and the grammar and other short
+     *                searches use its forShortSearches() profile
+     * @param handler handler to post recognition events to
+     * @throws IOException if the microphone cannot be opened
+     */
+    public BufferedSpeechRecognizer(Config config, DecoderProfile profile, Handler handler) throws IOException {
+        mHandler = handler;
+        mProfile = profile;
+        profile.applyToDecoder(config);
+        mDecoder = new Decoder(config);
+        mSampleRate = (int) mDecoder.getConfig().getFloat("-samprate");
+        mReadSize = Math.round(mSampleRate * READ_SIZE_SECONDS);
+        mDecodeBuffer = new short[mReadSize];
+        mAudioBuffer = new AudioRingBuffer(mSampleRate * PRE_ROLL_BUFFER_SECONDS);
+        mGate = new VoiceActivityGate(mSampleRate);
+        mStats = new ListeningStats(mSampleRate);
+        mRecorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, mSampleRate,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT,
+                Math.round(mSampleRate * RECORDER_BUFFER_SECONDS) * 2);
+        if (mRecorder.getState() == AudioRecord.STATE_UNINITIALIZED) {
+            mRecorder.release();
+            throw new IOException("Failed to initialize recorder. Microphone might be already in use.");
+        }
+    }
+
+    @Override
+    public void addListener(RecognitionListener listener) {
+        synchronized (mListeners) {
+            mListeners.add(listener);
+            mListenerArray = mListeners.toArray(new RecognitionListener[mListeners.size()]);
+        }
+    }
+
+    @Override
+    public void removeListener(RecognitionListener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+            mListenerArray = mListeners.toArray(new RecognitionListener[mListeners.size()]);
+        }
+    }
+
+    public boolean startListening(String searchName) {
+        return startListening(searchName, NO_TIMEOUT, CURRENT_POSITION);
+    }
+
+    public boolean startListening(String searchName, int timeout) {
+        return startListening(searchName, timeout, CURRENT_POSITION);
+    }
+
+    /**
+     * Starts decoding the search from the given position in the recorded audio
+     * @param searchName name of the search to decode with
+     * @param timeout milliseconds of silence before timing out or NO_TIMEOUT
+     * @param position absolute sample position to start decoding from, use CURRENT_POSITION to
+     *                 start with the next audio recorded
+     * @return false if the recognizer is already decoding
+     */
+    @Override
+    public boolean startListening(String searchName, int timeout, long position) {
+        return startListening(searchName, timeout, position, false);
+    }
+
+    /**
+     * Starts decoding the search without a timeout, when gated the decoder only runs while the
+     * voice activity gate hears something louder than the background noise
+     * @param searchName name of the search to decode with
+     * @param gated true to use the voice activity gate
+     * @return false if the recognizer is already decoding
+     */
+    @Override
+    public boolean startListening(String searchName, boolean gated) {
+        return startListening(searchName, NO_TIMEOUT, CURRENT_POSITION, gated);
+    }
+
+    private boolean startListening(String searchName, int timeout, long position, boolean gated) {
+        if (mRecognizerThread != null) {
+            return false;
+        }
+        if (!startCapture()) {
+            return false;
+        }
+        Log.i(TAG, "Start recognition \"" + searchName + "\"");
+        mDecoder.setSearch(searchName);
+        if (position == CURRENT_POSITION) {
+            position = mAudioBuffer.getWritePosition();
+        }
+        mRecognizerThread = new RecognizerThread(searchName, timeout, position, gated);
+        mRecognizerThread.start();
+        return true;
+    }
+
+    public boolean stop() {
+        boolean result = stopRecognizerThread();
+        if (result) {
+            Log.i(TAG, "Stop recognition");
+            mHandler.removeCallbacksAndMessages(this);
+            Hypothesis hypothesis = mDecoder.hyp();
+            post(obtainResultEvent(hypothesis != null ? hypothesis.getHypstr().trim() : null,
+                    hypothesis != null ? hypothesis.getBestScore() : 0, true,
+                    mAudioBuffer.getWritePosition(), getFinalResultConfidence()));
+        }
+        return result;
+    }
+
+    /**
+     * @return the final hypothesis, null while decoding or if nothing was heard
+     */
+    @Override
+    public String getFinalResult() {
+        if (mRecognizerThread != null) {
+            return null;
+        }
+        Hypothesis hypothesis = mDecoder.hyp();
+        return hypothesis != null ? hypothesis.getHypstr() : null;
+    }
+
+    /**
+     * Scores the final hypothesis of a grammar search, only call once decoding has stopped
+     * @return the confidence of the hypothesis, UNKNOWN for searches that are not grammars
+     */
+    @Override
+    public float getFinalResultConfidence() {
+        if (mRecognizerThread != null || !mScoredSearches.contains(getSearchName())
+                || mDecoder.hyp() == null) {
+            return ResultConfidence.UNKNOWN;
+        }
+        return ResultConfidence.compute(mDecoder);
+    }
+
+    @Override
+    public boolean cancel() {
+        boolean result = stopRecognizerThread();
+        if (result) {
+            Log.i(TAG, "Cancel recognition");
+            mHandler.removeCallbacksAndMessages(this);
+        }
+        return result;
+    }
+
+    /**
+     * Stops decoding and releases the microphone, the buffered audio is discarded for the next
+     * time listening begins.
+     */
+    @Override
+    public void stopCapture() {
+        cancel();
+        if (mCaptureThread != null) {
+            mCaptureThread.interrupt();
+            try {
+                mCaptureThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mCaptureThread = null;
+            mRecorder.stop();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        stopCapture();
+        mRecorder.release();
+    }
+
+    public Decoder getDecoder() {
+        return mDecoder;
+    }
+
+    @Override
+    public DecoderProfile getProfile() {
+        return mProfile;
+    }
+
+    public String getSearchName() {
+        return mDecoder.getSearch();
+    }
+
+    /**
+     * @return the sample position of the audio that produced the result currently being
+     *         dispatched, pass it to startListening() to continue right where it ended
+     */
+    @Override
+    public long getLastResultPosition() {
+        return mLastResultPosition;
+    }
+
+    /**
+     * @return the confidence of the result currently being dispatched, UNKNOWN for searches that
+     *         are not grammars, see ResultConfidence
+     */
+    @Override
+    public float getLastResultConfidence() {
+        return mLastResultConfidence;
+    }
+
+    /**
+     * @return the elapsed realtime that the decoder produced the result currently being dispatched
+     */
+    public long getLastResultTime() {
+        return mLastResultTime;
+    }
+
+    /**
+     * @return the background noise level heard while listening behind the voice activity gate, see
+     *         VoiceActivityGate.getNoiseDecibels()
+     */
+    @Override
+    public double getNoiseDecibels() {
+        return mGate.getNoiseDecibels();
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public ListeningStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * @return milliseconds each partial result waited between the decoding thread and the
+     *         listeners, only read on the handler's thread
+     */
+    @Override
+    public LatencyHistogram getDeliveryLatency() {
+        return mDeliveryLatency;
+    }
+
+    /**
+     * Turns the microphone off for most of the time while gated listening is not decoding
+     * anything, see the class description
+     * @param dutyCycled true to duty cycle the microphone
+     */
+    @Override
+    public void setDutyCycled(boolean dutyCycled) {
+        mDutyCycled = dutyCycled;
+    }
+
+    /**
+     * Saves the audio of each decoded utterance to the log, takes effect the next time listening
+     * starts
+     * @param log utterance log or null to stop saving audio
+     */
+    @Override
+    public void setUtteranceLog(UtteranceLog log) {
+        mUtteranceLog = log;
+    }
+
+    @Override
+    public void markAccepted(String search, String text) {
+        UtteranceLog log = mUtteranceLog;
+        if (log != null) {
+            log.markAccepted(search, text);
+        }
+    }
+
+    /**
+     * The synced dictionary only has the words of the default commands, the words of commands the
+     * user changed are looked up in the full dictionary bundled in the apk
+     */
+    @Override
+    public Set<String> addMissingWords(Context ctx, Iterable<String> phrases) throws IOException {
+        Set<String> missing = PronunciationDictionary.findMissingWords(mDecoder, phrases);
+        if (missing.isEmpty()) {
+            return missing;
+        }
+        Log.v(TAG, "Adding pronunciations of " + missing);
+        InputStream in = ctx.getAssets().open(DecoderSetup.FULL_DICTIONARY_FILE);
+        try {
+            return PronunciationDictionary.addWords(mDecoder, missing, in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public void addGrammarSearch(String name, File file) {
+        Log.i(TAG, "Load JSGF " + file);
+        applyProfile(true);
+        mDecoder.setJsgfFile(name, file.getPath());
+        mSearches.add(name);
+        mScoredSearches.add(name);
+    }
+
+    /**
+     * Adds a grammar search from a compiled finite state grammar, see FsgGrammar
+     * @param name search name
+     * @param file compiled grammar file
+     */
+    @Override
+    public void addFsgSearch(String name, File file) {
+        Log.i(TAG, "Load FSG " + file);
+        FsgModel fsg = new FsgModel(file.getPath(), mDecoder.getLogmath(),
+                (float) mDecoder.getConfig().getFloat("-lw"));
+        applyProfile(true);
+        mDecoder.setFsg(name, fsg);
+        mSearches.add(name);
+        mScoredSearches.add(name);
+    }
+
+    @Override
+    public void addNgramSearch(String name, File file) {
+        Log.i(TAG, "Load N-gram model " + file);
+        applyProfile(true);
+        mDecoder.setLmFile(name, file.getPath());
+        mSearches.add(name);
+    }
+
+    public void addKeyphraseSearch(String name, String phrase) {
+        applyProfile(false);
+        mDecoder.setKeyphrase(name, phrase);
+        mSearches.add(name);
+    }
+
+    public void addKeywordSearch(String name, File file) {
+        applyProfile(false);
+        mDecoder.setKws(name, file.getPath());
+        mKeywordHashes.remove(name);
+        mSearches.add(name);
+    }
+
+    /**
+     * Adds the keyword search unless the same contents were already loaded under that name
+     * @param name search name
+     * @param file keyword list file
+     * @param contentHash hash of the file contents
+     * @return true if the file was loaded, false if the search was unchanged
+     */
+    @Override
+    public boolean addKeywordSearch(String name, File file, String contentHash) {
+        if (contentHash != null && contentHash.equals(mKeywordHashes.get(name))) {
+            return false;
+        }
+        Log.i(TAG, "Load keyword list " + file);
+        applyProfile(false);
+        mDecoder.setKws(name, file.getPath());
+        mKeywordHashes.put(name, contentHash);
+        mSearches.add(name);
+        return true;
+    }
+
+    @Override
+    public void addAllphoneSearch(String name, File file) {
+        applyProfile(true);
+        mDecoder.setAllphoneFile(name, file.getPath());
+        mSearches.add(name);
+    }
+
+    /**
+     * @param name search name
+     * @return true if a search was added with this name
+     */
+    @Override
+    public boolean hasSearch(String name) {
+        return mSearches.contains(name);
+    }
+
+    private boolean startCapture() {
+        if (mCaptureThread == null) {
+            mRecorder.startRecording();
+            if (mRecorder.getRecordingState() == AudioRecord.RECORDSTATE_STOPPED) {
+                mRecorder.stop();
+                post(new OnErrorEvent(new IOException(
+                        "Failed to start recording. Microphone might be already in use.")));
+                return false;
+            }
+            mCaptureThread = new CaptureThread();
+            mCaptureThread.start();
+        }
+        return true;
+    }
+
+    /**
+     * Sets the search parameters read by the next search added
+     * @param shortSearch true for searches that only run for a few seconds at a time
+     */
+    private void applyProfile(boolean shortSearch) {
+        (shortSearch ? mProfile.forShortSearches() : mProfile).applyToSearch(mDecoder.getConfig());
+    }
+
+    private void post(Runnable event) {
+        // Tag events with this recognizer so that only they are removed when decoding ends
+        mHandler.postAtTime(event, this, SystemClock.uptimeMillis());
+    }
+
+    /**
+     * Takes a result event from the ones already delivered or creates one if there are none
+     * @param text trimmed hypothesis text, null if there is no hypothesis
+     * @param bestScore score of the hypothesis
+     * @param finalResult true for the result given when decoding stops
+     * @param position sample position the result was decoded to
+     * @param confidence confidence of the result, see ResultConfidence
+     * @return the event to post
+     */
+    private ResultEvent obtainResultEvent(String text, int bestScore, boolean finalResult,
+                                          long position, float confidence) {
+        ResultEvent event;
+        synchronized (mEventPoolLock) {
+            event = mFreeEvents;
+            if (event != null) {
+                mFreeEvents = event.mNext;
+                event.mNext = null;
+            }
+        }
+        if (event == null) {
+            event = new ResultEvent();
+        }
+        event.set(text, bestScore, finalResult, position, confidence);
+        return event;
+    }
+
+    private void recycle(ResultEvent event) {
+        synchronized (mEventPoolLock) {
+            event.mNext = mFreeEvents;
+            mFreeEvents = event;
+        }
+    }
+
+    private boolean stopRecognizerThread() {
+        if (mRecognizerThread == null) {
+            return false;
+        }
+        try {
+            mRecognizerThread.interrupt();
+            mRecognizerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mRecognizerThread = null;
+        return true;
+    }
+
+    private final class CaptureThread extends Thread {
+        @Override
+        public void run() {
+            short[] buffer = new short[mReadSize];
+            long windowStart = SystemClock.elapsedRealtime();
+            while (!interrupted()) {
+                int nread = mRecorder.read(buffer, 0, buffer.length);
+                if (nread < 0) {
+                    post(new OnErrorEvent(new IOException("error reading audio buffer")));
+                    return;
+                }
+                mAudioBuffer.write(buffer, nread);
+
+                // The ring buffer positions carry on over the gap, the gate only sees less audio
+                long now = SystemClock.elapsedRealtime();
+                if (!mDutyCycled || now - mLastDecodeTime < DUTY_CYCLE_HOLD_MS) {
+                    windowStart = now;
+                } else if (now - windowStart >= DUTY_CYCLE_ON_MS) {
+                    mRecorder.stop();
+                    try {
+                        sleep(DUTY_CYCLE_OFF_MS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    mStats.addMicrophoneOff(DUTY_CYCLE_OFF_MS);
+                    mRecorder.startRecording();
+                    windowStart = SystemClock.elapsedRealtime();
+                }
+            }
+        }
+    }
+
+    private final class RecognizerThread extends Thread {
+        private final int mTimeoutSamples;
+        private final boolean mGated;
+        private final String mSearchName;
+        private final boolean mScored;
+        private final UtteranceLog mLog;
+        private int mRemainingSamples;
+        private long mPosition;
+        private String mScoredText;
+        private float mScoredConfidence;
+        private String mDecodedText;
+        private String mText;
+
+        public RecognizerThread(String searchName, int timeout, long position, boolean gated) {
+            mSearchName = searchName;
+            mScored = mScoredSearches.contains(searchName);
+            mLog = mUtteranceLog;
+            mTimeoutSamples = timeout != NO_TIMEOUT ? timeout * mSampleRate / 1000 : NO_TIMEOUT;
+            mRemainingSamples = mTimeoutSamples;
+            mPosition = Math.max(position, mAudioBuffer.getOldestPosition());
+            mGated = gated && timeout == NO_TIMEOUT;
+        }
+
+        @Override
+        public void run() {
+            Log.d(TAG, "Starting decoding" + (mGated ? " behind voice activity gate" : ""));
+            long cpuStart = SystemClock.currentThreadTimeMillis();
+            boolean decoding = !mGated;
+            if (decoding) {
+                startUtterance();
+            }
+            mGate.close();
+            boolean inSpeech = false;
+            long gateEnd = mPosition;
+            try {
+                while (!interrupted() && (mTimeoutSamples == NO_TIMEOUT || mRemainingSamples > 0)) {
+                    int nread = mAudioBuffer.read(mPosition, mDecodeBuffer, mDecodeBuffer.length);
+                    if (nread == AudioRingBuffer.OVERRUN) {
+                        // Decoder fell behind the microphone, skip to the oldest audio available
+                        mPosition = mAudioBuffer.getOldestPosition();
+                        continue;
+                    }
+                    if (!decoding) {
+                        // Only measure the energy till something is heard, then decode from a
+                        // little before it
+                        if (mGate.process(mDecodeBuffer, nread)) {
+                            mStats.addWakeup();
+                            gateEnd = mPosition + nread;
+                            mPosition = Math.max(mPosition - Math.round(mSampleRate * GATE_ONSET_SECONDS),
+                                    mAudioBuffer.getOldestPosition());
+                            startUtterance();
+                            decoding = true;
+                        } else {
+                            mPosition += nread;
+                            mStats.addAudio(mGated, nread, false);
+                        }
+                        continue;
+                    }
+                    mPosition += nread;
+                    mStats.addAudio(mGated, nread, true);
+                    mLastDecodeTime = SystemClock.elapsedRealtime();
+                    mDecoder.processRaw(mDecodeBuffer, nread, false, false);
+
+                    if (mDecoder.getInSpeech() != inSpeech) {
+                        inSpeech = mDecoder.getInSpeech();
+                        post(new InSpeechChangeEvent(inSpeech));
+                    }
+                    if (inSpeech) {
+                        mRemainingSamples = mTimeoutSamples;
+                    }
+                    // The binding returns a new hypothesis and string for every block, the text is
+                    // only trimmed when it changes so listeners keep getting the same instance
+                    Hypothesis hypothesis = mDecoder.hyp();
+                    String text = null;
+                    if (hypothesis != null) {
+                        String decodedText = hypothesis.getHypstr();
+                        if (!decodedText.equals(mDecodedText)) {
+                            mDecodedText = decodedText;
+                            mText = decodedText.trim();
+                        }
+                        text = mText;
+                    }
+                    float confidence = ResultConfidence.UNKNOWN;
+                    if (mScored && text != null) {
+                        // Building the lattice and N-best list is costly, only score a new hypothesis
+                        if (!text.equals(mScoredText)) {
+                            mScoredText = text;
+                            mScoredConfidence = ResultConfidence.compute(mDecoder);
+                        }
+                        confidence = mScoredConfidence;
+                    }
+                    post(obtainResultEvent(text, hypothesis != null ? hypothesis.getBestScore() : 0,
+                            false, mPosition, confidence));
+                    if (mLog != null) {
+                        mLog.append(mDecodeBuffer, nread, hypothesis);
+                    }
+
+                    if (mTimeoutSamples != NO_TIMEOUT) {
+                        mRemainingSamples -= nread;
+                    }
+
+                    // Go back to idle once it is quiet again and the decoder is not in speech. The
+                    // rewound onset was already measured, so only audio after it goes to the gate.
+                    int measured = (int) Math.min(nread, Math.max(0, gateEnd - (mPosition - nread)));
+                    if (mGated && measured < nread
+                            && !mGate.process(mDecodeBuffer, measured, nread - measured) && !inSpeech) {
+                        endUtterance();
+                        decoding = false;
+                        long now = SystemClock.currentThreadTimeMillis();
+                        mStats.addCpuTime(mGated, now - cpuStart);
+                        cpuStart = now;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Recognition was stopped
+            }
+            if (decoding) {
+                endUtterance();
+            }
+            mStats.addCpuTime(mGated, SystemClock.currentThreadTimeMillis() - cpuStart);
+
+            // Posted after the partial results still queued so that they are delivered first,
+            // stop() and cancel() remove what is queued themselves
+            if (mTimeoutSamples != NO_TIMEOUT && mRemainingSamples <= 0) {
+                post(new TimeoutEvent());
+            }
+        }
+
+        private void startUtterance() {
+            mDecoder.startUtt();
+            mScoredText = null;
+            mDecodedText = null;
+            if (mLog != null) {
+                mLog.begin(mSearchName);
+            }
+        }
+
+        private void endUtterance() {
+            mDecoder.endUtt();
+            if (mLog != null) {
+                mLog.end(mDecoder.hyp());
+            }
+        }
+    }
+
+    private abstract class RecognitionEvent implements Runnable {
+        @Override
+        public void run() {
+            for (RecognitionListener listener : mListenerArray) {
+                execute(listener);
+            }
+        }
+
+        protected abstract void execute(RecognitionListener listener);
+    }
+
+    private class InSpeechChangeEvent extends RecognitionEvent {
+        private final boolean mState;
+
+        InSpeechChangeEvent(boolean state) {
+            mState = state;
+        }
+
+        @Override
+        protected void execute(RecognitionListener listener) {
+            if (mState) {
+                listener.onBeginningOfSpeech();
+            } else {
+                listener.onEndOfSpeech();
+            }
+        }
+    }
+
+    private class ResultEvent extends RecognitionEvent {
+        private final TextHypothesis mHypothesis = new TextHypothesis();
+        private boolean mHasHypothesis;
+        private boolean mFinalResult;
+        private long mPosition;
+        private float mConfidence;
+        private long mTime;
+        private ResultEvent mNext;
+
+        void set(String text, int bestScore, boolean finalResult, long position, float confidence) {
+            mHypothesis.set(text, bestScore);
+            mHasHypothesis = text != null;
+            mFinalResult = finalResult;
+            mPosition = position;
+            mConfidence = confidence;
+            mTime = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void run() {
+            mLastResultPosition = mPosition;
+            mLastResultConfidence = mConfidence;
+            mLastResultTime = mTime;
+            if (!mFinalResult) {
+                mDeliveryLatency.add(SystemClock.elapsedRealtime() - mTime);
+            }
+            super.run();
+            recycle(this);
+        }
+
+        @Override
+        protected void execute(RecognitionListener listener) {
+            Hypothesis hypothesis = mHasHypothesis ? mHypothesis : null;
+            if (mFinalResult) {
+                listener.onResult(hypothesis);
+            } else {
+                listener.onPartialResult(hypothesis);
+            }
+        }
+    }
+
+    private class OnErrorEvent extends RecognitionEvent {
+        private final Exception mException;
+
+        OnErrorEvent(Exception exception) {
+            mException = exception;
+        }
+
+        @Override
+        protected void execute(RecognitionListener listener) {
+            listener.onError(mException);
+        }
+    }
+
+    private class TimeoutEvent extends RecognitionEvent {
+        @Override
+        protected void execute(RecognitionListener listener) {
+            listener.onTimeout();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Joins the grammars of several categories into one JSGF grammar that hears a command of one
+ * category followed by more commands of any of them, each after the conjunction and optionally
+ * the activation command of its category, such as "fifty percent and pause music" or "turn off
+ * and music pause". The rules of each grammar are renamed with a prefix so that rules with the
+ * same name in different grammars do not clash. Use CommandSplitter to split the result again.
+ */
+public class CombinedGrammar {
+    public static final String CONJUNCTION = "and";
+
+    // Commands heard in one utterance, keeps the grammar finite and small
+    public static final int MAX_COMMANDS = 3;
+
+    private static final Pattern RULE_NAME = Pattern.compile("<([^<>\\s]+)>");
+    private static final Pattern PUBLIC_RULE = Pattern.compile("public\\s+<([^<>\\s]+)>");
+    private static final String TOP_RULE = "commands";
+    private static final String NEXT_RULE = "next_command";
+
+    private final List<String> mActivationCommands = new ArrayList<>();
+    private final List<String> mRules = new ArrayList<>();
+    private final StringBuilder mDefinitions = new StringBuilder();
+
+    /**
+     * Adds the grammar of a category, the first one added is the category the utterance starts with
+     * @param activationCommand phrase that activates the category
+     * @param grammarFile JSGF grammar of the category
+     * @throws IOException if the grammar cannot be read or imports other grammars
+     */
+    public void add(String activationCommand, File grammarFile) throws IOException {
+        add(activationCommand, read(grammarFile));
+    }
+
+    /**
+     * @param activationCommand phrase that activates the category
+     * @param grammar JSGF grammar of the category
+     * @throws IOException if the grammar imports other grammars or has no public rule
+     */
+    public void add(String activationCommand, String grammar) throws IOException {
+        String rule = "c" + mRules.size();
+        String prefix = rule + "_";
+        String body = stripHeader(grammar);
+
+        // Every public rule is a command of the category
+        List<String> publicRules = new ArrayList<>();
+        Matcher matcher = PUBLIC_RULE.matcher(body);
+        while (matcher.find()) {
+            publicRules.add("<" + prefix + matcher.group(1) + ">");
+        }
+        if (publicRules.isEmpty()) {
+            throw new IOException("Grammar of '" + activationCommand + "' has no public rule");
+        }
+        body = body.replaceAll("public\\s+<", "<");
+
+        matcher = RULE_NAME.matcher(body);
+        StringBuffer renamed = new StringBuffer();
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String replacement = name.equals("NULL") || name.equals("VOID") ? name : prefix + name;
+            matcher.appendReplacement(renamed, "<" + Matcher.quoteReplacement(replacement) + ">");
+        }
+        matcher.appendTail(renamed);
+
+        mDefinitions.append(renamed).append('\n')
+                .append('<').append(rule).append("> = ");
+        for (int i = 0; i < publicRules.size(); i++) {
+            if (i > 0) {
+                mDefinitions.append(" | ");
+            }
+            mDefinitions.append(publicRules.get(i));
+        }
+        mDefinitions.append(" ;\n");
+        mRules.add(rule);
+        mActivationCommands.add(activationCommand);
+    }
+
+    /**
+     * @param name name of the grammar
+     * @return the combined JSGF grammar
+     */
+    public String build(String name) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#JSGF V1.0;\n\n// Written by the app from the category grammars, do not edit\n\n")
+                .append("grammar ").append(name).append(";\n\n");
+
+        // First category's command, then up to MAX_COMMANDS - 1 more after the conjunction
+        sb.append("public <").append(TOP_RULE).append("> = <").append(mRules.get(0)).append('>');
+        for (int i = 1; i < MAX_COMMANDS; i++) {
+            sb.append(" [").append(CONJUNCTION).append(" <").append(NEXT_RULE).append('>');
+        }
+        for (int i = 1; i < MAX_COMMANDS; i++) {
+            sb.append(']');
+        }
+        sb.append(" ;\n\n<").append(NEXT_RULE).append("> = ");
+        for (int i = 0; i < mRules.size(); i++) {
+            if (i > 0) {
+                sb.append(" |\n        ");
+            }
+            sb.append('[').append(mActivationCommands.get(i)).append("] <").append(mRules.get(i)).append('>');
+        }
+        sb.append(" ;\n\n").append(mDefinitions);
+        return sb.toString();
+    }
+
+    /**
+     * @return the grammar without comments, the header and the grammar name
+     * @throws IOException if it imports other grammars
+     */
+    private static String stripHeader(String grammar) throws IOException {
+        String body = grammar.replaceAll("(?s)/\\*.*?\\*/", " ")
+                .replaceAll("//[^\\n]*", " ")
+                .replaceAll("#JSGF[^;]*;", " ")
+                .replaceAll("grammar\\s+[^;\\s]+\\s*;", " ");
+        if (body.matches("(?s).*\\bimport\\s+<.*")) {
+            throw new IOException("Grammars that import other grammars cannot be combined");
+        }
+        return body.trim();
+    }
+
+    private static String read(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {}
+            }
+        }
+        return sb.toString();
+    }
+}
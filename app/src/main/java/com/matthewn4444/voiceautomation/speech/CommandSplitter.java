@@ -0,0 +1,116 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a result of a CombinedGrammar search back into the command of each category. The
+ * result is split at the conjunctions, trying later ones when a command contains the conjunction
+ * itself. A command after a conjunction belongs to the category of its activation command when it
+ * starts with one, otherwise to the category of the command before it if that category has it,
+ * otherwise to the first category that has it.
+ * @param <T> category that owns the commands
+ */
+public class CommandSplitter<T> {
+    private final List<T> mOwners = new ArrayList<>();
+    private final List<String> mActivationCommands = new ArrayList<>();
+    private final List<PhraseTrie<T>> mPhrases = new ArrayList<>();
+
+    /**
+     * A command and the category to run it
+     * @param <T> category that owns the command
+     */
+    public static class Command<T> {
+        public final T owner;
+        public final String phrase;
+
+        Command(T owner, String phrase) {
+            this.owner = owner;
+            this.phrase = phrase;
+        }
+
+        @Override
+        public String toString() {
+            return phrase;
+        }
+    }
+
+    /**
+     * @param owner the category
+     * @param activationCommand phrase that activates the category
+     * @param phrases every command of the category
+     */
+    public void add(T owner, String activationCommand, PhraseTrie<T> phrases) {
+        mOwners.add(owner);
+        mActivationCommands.add(activationCommand);
+        mPhrases.add(phrases);
+    }
+
+    /**
+     * @param first category the result starts with
+     * @param text result of the combined search
+     * @return the commands in the order they were said, null if the text cannot be split into
+     *         commands of the categories
+     */
+    public List<Command<T>> split(T first, String text) {
+        int index = mOwners.indexOf(first);
+        if (text == null || index < 0) {
+            return null;
+        }
+        String[] words = text.trim().split("\\s+");
+        List<Command<T>> commands = new ArrayList<>();
+        return split(words, 0, index, commands) ? commands : null;
+    }
+
+    private boolean split(String[] words, int start, int previous, List<Command<T>> commands) {
+        for (int end = start + 1; end <= words.length; end++) {
+            if (end < words.length && !words[end].equals(CombinedGrammar.CONJUNCTION)) {
+                continue;
+            }
+            String segment = join(words, start, end);
+            Command<T> command = commands.isEmpty() ? match(previous, segment) : resolve(previous, segment);
+            if (command == null) {
+                continue;
+            }
+            commands.add(command);
+            if (end == words.length || split(words, end + 1, mOwners.indexOf(command.owner), commands)) {
+                return true;
+            }
+            commands.remove(commands.size() - 1);
+        }
+        return false;
+    }
+
+    private Command<T> resolve(int previous, String segment) {
+        for (int i = 0; i < mOwners.size(); i++) {
+            String activation = mActivationCommands.get(i);
+            if (segment.startsWith(activation + " ")) {
+                Command<T> command = match(i, segment.substring(activation.length() + 1));
+                if (command != null) {
+                    return command;
+                }
+            }
+        }
+        Command<T> command = match(previous, segment);
+        for (int i = 0; command == null && i < mOwners.size(); i++) {
+            command = match(i, segment);
+        }
+        return command;
+    }
+
+    private Command<T> match(int owner, String phrase) {
+        return mPhrases.get(owner).find(phrase) != PhraseTrie.NO_MATCH
+                ? new Command<>(mOwners.get(owner), phrase) : null;
+    }
+
+    private static String join(String[] words, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                sb.append(' ');
+            }
+            sb.append(words[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,168 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Phrases a category understands bound to what they do, declared once. A result is dispatched
+ * with a single hash lookup instead of comparing it to every phrase, and the build writes the
+ * category's grammar from the same table so the grammar cannot list a phrase the category does
+ * not handle or miss one it does. Phrases can end with a number slot whose value is read by
+ * NumberWords.
+ *
+ * @param <T> what a phrase is bound to, such as an action of the category
+ */
+public class CommandTable<T> {
+    private static final String RULE_INDENT = "                    ";
+
+    private final LinkedHashMap<String, T> mPhrases = new LinkedHashMap<>();
+    private final LinkedHashMap<String, String> mRules = new LinkedHashMap<>();
+    private final List<NumberSlot<T>> mSlots = new ArrayList<>();
+
+    private static class NumberSlot<T> {
+        final T value;
+        final String rule;
+        final String suffix;
+
+        NumberSlot(T value, String rule, String suffix) {
+            this.value = value;
+            this.rule = rule;
+            this.suffix = suffix;
+        }
+
+        /**
+         * @return the length of the number at the start of the phrase, -1 if it does not match
+         */
+        int numberLength(String phrase) {
+            int length = phrase.length() - suffix.length() - 1;
+            if (length <= 0 || !phrase.endsWith(suffix) || phrase.charAt(length) != ' ') {
+                return -1;
+            }
+            return NumberWords.parse(phrase, 0, length) != NumberWords.NOT_A_NUMBER ? length : -1;
+        }
+    }
+
+    /**
+     * Binds phrases to a value
+     * @param value what the phrases do
+     * @param phrases phrases that do it
+     * @return this table
+     * @throws IllegalArgumentException if a phrase is already bound to something else
+     */
+    public CommandTable<T> add(T value, String... phrases) {
+        for (String phrase : phrases) {
+            T bound = mPhrases.get(phrase);
+            if (bound != null && !bound.equals(value)) {
+                throw new IllegalArgumentException("'" + phrase + "' is bound to both " + bound
+                        + " and " + value);
+            }
+            mPhrases.put(phrase, value);
+        }
+        return this;
+    }
+
+    /**
+     * Binds phrases made of a number followed by a word, such as "twenty percent"
+     * @param value what the phrases do
+     * @param rule grammar rule of the numbers said, either "number" for one to ninety nine or a
+     *             rule added with addRule
+     * @param suffix word said after the number
+     * @return this table
+     */
+    public CommandTable<T> addNumberSlot(T value, String rule, String suffix) {
+        mSlots.add(new NumberSlot<>(value, rule, suffix));
+        return this;
+    }
+
+    /**
+     * Adds a grammar rule used by a number slot
+     * @param name name of the rule without brackets
+     * @param alternatives JSGF of the rule, can reference <number>
+     * @return this table
+     */
+    public CommandTable<T> addRule(String name, String alternatives) {
+        mRules.put(name, alternatives);
+        return this;
+    }
+
+    /**
+     * @param phrase result of the category
+     * @return what the phrase is bound to, null if the category does not handle it
+     */
+    public T find(String phrase) {
+        T value = mPhrases.get(phrase);
+        if (value != null) {
+            return value;
+        }
+        for (int i = 0; i < mSlots.size(); i++) {
+            NumberSlot<T> slot = mSlots.get(i);
+            if (slot.numberLength(phrase) > 0) {
+                return slot.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param phrase result of the category
+     * @return the number said in the phrase's number slot, NOT_A_NUMBER if it has none
+     */
+    public int getNumber(String phrase) {
+        for (int i = 0; i < mSlots.size(); i++) {
+            int length = mSlots.get(i).numberLength(phrase);
+            if (length > 0) {
+                return NumberWords.parse(phrase, 0, length);
+            }
+        }
+        return NumberWords.NOT_A_NUMBER;
+    }
+
+    /**
+     * @return the phrases without number slots
+     */
+    public Set<String> getPhrases() {
+        return mPhrases.keySet();
+    }
+
+    /**
+     * @param name name of the grammar and its public rule
+     * @return the JSGF grammar of every phrase in the table
+     */
+    public String toGrammar(String name) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("#JSGF V1.0;\n\n");
+        sb.append("// Written by the build from the category's command table, change the commands there\n\n");
+        sb.append("grammar ").append(name).append(";\n\n");
+
+        List<String> alternatives = new ArrayList<>(mPhrases.keySet());
+        for (NumberSlot<T> slot : mSlots) {
+            alternatives.add("<" + slot.rule + "> " + slot.suffix);
+        }
+        appendRule(sb, "public <" + name + "> = ", alternatives);
+        for (String rule : mRules.keySet()) {
+            sb.append('\n');
+            appendRule(sb, "<" + rule + "> = ", Collections.singletonList(mRules.get(rule)));
+        }
+        if (!mSlots.isEmpty()) {
+            sb.append('\n').append(NumberWords.GRAMMAR_RULES);
+        }
+        return sb.toString();
+    }
+
+    private static void appendRule(StringBuilder sb, String start, List<String> alternatives) {
+        sb.append(start);
+        for (int i = start.length(); i < RULE_INDENT.length(); i++) {
+            sb.append(' ');
+        }
+        for (int i = 0; i < alternatives.size(); i++) {
+            if (i > 0) {
+                sb.append(" |\n").append(RULE_INDENT);
+            }
+            sb.append(alternatives.get(i));
+        }
+        sb.append(" ;\n");
+    }
+}
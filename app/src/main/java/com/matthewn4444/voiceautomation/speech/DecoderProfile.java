@@ -0,0 +1,88 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.util.Locale;
+
+import edu.cmu.pocketsphinx.Config;
+
+/**
+ * Decoder search parameters traded between CPU use and accuracy. Beam widths and the number of
+ * HMMs kept per frame are read by each search when it is added, so they are applied per search;
+ * the acoustic scoring downsampling is read once when the decoder is created. Balanced keeps
+ * pocketsphinx's defaults. The sample and frame rates are left alone as the acoustic model was
+ * trained at 16kHz and 100 frames a second.
+ */
+public enum DecoderProfile {
+    LOW_POWER(2, 1e-30, 1e-20, 1e-30, 1500, 10),
+    BALANCED(1, 1e-48, 7e-29, 1e-48, 30000, 5),
+    ACCURATE(1, 1e-60, 1e-40, 1e-60, 30000, 0);
+
+    private final int mDownsampling;
+    private final double mBeam;
+    private final double mWordBeam;
+    private final double mPhoneBeam;
+    private final int mMaxHmmsPerFrame;
+    private final int mLookaheadWindow;
+
+    DecoderProfile(int downsampling, double beam, double wordBeam, double phoneBeam,
+                   int maxHmmsPerFrame, int lookaheadWindow) {
+        mDownsampling = downsampling;
+        mBeam = beam;
+        mWordBeam = wordBeam;
+        mPhoneBeam = phoneBeam;
+        mMaxHmmsPerFrame = maxHmmsPerFrame;
+        mLookaheadWindow = lookaheadWindow;
+    }
+
+    /**
+     * Sets the parameters read when the decoder is created and the ones for its searches
+     * @param config configuration the decoder will be created with
+     */
+    public void applyToDecoder(Config config) {
+        config.setInt("-ds", mDownsampling);
+        applyToSearch(config);
+    }
+
+    /**
+     * Sets the parameters read by the next search added to the decoder
+     * @param config the decoder's configuration
+     */
+    public void applyToSearch(Config config) {
+        config.setFloat("-beam", mBeam);
+        config.setFloat("-wbeam", mWordBeam);
+        config.setFloat("-pbeam", mPhoneBeam);
+        config.setInt("-maxhmmpf", mMaxHmmsPerFrame);
+
+        // Only used by n-gram searches
+        config.setInt("-pl_window", mLookaheadWindow);
+    }
+
+    /**
+     * Searches that only run for a few seconds after a keyword can afford to search wider than
+     * the keyword search that runs all the time
+     * @return the profile for short searches
+     */
+    public DecoderProfile forShortSearches() {
+        DecoderProfile[] profiles = values();
+        return profiles[Math.min(ordinal() + 1, profiles.length - 1)];
+    }
+
+    /**
+     * @return name used in settings and command line arguments
+     */
+    public String getKey() {
+        return name().toLowerCase(Locale.US);
+    }
+
+    /**
+     * @param key name from getKey()
+     * @return the profile or null if no profile has that name
+     */
+    public static DecoderProfile fromKey(String key) {
+        for (DecoderProfile profile : values()) {
+            if (profile.getKey().equals(key)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,149 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import edu.cmu.pocketsphinx.Decoder;
+
+/**
+ * Picks the decoder profile a device can afford by timing how long each profile takes to run a
+ * keyword search over a few seconds of generated speech-like audio. Profiles are timed from the
+ * cheapest and timing stops at the first one that decodes too slowly, so a slow device does not
+ * spend long running the expensive ones. The most accurate profile that stayed under the limit
+ * is picked.
+ */
+public class DecoderProfileBenchmark {
+    // Fraction of a core the keyword search may use, it runs for as long as the app listens
+    public static final float MAX_REAL_TIME_FACTOR = 0.2f;
+
+    private static final String SEARCH_NAME = "profile";
+    private static final int SAMPLE_RATE = 16000;
+    private static final int AUDIO_SECONDS = 3;
+    private static final int CHUNK_SIZE = SAMPLE_RATE / 10;
+    private static final int SYLLABLE_SIZE = SAMPLE_RATE / 4;
+    private static final long SEED = 4444;
+
+    /**
+     * Creates a decoder for each profile and times it, takes a few seconds
+     * @param assetsDir directory with the synced assets
+     * @param keyphrase phrase to search for, its words must be in the dictionary
+     * @return real time factor of each profile timed, from the cheapest
+     */
+    public static LinkedHashMap<DecoderProfile, Float> measure(File assetsDir, String keyphrase) {
+        short[] audio = generateAudio();
+        LinkedHashMap<DecoderProfile, Float> costs = new LinkedHashMap<>();
+        for (DecoderProfile profile : DecoderProfile.values()) {
+            float cost = measure(assetsDir, profile, keyphrase, audio);
+            costs.put(profile, cost);
+            if (cost > MAX_REAL_TIME_FACTOR) {
+                break;
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * @param costs real time factors from measure()
+     * @return the most accurate profile under the limit, the cheapest if none are
+     */
+    public static DecoderProfile select(Map<DecoderProfile, Float> costs) {
+        DecoderProfile selected = DecoderProfile.values()[0];
+        for (DecoderProfile profile : costs.keySet()) {
+            if (costs.get(profile) <= MAX_REAL_TIME_FACTOR) {
+                selected = profile;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @param costs real time factors from measure()
+     * @return the costs written as "profile=factor" pairs separated by commas
+     */
+    public static String format(Map<DecoderProfile, Float> costs) {
+        StringBuilder sb = new StringBuilder();
+        for (DecoderProfile profile : costs.keySet()) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(profile.getKey()).append('=')
+                    .append(String.format(Locale.US, "%.3f", costs.get(profile)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param text costs from format(), can be null
+     * @return the costs, unreadable pairs are skipped
+     */
+    public static LinkedHashMap<DecoderProfile, Float> parse(String text) {
+        LinkedHashMap<DecoderProfile, Float> costs = new LinkedHashMap<>();
+        if (text == null) {
+            return costs;
+        }
+        for (String pair : text.split(",")) {
+            int equals = pair.indexOf('=');
+            DecoderProfile profile = equals > 0 ? DecoderProfile.fromKey(pair.substring(0, equals)) : null;
+            if (profile != null) {
+                try {
+                    costs.put(profile, Float.parseFloat(pair.substring(equals + 1)));
+                } catch (NumberFormatException e) {
+                    // Skip it
+                }
+            }
+        }
+        return costs;
+    }
+
+    private static float measure(File assetsDir, DecoderProfile profile, String keyphrase, short[] audio) {
+        Decoder decoder = new Decoder(DecoderSetup.createConfig(assetsDir, profile));
+        try {
+            decoder.setKeyphrase(SEARCH_NAME, keyphrase);
+            decoder.setSearch(SEARCH_NAME);
+            short[] chunk = new short[CHUNK_SIZE];
+
+            // Only the decoding is timed, loading the acoustic model is the same for every profile
+            long start = System.nanoTime();
+            decoder.startUtt();
+            for (int pos = 0; pos < audio.length; pos += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, audio.length - pos);
+                System.arraycopy(audio, pos, chunk, 0, length);
+                decoder.processRaw(chunk, length, false, false);
+            }
+            decoder.endUtt();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return (float) (seconds / AUDIO_SECONDS);
+        } finally {
+            decoder.delete();
+        }
+    }
+
+    /**
+     * Syllables of harmonics at a random pitch between quiet gaps over background noise, which
+     * keeps the decoder about as busy as real speech. Always the same audio so the times can be
+     * compared.
+     */
+    private static short[] generateAudio() {
+        Random random = new Random(SEED);
+        short[] audio = new short[SAMPLE_RATE * AUDIO_SECONDS];
+        for (int start = 0; start < audio.length; start += SYLLABLE_SIZE) {
+            boolean voiced = random.nextFloat() < 0.7f;
+            double pitch = 100 + random.nextFloat() * 120;
+            for (int i = start; i < Math.min(start + SYLLABLE_SIZE, audio.length); i++) {
+                double sample = random.nextGaussian() * 150;
+                if (voiced) {
+                    double t = (double) i / SAMPLE_RATE;
+                    double envelope = Math.sin(Math.PI * (i - start) / SYLLABLE_SIZE);
+                    for (int harmonic = 1; harmonic <= 8; harmonic++) {
+                        sample += envelope * 3000 / harmonic * Math.sin(2 * Math.PI * pitch * harmonic * t);
+                    }
+                }
+                audio[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+            }
+        }
+        return audio;
+    }
+}
@@ -0,0 +1,65 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.File;
+
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Decoder;
+
+/**
+ * Decoder configuration shared by the app and the offline benchmark so that both decode with the
+ * same models and settings.
+ */
+public class DecoderSetup {
+    public static final String ACOUSTIC_MODEL_DIR = "en-us-ptm";
+
+    // Pronunciations of the words in the grammars and default commands, generated by the build
+    public static final String DICTIONARY_FILE = "commands.dict";
+
+    // Every pronunciation, kept outside of the synced assets to look up the words of user commands
+    public static final String FULL_DICTIONARY_FILE = "cmudict-en-us.dict";
+
+    // Threshold to tune for keyphrase to balance between false alarms and misses
+    public static final float KWS_THRESHOLD = 1e-45f;
+
+    static {
+        System.loadLibrary("pocketsphinx_jni");
+    }
+
+    /**
+     * @param assetsDir directory with the synced assets
+     * @return configuration for a decoder with pocketsphinx's default search parameters
+     */
+    public static Config createConfig(File assetsDir) {
+        return createConfig(assetsDir, DecoderProfile.BALANCED);
+    }
+
+    /**
+     * @param assetsDir directory with the synced assets
+     * @param profile search parameters of the decoder
+     * @return configuration for a decoder of the acoustic model as it was trained
+     */
+    public static Config createConfig(File assetsDir, DecoderProfile profile) {
+        return createConfig(assetsDir, profile, null);
+    }
+
+    /**
+     * @param assetsDir directory with the synced assets
+     * @param profile search parameters of the decoder
+     * @param transform speaker adaptation transform of the acoustic model, can be null
+     * @return configuration for a decoder
+     */
+    public static Config createConfig(File assetsDir, DecoderProfile profile, File transform) {
+        Config config = Decoder.defaultConfig();
+        config.setString("-hmm", new File(assetsDir, ACOUSTIC_MODEL_DIR).getPath());
+        config.setString("-dict", new File(assetsDir, DICTIONARY_FILE).getPath());
+        config.setFloat("-kws_threshold", KWS_THRESHOLD);
+
+        // Use context-independent phonetic search, context-dependent is too slow for mobile
+        config.setBoolean("-allphone_ci", true);
+        if (transform != null) {
+            config.setString("-mllr", transform.getPath());
+        }
+        profile.applyToDecoder(config);
+        return config;
+    }
+}
@@ -0,0 +1,93 @@
+package com.matthewn4444.voiceautomation.speech;
+
+/**
+ * Learns from the recent commands of one category how long its searches need to listen, so a
+ * search can be closed as soon as it is safe instead of after fixed timeouts. It keeps, for the
+ * last few accepted commands, how long the user took to start talking, the longest pause between
+ * words and how long the whole command took. The timeouts from the settings stay the upper bound
+ * and are used as is until enough commands were heard. In a noisy room the decoder rarely hears
+ * the end of speech, so the listening window is cut closer to the longest command heard.
+ */
+public class Endpointer {
+    private static final int HISTORY_SIZE = 8;
+    private static final int MIN_HISTORY = 3;
+
+    // Background noise this far above silence keeps the decoder thinking someone is talking
+    public static final double NOISY_DECIBELS = 15;
+
+    private static final int MIN_SILENCE_TIMEOUT = 1500;
+    private static final int MIN_STABLE_TIMEOUT = 400;
+    private static final int MIN_LISTENING_TIMEOUT = 2500;
+    private static final int MARGIN = 500;
+    private static final float QUIET_LENGTH_FACTOR = 2.0f;
+    private static final float NOISY_LENGTH_FACTOR = 1.3f;
+    private static final float PAUSE_FACTOR = 1.5f;
+
+    private final long[] mOnsets = new long[HISTORY_SIZE];
+    private final long[] mPauses = new long[HISTORY_SIZE];
+    private final long[] mLengths = new long[HISTORY_SIZE];
+    private int mCount;
+    private int mNext;
+
+    /**
+     * Remembers a command that was accepted
+     * @param onsetMillis time from the start of listening till speech was heard
+     * @param longestPauseMillis longest time the partial result stayed the same before changing
+     * @param lengthMillis time from the start of listening till the command was accepted
+     */
+    public synchronized void addCommand(long onsetMillis, long longestPauseMillis, long lengthMillis) {
+        mOnsets[mNext] = onsetMillis;
+        mPauses[mNext] = longestPauseMillis;
+        mLengths[mNext] = lengthMillis;
+        mNext = (mNext + 1) % HISTORY_SIZE;
+        mCount = Math.min(mCount + 1, HISTORY_SIZE);
+    }
+
+    /**
+     * @param maxMillis timeout from the settings
+     * @return how long to wait for speech to start or continue before ending the search
+     */
+    public synchronized int getSilenceTimeout(int maxMillis) {
+        if (mCount < MIN_HISTORY) {
+            return maxMillis;
+        }
+        long timeout = (long) (max(mOnsets) * PAUSE_FACTOR) + MARGIN;
+        return clamp(Math.max(timeout, max(mPauses) + MARGIN), MIN_SILENCE_TIMEOUT, maxMillis);
+    }
+
+    /**
+     * @param maxMillis time a partial result must stay the same to be final without learning
+     * @return how long a partial result must stay the same before it is taken as the command
+     */
+    public synchronized int getStableTimeout(int maxMillis) {
+        if (mCount < MIN_HISTORY) {
+            return maxMillis;
+        }
+        return clamp((long) (max(mPauses) * PAUSE_FACTOR), MIN_STABLE_TIMEOUT, maxMillis);
+    }
+
+    /**
+     * @param maxMillis timeout from the settings
+     * @param noiseDecibels background noise above silence, see VoiceActivityGate
+     * @return how long the search can listen at most
+     */
+    public synchronized int getListeningTimeout(int maxMillis, double noiseDecibels) {
+        if (mCount < MIN_HISTORY) {
+            return maxMillis;
+        }
+        float factor = noiseDecibels >= NOISY_DECIBELS ? NOISY_LENGTH_FACTOR : QUIET_LENGTH_FACTOR;
+        return clamp((long) (max(mLengths) * factor) + MARGIN, MIN_LISTENING_TIMEOUT, maxMillis);
+    }
+
+    private long max(long[] values) {
+        long max = 0;
+        for (int i = 0; i < mCount; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    private static int clamp(long value, int min, int max) {
+        return (int) Math.max(Math.min(min, max), Math.min(value, max));
+    }
+}
@@ -0,0 +1,210 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compiles a JSGF grammar into the finite state grammar format the decoder loads directly, so the
+ * grammar does not have to be parsed and converted on every start. The grammar's phrases are put
+ * in a tree sharing their common beginnings, weighted so every phrase is equally likely like the
+ * alternatives of the JSGF rule, and states with the same weighted endings are merged so shared
+ * endings such as number slots are only stored once. The compiled grammar starts with the hash of
+ * the grammar it was made from so an edited grammar is never decoded with a stale compiled one.
+ */
+public class FsgGrammar {
+    public static final String EXTENSION = ".fsg";
+    private static final String GRAMMAR_EXTENSION = ".gram";
+    private static final String SOURCE_HASH_PREFIX = "# jsgf sha1 ";
+    private static final int START_STATE = 0;
+    private static final int FINAL_STATE = 1;
+
+    private static class Node {
+        final LinkedHashMap<String, Node> children = new LinkedHashMap<>();
+        int phrases;
+        boolean isEnd;
+    }
+
+    /**
+     * @param grammarFile JSGF grammar
+     * @return the compiled grammar file next to it
+     */
+    public static File getFsgFile(File grammarFile) {
+        String name = grammarFile.getName();
+        if (name.endsWith(GRAMMAR_EXTENSION)) {
+            name = name.substring(0, name.length() - GRAMMAR_EXTENSION.length());
+        }
+        return new File(grammarFile.getParentFile(), name + EXTENSION);
+    }
+
+    /**
+     * Compiles a grammar file
+     * @param grammarFile JSGF grammar
+     * @param fsgFile file to write the compiled grammar to
+     * @throws IOException if the grammar cannot be read or expanded, or the file cannot be written
+     */
+    public static void compile(File grammarFile, File fsgFile) throws IOException {
+        byte[] grammar = readFile(grammarFile);
+        String name = getFsgFile(grammarFile).getName();
+        name = name.substring(0, name.length() - EXTENSION.length());
+        String fsg = compile(new String(grammar, "UTF-8"), name, HashedFile.hash(grammar));
+        Writer out = new FileWriter(fsgFile);
+        try {
+            out.write(fsg);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @param grammar JSGF grammar
+     * @param name name of the compiled grammar
+     * @param sourceHash hash of the grammar to write in the header
+     * @return the compiled grammar
+     * @throws IOException if the grammar cannot be expanded
+     */
+    public static String compile(String grammar, String name, String sourceHash) throws IOException {
+        Node root = new Node();
+        for (String phrase : JsgfPhrases.expand(grammar)) {
+            add(root, phrase.trim().isEmpty() ? new String[0] : phrase.trim().split("\\s+"));
+        }
+        if (root.phrases == 0) {
+            throw new IOException("Grammar " + name + " has no phrases");
+        }
+
+        // States are kept as their transitions, with a tab in place of the state they leave
+        List<String> states = new ArrayList<>();
+        states.add(null);
+        states.add("");
+        int rootState = merge(root, new HashMap<String, Integer>(), states);
+        states.set(START_STATE, states.remove(rootState));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(SOURCE_HASH_PREFIX).append(sourceHash).append('\n');
+        sb.append("FSG_BEGIN ").append(name).append('\n');
+        sb.append("NUM_STATES ").append(states.size()).append('\n');
+        sb.append("START_STATE ").append(START_STATE).append('\n');
+        sb.append("FINAL_STATE ").append(FINAL_STATE).append('\n');
+        for (int i = 0; i < states.size(); i++) {
+            sb.append(states.get(i).replace("\t", "TRANSITION " + i + " "));
+        }
+        sb.append("FSG_END\n");
+        return sb.toString();
+    }
+
+    /**
+     * Finds the state of a node, nodes with the same transitions share a state. Children are
+     * merged first so the start node is always the last state added.
+     * @return the state of the node
+     */
+    private static int merge(Node node, HashMap<String, Integer> merged, List<String> states) {
+        if (node.children.isEmpty()) {
+            return FINAL_STATE;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String word : node.children.keySet()) {
+            Node child = node.children.get(word);
+            int to = merge(child, merged, states);
+            appendTransition(sb, to, (double) child.phrases / node.phrases, word);
+        }
+
+        // Phrases that are the beginning of longer phrases end with an empty transition
+        if (node.isEnd) {
+            appendTransition(sb, FINAL_STATE, 1.0 / node.phrases, null);
+        }
+        String transitions = sb.toString();
+        Integer state = merged.get(transitions);
+        if (state == null) {
+            state = states.size();
+            states.add(transitions);
+            merged.put(transitions, state);
+        }
+        return state;
+    }
+
+    /**
+     * @param fsgFile compiled grammar
+     * @param grammarFile JSGF grammar
+     * @return true if the compiled grammar exists and was compiled from the grammar as it is now
+     */
+    public static boolean isCompiledFrom(File fsgFile, File grammarFile) {
+        if (!fsgFile.exists()) {
+            return false;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(fsgFile));
+            String header = reader.readLine();
+            return header != null && header.startsWith(SOURCE_HASH_PREFIX)
+                    && header.substring(SOURCE_HASH_PREFIX.length()).trim()
+                            .equals(HashedFile.hash(readFile(grammarFile)));
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    private static void add(Node root, String[] words) {
+        Node node = root;
+        for (String word : words) {
+            Node child = node.children.get(word);
+            if (child == null) {
+                child = new Node();
+                node.children.put(word, child);
+            }
+            node = child;
+        }
+        if (node.isEnd) {
+            return;
+        }
+        node.isEnd = true;
+
+        // Count the phrase on every state it passes through
+        node = root;
+        node.phrases++;
+        for (String word : words) {
+            node = node.children.get(word);
+            node.phrases++;
+        }
+    }
+
+    private static void appendTransition(StringBuilder sb, int to, double probability, String word) {
+        sb.append('\t').append(to).append(' ')
+                .append(String.format(Locale.US, "%.6f", probability));
+        if (word != null) {
+            sb.append(' ').append(word);
+        }
+        sb.append('\n');
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,115 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/**
+ * Writes generated text files only when their contents change. The hash of the contents is kept
+ * next to the file and in memory, so an unchanged file costs neither a write nor a read. Files
+ * are written to a temporary file first and renamed over the old one so a reader never sees a
+ * partially written file.
+ */
+public class HashedFile {
+    private static final String HASH_SUFFIX = ".sha1";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Last known hash of each file written in this process
+    private static final HashMap<String, String> sHashes = new HashMap<>();
+
+    /**
+     * Writes the contents to the file if they differ from what it already has
+     * @param file file to write
+     * @param contents text contents
+     * @return the hash of the contents
+     * @throws IOException if the file cannot be written
+     */
+    public static String writeIfChanged(File file, String contents) throws IOException {
+        byte[] data = contents.getBytes("UTF-8");
+        String hash = hash(data);
+        String path = file.getAbsolutePath();
+        synchronized (sHashes) {
+            String lastHash = sHashes.get(path);
+            if (lastHash == null && file.exists()) {
+                lastHash = readHash(file);
+            }
+            if (!hash.equals(lastHash) || !file.exists()) {
+                write(file, data);
+                write(new File(path + HASH_SUFFIX), hash.getBytes("UTF-8"));
+            }
+            sHashes.put(path, hash);
+        }
+        return hash;
+    }
+
+    public static String hash(byte[] data) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = digest.digest(data);
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static String readHash(File file) {
+        File hashFile = new File(file.getAbsolutePath() + HASH_SUFFIX);
+        if (!hashFile.exists()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(hashFile);
+            byte[] buffer = new byte[(int) hashFile.length()];
+            int read = 0;
+            while (read < buffer.length) {
+                int n = in.read(buffer, read, buffer.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            return new String(buffer, 0, read, "UTF-8").trim();
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        File temp = new File(file.getAbsolutePath() + TEMP_SUFFIX);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(temp);
+            out.write(data);
+            out.getFD().sync();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {}
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Expands the public rules of a JSGF grammar into every phrase it accepts. Only finite grammars
+ * can be expanded, so the repeat operators are not supported. Supports alternatives, groups,
+ * optional groups and rule references; weights and tags are ignored.
+ */
+public class JsgfPhrases {
+    private final HashMap<String, List<List<Object>>> mRules = new HashMap<>();
+    private final List<String> mPublicRules = new ArrayList<>();
+    private final HashSet<String> mExpanding = new HashSet<>();
+    private final List<String> mTokens;
+    private int mPos;
+
+    private JsgfPhrases(String grammar) throws IOException {
+        mTokens = tokenize(grammar);
+        parse();
+    }
+
+    public static List<String> expand(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {}
+            }
+        }
+        return expand(sb.toString());
+    }
+
+    public static List<String> expand(String grammar) throws IOException {
+        JsgfPhrases jsgf = new JsgfPhrases(grammar);
+        List<String> phrases = new ArrayList<>();
+        for (String rule : jsgf.mPublicRules) {
+            phrases.addAll(jsgf.expandRule(rule));
+        }
+        return phrases;
+    }
+
+    private List<String> expandRule(String name) throws IOException {
+        if (name.equals("NULL")) {
+            List<String> empty = new ArrayList<>();
+            empty.add("");
+            return empty;
+        } else if (name.equals("VOID")) {
+            return new ArrayList<>();
+        }
+        List<List<Object>> rule = mRules.get(name);
+        if (rule == null) {
+            throw new IOException("Grammar references unknown rule <" + name + ">");
+        }
+        if (!mExpanding.add(name)) {
+            throw new IOException("Grammar rule <" + name + "> is recursive");
+        }
+        List<String> phrases = expandAlternatives(rule);
+        mExpanding.remove(name);
+        return phrases;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> expandAlternatives(List<List<Object>> alternatives) throws IOException {
+        List<String> phrases = new ArrayList<>();
+        for (List<Object> sequence : alternatives) {
+            List<String> current = new ArrayList<>();
+            current.add("");
+            for (Object item : sequence) {
+                List<String> options;
+                if (item instanceof Group) {
+                    Group group = (Group) item;
+                    options = expandAlternatives(group.alternatives);
+                    if (group.optional) {
+                        options.add("");
+                    }
+                } else {
+                    String token = (String) item;
+                    if (token.startsWith("<")) {
+                        options = expandRule(token.substring(1, token.length() - 1));
+                    } else {
+                        options = new ArrayList<>();
+                        options.add(token);
+                    }
+                }
+                List<String> next = new ArrayList<>(current.size() * options.size());
+                for (String prefix : current) {
+                    for (String option : options) {
+                        if (prefix.isEmpty()) {
+                            next.add(option);
+                        } else if (option.isEmpty()) {
+                            next.add(prefix);
+                        } else {
+                            next.add(prefix + " " + option);
+                        }
+                    }
+                }
+                current = next;
+            }
+            phrases.addAll(current);
+        }
+        return phrases;
+    }
+
+    private void parse() throws IOException {
+        while (mPos < mTokens.size()) {
+            String token = mTokens.get(mPos);
+            if (token.equals("#JSGF") || token.equals("grammar") || token.equals("import")) {
+                skipPast(";");
+                continue;
+            }
+            boolean isPublic = false;
+            if (token.equals("public")) {
+                isPublic = true;
+                token = next();
+            }
+            if (!token.startsWith("<")) {
+                throw new IOException("Expected rule name but found '" + token + "'");
+            }
+            String name = token.substring(1, token.length() - 1);
+            mPos++;
+            expect("=");
+            mRules.put(name, parseAlternatives());
+            expect(";");
+            if (isPublic) {
+                mPublicRules.add(name);
+            }
+        }
+    }
+
+    private List<List<Object>> parseAlternatives() throws IOException {
+        List<List<Object>> alternatives = new ArrayList<>();
+        List<Object> sequence = new ArrayList<>();
+        while (mPos < mTokens.size()) {
+            String token = mTokens.get(mPos);
+            if (token.equals(";") || token.equals(")") || token.equals("]")) {
+                break;
+            }
+            mPos++;
+            if (token.equals("|")) {
+                alternatives.add(sequence);
+                sequence = new ArrayList<>();
+            } else if (token.equals("(") || token.equals("[")) {
+                Group group = new Group();
+                group.optional = token.equals("[");
+                group.alternatives = parseAlternatives();
+                expect(group.optional ? "]" : ")");
+                sequence.add(group);
+            } else if (token.equals("*") || token.equals("+")) {
+                throw new IOException("Repeat operators cannot be expanded into phrases");
+            } else if (!token.startsWith("/") && !token.startsWith("{")) {
+                sequence.add(token);
+            }
+        }
+        alternatives.add(sequence);
+        return alternatives;
+    }
+
+    private String next() throws IOException {
+        mPos++;
+        if (mPos >= mTokens.size()) {
+            throw new IOException("Unexpected end of grammar");
+        }
+        return mTokens.get(mPos);
+    }
+
+    private void expect(String token) throws IOException {
+        if (mPos >= mTokens.size() || !mTokens.get(mPos).equals(token)) {
+            throw new IOException("Expected '" + token + "' in grammar");
+        }
+        mPos++;
+    }
+
+    private void skipPast(String token) {
+        while (mPos < mTokens.size() && !mTokens.get(mPos++).equals(token)) {}
+    }
+
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        int len = text.length();
+        while (i < len) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (text.startsWith("//", i)) {
+                while (i < len && text.charAt(i) != '\n') i++;
+            } else if (text.startsWith("/*", i)) {
+                int end = text.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+            } else if (c == '<' || c == '/' || c == '{') {
+                char close = c == '<' ? '>' : c == '/' ? '/' : '}';
+                int end = text.indexOf(close, i + 1);
+                end = end < 0 ? len : end + 1;
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else if ("()[]|;=*+".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                int start = i;
+                while (i < len && !Character.isWhitespace(text.charAt(i))
+                        && "()[]|;=*+<{".indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static class Group {
+        boolean optional;
+        List<List<Object>> alternatives;
+    }
+}
@@ -0,0 +1,67 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.util.Locale;
+
+/**
+ * Distribution of latencies in buckets that double in size, so a few slow results such as those
+ * delayed by a garbage collection show up in the high percentiles instead of disappearing in an
+ * average. Not thread safe, record and read from the same thread.
+ */
+public class LatencyHistogram {
+    // Bucket i holds latencies below 2^i milliseconds, the last one everything above
+    private static final int BUCKETS = 14;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /**
+     * @param millis latency to record
+     */
+    public void add(long millis) {
+        millis = Math.max(0, millis);
+        int bucket = 0;
+        while (bucket < BUCKETS - 1 && millis >= 1L << bucket) {
+            bucket++;
+        }
+        mCounts[bucket]++;
+        mCount++;
+        mSum += millis;
+        mMax = Math.max(mMax, millis);
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    public double getMean() {
+        return mCount > 0 ? (double) mSum / mCount : 0;
+    }
+
+    /**
+     * @param fraction fraction of the latencies, such as 0.99
+     * @return the upper bound of the bucket holding that fraction of the latencies, at most the max
+     */
+    public long getPercentile(double fraction) {
+        long target = (long) Math.ceil(mCount * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= target && seen > 0) {
+                return Math.min(1L << i, mMax);
+            }
+        }
+        return mMax;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d results, mean %.1fms, p50 %dms, p90 %dms, p99 %dms, max %dms",
+                mCount, getMean(), getPercentile(0.5), getPercentile(0.9), getPercentile(0.99), mMax);
+    }
+}
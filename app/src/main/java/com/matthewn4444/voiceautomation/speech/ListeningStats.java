@@ -0,0 +1,120 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * CPU time and decoder wakeups of the recognizer's decoding thread, kept separately for gated and
+ * ungated listening so the cost of both can be compared per hour of audio. Time the microphone was
+ * off while duty cycled is kept apart as no audio was heard during it.
+ */
+public class ListeningStats {
+    private final int mSampleRate;
+    private final long[] mAudioSamples = new long[2];
+    private final long[] mCpuMillis = new long[2];
+    private final long[] mDecodedSamples = new long[2];
+    private long mWakeups;
+    private long mMicrophoneOffMillis;
+
+    public ListeningStats(int sampleRate) {
+        mSampleRate = sampleRate;
+    }
+
+    synchronized void addAudio(boolean gated, int samples, boolean decoded) {
+        mAudioSamples[gated ? 1 : 0] += samples;
+        if (decoded) {
+            mDecodedSamples[gated ? 1 : 0] += samples;
+        }
+    }
+
+    synchronized void addCpuTime(boolean gated, long millis) {
+        mCpuMillis[gated ? 1 : 0] += millis;
+    }
+
+    synchronized void addWakeup() {
+        mWakeups++;
+    }
+
+    synchronized void addMicrophoneOff(long millis) {
+        mMicrophoneOffMillis += millis;
+    }
+
+    /**
+     * @param gated true for the listening done with the voice activity gate
+     * @return hours of audio listened to
+     */
+    public synchronized double getListeningHours(boolean gated) {
+        return mAudioSamples[gated ? 1 : 0] / (mSampleRate * 3600.0);
+    }
+
+    /**
+     * @param gated true for the listening done with the voice activity gate
+     * @return milliseconds of CPU time used by the decoding thread per hour of audio
+     */
+    public synchronized double getCpuMillisPerHour(boolean gated) {
+        double hours = getListeningHours(gated);
+        return hours > 0 ? mCpuMillis[gated ? 1 : 0] / hours : 0;
+    }
+
+    /**
+     * @param gated true for the listening done with the voice activity gate
+     * @return fraction of the audio that went through the decoder
+     */
+    public synchronized double getDecodedFraction(boolean gated) {
+        long samples = mAudioSamples[gated ? 1 : 0];
+        return samples > 0 ? (double) mDecodedSamples[gated ? 1 : 0] / samples : 0;
+    }
+
+    /**
+     * @return times per hour of gated audio that the gate woke up the decoder
+     */
+    public synchronized double getWakeupsPerHour() {
+        double hours = getListeningHours(true);
+        return hours > 0 ? mWakeups / hours : 0;
+    }
+
+    /**
+     * @return fraction of the gated listening time the microphone was on, below 1 when duty cycled
+     */
+    public synchronized double getMicrophoneOnFraction() {
+        double onHours = getListeningHours(true);
+        double hours = onHours + mMicrophoneOffMillis / 3600000.0;
+        return hours > 0 ? onHours / hours : 1;
+    }
+
+    /**
+     * Writes the stats to be read back with readFrom() in another process
+     */
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mSampleRate);
+        for (int i = 0; i < 2; i++) {
+            out.writeLong(mAudioSamples[i]);
+            out.writeLong(mCpuMillis[i]);
+            out.writeLong(mDecodedSamples[i]);
+        }
+        out.writeLong(mWakeups);
+        out.writeLong(mMicrophoneOffMillis);
+    }
+
+    static ListeningStats readFrom(DataInputStream in) throws IOException {
+        ListeningStats stats = new ListeningStats(in.readInt());
+        for (int i = 0; i < 2; i++) {
+            stats.mAudioSamples[i] = in.readLong();
+            stats.mCpuMillis[i] = in.readLong();
+            stats.mDecodedSamples[i] = in.readLong();
+        }
+        stats.mWakeups = in.readLong();
+        stats.mMicrophoneOffMillis = in.readLong();
+        return stats;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("gated: %.2fh, %.0f cpu ms/h, %.1f%% decoded, %.1f wakeups/h, "
+                        + "%.1f%% microphone on; ungated: %.2fh, %.0f cpu ms/h",
+                getListeningHours(true), getCpuMillisPerHour(true), getDecodedFraction(true) * 100,
+                getWakeupsPerHour(), getMicrophoneOnFraction() * 100, getListeningHours(false),
+                getCpuMillisPerHour(false));
+    }
+}
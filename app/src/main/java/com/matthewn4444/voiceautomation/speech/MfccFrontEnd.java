@@ -0,0 +1,188 @@
+package com.matthewn4444.voiceautomation.speech;
+
+/**
+ * Turns audio into the features the acoustic model was trained on, following the front end
+ * settings in the model's feat.params: 13 cepstra from 25 mel filters between 130Hz and 6800Hz,
+ * orthogonal DCT, lifter of 22, then the cepstra with their first and second differences as three
+ * streams. The decoder does the same natively but does not hand its features out, this is used to
+ * compute the speaker adaptation. Cepstral mean normalization uses the mean of the whole
+ * utterance instead of the decoder's running mean, the little difference it makes is absorbed by
+ * the adaptation's bias.
+ */
+public class MfccFrontEnd {
+    public static final int SAMPLE_RATE = 16000;
+    public static final int CEPSTRA = 13;
+    public static final int STREAMS = 3;
+
+    private static final int FRAME_SHIFT = 160;
+    private static final int WINDOW_LENGTH = 410;
+    private static final int FFT_SIZE = 512;
+    private static final double PRE_EMPHASIS = 0.97;
+    private static final int FILTERS = 25;
+    private static final double LOWER_FREQUENCY = 130;
+    private static final double UPPER_FREQUENCY = 6800;
+    private static final int LIFTER = 22;
+    private static final double MIN_ENERGY = 1e-5;
+
+    private final double[] mWindow = new double[WINDOW_LENGTH];
+    private final double[][] mFilters = new double[FILTERS][FFT_SIZE / 2 + 1];
+    private final double[][] mDct = new double[CEPSTRA][FILTERS];
+    private final double[] mReal = new double[FFT_SIZE];
+    private final double[] mImag = new double[FFT_SIZE];
+    private final double[] mFilterLog = new double[FILTERS];
+
+    public MfccFrontEnd() {
+        for (int i = 0; i < WINDOW_LENGTH; i++) {
+            mWindow[i] = 0.54 - 0.46 * Math.cos(2 * Math.PI * i / (WINDOW_LENGTH - 1));
+        }
+
+        // Triangular filters spaced evenly on the mel scale with unit area
+        double binWidth = (double) SAMPLE_RATE / FFT_SIZE;
+        double melLow = toMel(LOWER_FREQUENCY);
+        double melStep = (toMel(UPPER_FREQUENCY) - melLow) / (FILTERS + 1);
+        for (int i = 0; i < FILTERS; i++) {
+            double left = fromMel(melLow + melStep * i);
+            double center = fromMel(melLow + melStep * (i + 1));
+            double right = fromMel(melLow + melStep * (i + 2));
+            double height = 2 / (right - left);
+            for (int bin = 0; bin <= FFT_SIZE / 2; bin++) {
+                double frequency = bin * binWidth;
+                if (frequency > left && frequency < right) {
+                    double slope = frequency < center ? (frequency - left) / (center - left)
+                            : (right - frequency) / (right - center);
+                    mFilters[i][bin] = slope * height;
+                }
+            }
+        }
+        for (int i = 0; i < CEPSTRA; i++) {
+            double scale = Math.sqrt((i == 0 ? 1.0 : 2.0) / FILTERS);
+            double lifter = 1 + LIFTER / 2.0 * Math.sin(Math.PI * i / LIFTER);
+            for (int j = 0; j < FILTERS; j++) {
+                mDct[i][j] = scale * lifter * Math.cos(Math.PI * i * (j + 0.5) / FILTERS);
+            }
+        }
+    }
+
+    /**
+     * @param audio 16kHz audio of one utterance
+     * @return features of each frame, each frame has the cepstra, first and second differences
+     *         one after the other; no frames if the audio is shorter than one window
+     */
+    public float[][] process(short[] audio) {
+        int frames = audio.length < WINDOW_LENGTH ? 0 : 1 + (audio.length - WINDOW_LENGTH) / FRAME_SHIFT;
+        float[][] cepstra = new float[frames][CEPSTRA];
+        double[] mean = new double[CEPSTRA];
+        for (int t = 0; t < frames; t++) {
+            computeCepstra(audio, t * FRAME_SHIFT, cepstra[t]);
+            for (int i = 0; i < CEPSTRA; i++) {
+                mean[i] += cepstra[t][i];
+            }
+        }
+        for (int t = 0; t < frames; t++) {
+            for (int i = 0; i < CEPSTRA; i++) {
+                cepstra[t][i] -= mean[i] / frames;
+            }
+        }
+
+        // Differences over two frames either side, frames past the ends repeat the first and last
+        float[][] features = new float[frames][CEPSTRA * STREAMS];
+        for (int t = 0; t < frames; t++) {
+            float[] feature = features[t];
+            for (int i = 0; i < CEPSTRA; i++) {
+                feature[i] = cepstra[t][i];
+                feature[CEPSTRA + i] = at(cepstra, t + 2, i) - at(cepstra, t - 2, i);
+                feature[CEPSTRA * 2 + i] = (at(cepstra, t + 3, i) - at(cepstra, t - 1, i))
+                        - (at(cepstra, t + 1, i) - at(cepstra, t - 3, i));
+            }
+        }
+        return features;
+    }
+
+    private void computeCepstra(short[] audio, int start, float[] out) {
+        double previous = start > 0 ? audio[start - 1] : 0;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            if (i < WINDOW_LENGTH) {
+                double sample = audio[start + i];
+                mReal[i] = (sample - PRE_EMPHASIS * previous) * mWindow[i];
+                previous = sample;
+            } else {
+                mReal[i] = 0;
+            }
+            mImag[i] = 0;
+        }
+        fft(mReal, mImag);
+        for (int i = 0; i < FILTERS; i++) {
+            double energy = 0;
+            double[] filter = mFilters[i];
+            for (int bin = 0; bin <= FFT_SIZE / 2; bin++) {
+                if (filter[bin] != 0) {
+                    energy += filter[bin] * (mReal[bin] * mReal[bin] + mImag[bin] * mImag[bin]);
+                }
+            }
+            mFilterLog[i] = Math.log(Math.max(energy, MIN_ENERGY));
+        }
+        for (int i = 0; i < CEPSTRA; i++) {
+            double sum = 0;
+            for (int j = 0; j < FILTERS; j++) {
+                sum += mDct[i][j] * mFilterLog[j];
+            }
+            out[i] = (float) sum;
+        }
+    }
+
+    private static float at(float[][] cepstra, int t, int i) {
+        return cepstra[Math.max(0, Math.min(cepstra.length - 1, t))][i];
+    }
+
+    private static double toMel(double frequency) {
+        return 2595 * Math.log10(1 + frequency / 700);
+    }
+
+    private static double fromMel(double mel) {
+        return 700 * (Math.pow(10, mel / 2595) - 1);
+    }
+
+    /**
+     * In place radix 2 FFT, the length must be a power of two
+     */
+    private static void fft(double[] real, double[] imag) {
+        int n = real.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double temp = real[i];
+                real[i] = real[j];
+                real[j] = temp;
+                temp = imag[i];
+                imag[i] = imag[j];
+                imag[j] = temp;
+            }
+        }
+        for (int length = 2; length <= n; length <<= 1) {
+            double angle = -2 * Math.PI / length;
+            double stepReal = Math.cos(angle);
+            double stepImag = Math.sin(angle);
+            for (int i = 0; i < n; i += length) {
+                double wReal = 1;
+                double wImag = 0;
+                for (int j = 0; j < length / 2; j++) {
+                    int a = i + j;
+                    int b = a + length / 2;
+                    double bReal = real[b] * wReal - imag[b] * wImag;
+                    double bImag = real[b] * wImag + imag[b] * wReal;
+                    real[b] = real[a] - bReal;
+                    imag[b] = imag[a] - bImag;
+                    real[a] += bReal;
+                    imag[a] += bImag;
+                    double nextReal = wReal * stepReal - wImag * stepImag;
+                    wImag = wReal * stepImag + wImag * stepReal;
+                    wReal = nextReal;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Estimates a global MLLR transform of the acoustic model's means from utterances with known
+ * words. Each utterance is aligned to the phones of its words, allowing silence before and after,
+ * then every speech frame counts towards the Gaussians of its phone's codebook in proportion to
+ * how well they explain it. The transform of each feature stream is solved row by row from those
+ * counts, pulled towards no change when there is little data, and written in the format the
+ * decoder reads with -mllr.
+ */
+public class MllrEstimator {
+    private static final String SILENCE = "SIL";
+
+    // Each phone lasts at least this many frames, like the three states of its HMM
+    private static final int STATES_PER_PHONE = 3;
+
+    // Densities explaining less of a frame than this are not counted
+    private static final double MIN_POSTERIOR = 1e-4;
+
+    // How strongly the transform is pulled towards no change, relative to the data
+    private static final double REGULARIZATION = 0.01;
+
+    private final AcousticModel mModel;
+    private final MfccFrontEnd mFrontEnd = new MfccFrontEnd();
+    private final double[][][] mOccupancy;
+    private final double[][][] mSums;
+    private final double[] mDensityScratch;
+    private int mFrames;
+
+    public MllrEstimator(AcousticModel model) {
+        mModel = model;
+        int codebooks = model.getCodebooks();
+        mOccupancy = new double[codebooks][model.getStreams()][model.getDensities()];
+        mSums = new double[codebooks][model.getStreams()][];
+        for (int c = 0; c < codebooks; c++) {
+            for (int s = 0; s < model.getStreams(); s++) {
+                mSums[c][s] = new double[model.getDensities() * model.getVectorLength(s)];
+            }
+        }
+        mDensityScratch = new double[model.getDensities()];
+    }
+
+    /**
+     * @return the speech frames counted so far
+     */
+    public int getFrames() {
+        return mFrames;
+    }
+
+    /**
+     * Aligns an utterance to its phones and counts its speech frames
+     * @param audio 16kHz audio of the utterance
+     * @param phones phones of the words said, without silence
+     * @return false if the audio is too short for the phones or a phone is not in the model
+     */
+    public boolean addUtterance(short[] audio, List<String> phones) {
+        int[] codebooks = new int[phones.size() + 2];
+        codebooks[0] = codebooks[codebooks.length - 1] = mModel.getCodebook(SILENCE);
+        for (int i = 0; i < phones.size(); i++) {
+            codebooks[i + 1] = mModel.getCodebook(phones.get(i));
+            if (codebooks[i + 1] < 0) {
+                return false;
+            }
+        }
+        float[][] features = mFrontEnd.process(audio);
+        int[] alignment = align(features, codebooks);
+        if (alignment == null) {
+            return false;
+        }
+        int silence = mModel.getCodebook(SILENCE);
+        for (int t = 0; t < features.length; t++) {
+            if (alignment[t] != silence) {
+                accumulate(alignment[t], features[t]);
+                mFrames++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Solves the transform and writes it
+     * @param file file to write the transform to
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("1\n").append(mModel.getStreams()).append('\n');
+        for (int s = 0; s < mModel.getStreams(); s++) {
+            int length = mModel.getVectorLength(s);
+            double[][] rows = solveStream(s);
+            sb.append(length).append('\n');
+            for (int i = 0; i < length; i++) {
+                for (int j = 0; j < length; j++) {
+                    sb.append(String.format(Locale.US, "%.6f ", rows[i][j]));
+                }
+                sb.append('\n');
+            }
+            for (int i = 0; i < length; i++) {
+                sb.append(String.format(Locale.US, "%.6f ", rows[i][length]));
+            }
+            sb.append('\n');
+
+            // Variances are left as they are
+            for (int i = 0; i < length; i++) {
+                sb.append("1.0 ");
+            }
+            sb.append('\n');
+        }
+        Writer out = new FileWriter(file);
+        try {
+            out.write(sb.toString());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Viterbi alignment of the frames to a sequence of phones, each made of a few states that
+     * must be passed through in order; the silences at both ends can be skipped
+     * @param features features of the utterance
+     * @param codebooks codebook of each phone, starting and ending with silence
+     * @return the codebook of each frame, null if the utterance is too short
+     */
+    private int[] align(float[][] features, int[] codebooks) {
+        int states = codebooks.length * STATES_PER_PHONE;
+        int frames = features.length;
+        int firstState = STATES_PER_PHONE;
+        if (frames < states - 2 * STATES_PER_PHONE) {
+            return null;
+        }
+
+        // Each codebook is only scored once per frame
+        List<Integer> distinct = new ArrayList<>();
+        int[] column = new int[codebooks.length];
+        for (int i = 0; i < codebooks.length; i++) {
+            int index = distinct.indexOf(codebooks[i]);
+            if (index < 0) {
+                index = distinct.size();
+                distinct.add(codebooks[i]);
+            }
+            column[i] = index;
+        }
+        double[][] scores = new double[frames][distinct.size()];
+        for (int t = 0; t < frames; t++) {
+            for (int i = 0; i < distinct.size(); i++) {
+                scores[t][i] = mModel.logLikelihood(distinct.get(i), features[t]);
+            }
+        }
+
+        double[] previous = new double[states];
+        double[] current = new double[states];
+        int[][] from = new int[frames][states];
+        // The first word can start right away and the silence after the last can be skipped
+        for (int s = 0; s < states; s++) {
+            boolean canStart = s == 0 || s == firstState;
+            previous[s] = canStart ? scores[0][column[s / STATES_PER_PHONE]] : Double.NEGATIVE_INFINITY;
+        }
+        for (int t = 1; t < frames; t++) {
+            for (int s = 0; s < states; s++) {
+                double best = previous[s];
+                int bestFrom = s;
+                if (s > 0 && previous[s - 1] > best) {
+                    best = previous[s - 1];
+                    bestFrom = s - 1;
+                }
+                current[s] = best + scores[t][column[s / STATES_PER_PHONE]];
+                from[t][s] = bestFrom;
+            }
+            double[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        int lastSpeech = states - STATES_PER_PHONE - 1;
+        int state = previous[states - 1] > previous[lastSpeech] ? states - 1 : lastSpeech;
+        if (previous[state] == Double.NEGATIVE_INFINITY) {
+            return null;
+        }
+        int[] alignment = new int[frames];
+        for (int t = frames - 1; t >= 0; t--) {
+            alignment[t] = codebooks[state / STATES_PER_PHONE];
+            state = from[t][state];
+        }
+        return alignment;
+    }
+
+    private void accumulate(int codebook, float[] feature) {
+        for (int s = 0; s < mModel.getStreams(); s++) {
+            double total = mModel.densityLogLikelihoods(codebook, s, feature, mDensityScratch);
+            int length = mModel.getVectorLength(s);
+            int offset = mModel.getStreamOffset(s);
+            double[] occupancy = mOccupancy[codebook][s];
+            double[] sums = mSums[codebook][s];
+            double logDensities = Math.log(mModel.getDensities());
+            for (int m = 0; m < mModel.getDensities(); m++) {
+                double posterior = Math.exp(mDensityScratch[m] - logDensities - total);
+                if (posterior < MIN_POSTERIOR) {
+                    continue;
+                }
+                occupancy[m] += posterior;
+                for (int d = 0; d < length; d++) {
+                    sums[m * length + d] += posterior * feature[offset + d];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the transform of each dimension of the stream, the factors of the means followed by
+     *         the bias
+     */
+    private double[][] solveStream(int stream) {
+        int length = mModel.getVectorLength(stream);
+        int size = length + 1;
+        double[][] rows = new double[length][];
+        for (int i = 0; i < length; i++) {
+            double[][] g = new double[size][size];
+            double[] k = new double[size];
+            double[] extended = new double[size];
+            extended[length] = 1;
+            for (int c = 0; c < mOccupancy.length; c++) {
+                float[] means = mModel.getMeans(c, stream);
+                float[] inverse = mModel.getInverseVariances(c, stream);
+                for (int m = 0; m < mModel.getDensities(); m++) {
+                    double occupancy = mOccupancy[c][stream][m];
+                    if (occupancy <= 0) {
+                        continue;
+                    }
+                    for (int d = 0; d < length; d++) {
+                        extended[d] = means[m * length + d];
+                    }
+                    double weight = inverse[m * length + i];
+                    double observed = mSums[c][stream][m * length + i] * weight;
+                    for (int a = 0; a < size; a++) {
+                        k[a] += observed * extended[a];
+                        for (int b = 0; b < size; b++) {
+                            g[a][b] += occupancy * weight * extended[a] * extended[b];
+                        }
+                    }
+                }
+            }
+
+            // Pull the row towards leaving the dimension as it is
+            double trace = 0;
+            for (int a = 0; a < size; a++) {
+                trace += g[a][a];
+            }
+            double prior = Math.max(REGULARIZATION * trace / size, 1e-6);
+            for (int a = 0; a < size; a++) {
+                g[a][a] += prior;
+            }
+            k[i] += prior;
+            rows[i] = solve(g, k);
+            if (rows[i] == null) {
+                rows[i] = new double[size];
+                rows[i][i] = 1;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Solves g x = k by Gaussian elimination with partial pivoting
+     * @return x, null if g is singular
+     */
+    private static double[] solve(double[][] g, double[] k) {
+        int n = k.length;
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(g[row][col]) > Math.abs(g[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(g[pivot][col]) < 1e-12) {
+                return null;
+            }
+            double[] tempRow = g[col];
+            g[col] = g[pivot];
+            g[pivot] = tempRow;
+            double temp = k[col];
+            k[col] = k[pivot];
+            k[pivot] = temp;
+            for (int row = col + 1; row < n; row++) {
+                double factor = g[row][col] / g[col][col];
+                for (int c = col; c < n; c++) {
+                    g[row][c] -= factor * g[col][c];
+                }
+                k[row] -= factor * k[col];
+            }
+        }
+        double[] x = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = k[row];
+            for (int c = row + 1; c < n; c++) {
+                sum -= g[row][c] * x[c];
+            }
+            x[row] = sum / g[row][row];
+        }
+        return x;
+    }
+}
@@ -0,0 +1,89 @@
+package com.matthewn4444.voiceautomation.speech;
+
+/**
+ * Reads numbers said in English words, such as "twenty one" or "one hundred five", straight from
+ * a hypothesis without splitting it or allocating. Goes with the number rules below, so a category
+ * can get the value of a number slot from the phrase it was given.
+ */
+public class NumberWords {
+    public static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+    // JSGF rules for the numbers from one to ninety nine, referenced as <number>
+    public static final String GRAMMAR_RULES =
+            "<number> =          <digit> | <teen> | <tens> [<digit>] ;\n\n"
+            + "<digit> =           one | two | three | four | five | six | seven | eight | nine ;\n\n"
+            + "<teen> =            ten | eleven | twelve | thirteen | fourteen | fifteen | sixteen |\n"
+            + "                    seventeen | eighteen | nineteen ;\n\n"
+            + "<tens> =            twenty | thirty | forty | fifty | sixty | seventy | eighty | ninety ;\n";
+
+    private static final String[] WORDS = {
+            "zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine",
+            "ten", "eleven", "twelve", "thirteen", "fourteen", "fifteen", "sixteen", "seventeen",
+            "eighteen", "nineteen", "twenty", "thirty", "forty", "fifty", "sixty", "seventy",
+            "eighty", "ninety", "hundred", "thousand"
+    };
+    private static final int[] VALUES = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9,
+            10, 11, 12, 13, 14, 15, 16, 17,
+            18, 19, 20, 30, 40, 50, 60, 70,
+            80, 90, 100, 1000
+    };
+    private static final int HUNDRED = 100;
+    private static final int THOUSAND = 1000;
+
+    /**
+     * @param text words of a number
+     * @return the number or NOT_A_NUMBER if any of the words is not part of a number
+     */
+    public static int parse(String text) {
+        return parse(text, 0, text.length());
+    }
+
+    /**
+     * @param text text with the words of a number
+     * @param start index of the first character
+     * @param end index after the last character
+     * @return the number or NOT_A_NUMBER if any of the words is not part of a number
+     */
+    public static int parse(String text, int start, int end) {
+        int total = 0;
+        int current = 0;
+        boolean hasWords = false;
+        int pos = start;
+        while (pos < end) {
+            if (text.charAt(pos) == ' ') {
+                pos++;
+                continue;
+            }
+            int wordEnd = pos;
+            while (wordEnd < end && text.charAt(wordEnd) != ' ') {
+                wordEnd++;
+            }
+            int value = lookup(text, pos, wordEnd - pos);
+            if (value < 0) {
+                return NOT_A_NUMBER;
+            }
+            if (value == HUNDRED) {
+                current = (current == 0 ? 1 : current) * HUNDRED;
+            } else if (value == THOUSAND) {
+                total += (current == 0 ? 1 : current) * THOUSAND;
+                current = 0;
+            } else {
+                current += value;
+            }
+            hasWords = true;
+            pos = wordEnd;
+        }
+        return hasWords ? total + current : NOT_A_NUMBER;
+    }
+
+    private static int lookup(String text, int start, int length) {
+        for (int i = 0; i < WORDS.length; i++) {
+            String word = WORDS[i];
+            if (word.length() == length && text.regionMatches(start, word, 0, length)) {
+                return VALUES[i];
+            }
+        }
+        return -1;
+    }
+}
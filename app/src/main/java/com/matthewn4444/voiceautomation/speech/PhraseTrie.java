@@ -0,0 +1,170 @@
+package com.matthewn4444.voiceautomation.speech;
+
+/**
+ * Character trie of every phrase the recognizer can return. Phrases are added once when the
+ * searches are built, afterwards looking up a hypothesis walks the trie one character at a time
+ * without allocating. Each phrase stores a kind and a value so the caller can tell what it
+ * matched, and the node where a phrase ends is marked so a phrase is final when no longer phrase
+ * continues it with another word, then there is no need to wait for more speech.
+ * @param <T> value stored with each phrase
+ */
+public class PhraseTrie<T> {
+    public static final int NO_MATCH = -1;
+    public static final int NO_KIND = -1;
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final char WORD_BOUNDARY = ' ';
+
+    private char[] mLabels;
+    private int[] mFirstChild;
+    private int[] mNextSibling;
+    private boolean[] mPhraseEnds;
+    private int[] mKinds;
+    private Object[] mValues;
+    private int mSize;
+    private int mPhraseCount;
+
+    public PhraseTrie() {
+        mLabels = new char[INITIAL_CAPACITY];
+        mFirstChild = new int[INITIAL_CAPACITY];
+        mNextSibling = new int[INITIAL_CAPACITY];
+        mPhraseEnds = new boolean[INITIAL_CAPACITY];
+        mKinds = new int[INITIAL_CAPACITY];
+        mValues = new Object[INITIAL_CAPACITY];
+        newNode('\0');
+    }
+
+    /**
+     * Adds the phrase, if it already exists then its kind and value are replaced
+     * @param phrase words separated by single spaces
+     * @param kind caller defined type of phrase
+     * @param value caller defined value of phrase
+     */
+    public void add(String phrase, int kind, T value) {
+        int start = skipLeadingSpace(phrase);
+        int end = skipTrailingSpace(phrase, start);
+        if (start == end) {
+            return;
+        }
+        int node = ROOT;
+        for (int i = start; i < end; i++) {
+            char c = phrase.charAt(i);
+            int child = findChild(node, c);
+            if (child == NONE) {
+                child = newNode(c);
+                mNextSibling[child] = mFirstChild[node];
+                mFirstChild[node] = child;
+            }
+            node = child;
+        }
+        if (!mPhraseEnds[node]) {
+            mPhraseEnds[node] = true;
+            mPhraseCount++;
+        }
+        mKinds[node] = kind;
+        mValues[node] = value;
+    }
+
+    /**
+     * Finds the node of the phrase equal to the text, surrounding whitespace is ignored
+     * @param text usually a hypothesis from the decoder
+     * @return node of the phrase or NO_MATCH
+     */
+    public int find(String text) {
+        if (text == null) {
+            return NO_MATCH;
+        }
+        int start = skipLeadingSpace(text);
+        int end = skipTrailingSpace(text, start);
+        if (start == end) {
+            return NO_MATCH;
+        }
+        int node = ROOT;
+        for (int i = start; i < end; i++) {
+            node = findChild(node, text.charAt(i));
+            if (node == NONE) {
+                return NO_MATCH;
+            }
+        }
+        return mPhraseEnds[node] ? node : NO_MATCH;
+    }
+
+    /**
+     * @param node returned from find()
+     * @return true if no longer phrase continues this phrase with another word, a longer word
+     *         that only starts with its last word does not count
+     */
+    public boolean isFinal(int node) {
+        return findChild(node, WORD_BOUNDARY) == NONE;
+    }
+
+    public int getKind(int node) {
+        return node != NO_MATCH ? mKinds[node] : NO_KIND;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getValue(int node) {
+        return node != NO_MATCH ? (T) mValues[node] : null;
+    }
+
+    public int size() {
+        return mPhraseCount;
+    }
+
+    private int findChild(int node, char c) {
+        int child = mFirstChild[node];
+        while (child != NONE && mLabels[child] != c) {
+            child = mNextSibling[child];
+        }
+        return child;
+    }
+
+    private int newNode(char label) {
+        if (mSize == mLabels.length) {
+            int capacity = mSize * 2;
+            char[] labels = new char[capacity];
+            int[] firstChild = new int[capacity];
+            int[] nextSibling = new int[capacity];
+            boolean[] phraseEnds = new boolean[capacity];
+            int[] kinds = new int[capacity];
+            Object[] values = new Object[capacity];
+            System.arraycopy(mLabels, 0, labels, 0, mSize);
+            System.arraycopy(mFirstChild, 0, firstChild, 0, mSize);
+            System.arraycopy(mNextSibling, 0, nextSibling, 0, mSize);
+            System.arraycopy(mPhraseEnds, 0, phraseEnds, 0, mSize);
+            System.arraycopy(mKinds, 0, kinds, 0, mSize);
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            mLabels = labels;
+            mFirstChild = firstChild;
+            mNextSibling = nextSibling;
+            mPhraseEnds = phraseEnds;
+            mKinds = kinds;
+            mValues = values;
+        }
+        int node = mSize++;
+        mLabels[node] = label;
+        mFirstChild[node] = NONE;
+        mNextSibling[node] = NONE;
+        mPhraseEnds[node] = false;
+        mKinds[node] = NO_KIND;
+        return node;
+    }
+
+    private static int skipLeadingSpace(String text) {
+        int start = 0;
+        while (start < text.length() && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int skipTrailingSpace(String text, int start) {
+        int end = text.length();
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+}
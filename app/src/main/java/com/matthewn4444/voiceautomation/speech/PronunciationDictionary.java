@@ -0,0 +1,84 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import edu.cmu.pocketsphinx.Decoder;
+
+/**
+ * The decoder is only given the pronunciations of the words in the bundled grammars and default
+ * commands, which the build picks out of the full dictionary. Phrases the user chooses can use
+ * other words; these are looked up in the full dictionary and added to the decoder before the
+ * phrases are searched for.
+ */
+public class PronunciationDictionary {
+
+    /**
+     * @param decoder decoder to check
+     * @param phrases phrases that will be searched for
+     * @return the words of the phrases the decoder cannot pronounce, lower case
+     */
+    public static Set<String> findMissingWords(Decoder decoder, Iterable<String> phrases) {
+        Set<String> missing = new LinkedHashSet<>();
+        for (String phrase : phrases) {
+            for (String word : phrase.toLowerCase(Locale.US).trim().split("\\s+")) {
+                if (!word.isEmpty() && !missing.contains(word) && decoder.lookupWord(word) == null) {
+                    missing.add(word);
+                }
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Adds every pronunciation of the words found in a dictionary to the decoder
+     * @param decoder decoder to add the words to
+     * @param words lower case words to add
+     * @param dictionary stream of a dictionary in the cmudict format, it is not closed
+     * @return the words that are not in the dictionary
+     * @throws IOException if the dictionary cannot be read
+     */
+    public static Set<String> addWords(Decoder decoder, Set<String> words, InputStream dictionary)
+            throws IOException {
+        Set<String> found = new HashSet<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(dictionary, "UTF-8"));
+        String line;
+        String lastWord = null;
+        String lastPhones = null;
+        while ((line = reader.readLine()) != null) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+
+            // Alternate pronunciations are written as word(2)
+            String entry = line.substring(0, space);
+            int paren = entry.indexOf('(');
+            String word = paren > 0 ? entry.substring(0, paren) : entry;
+            if (!words.contains(word)) {
+                continue;
+            }
+
+            // Hold back each entry so the decoder only rebuilds its search once, with the last one
+            if (lastWord != null) {
+                decoder.addWord(lastWord, lastPhones, 0);
+            }
+            lastWord = entry;
+            lastPhones = line.substring(space + 1).trim();
+            found.add(word);
+        }
+        if (lastWord != null) {
+            decoder.addWord(lastWord, lastPhones, 1);
+        }
+
+        Set<String> unknown = new LinkedHashSet<>(words);
+        unknown.removeAll(found);
+        return unknown;
+    }
+}
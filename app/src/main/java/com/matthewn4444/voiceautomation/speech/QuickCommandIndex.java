@@ -0,0 +1,95 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Quick commands of every category by phrase, so a hypothesis finds the command and the category
+ * that owns it with one hash lookup. Each command is debounced on its own: when it is heard again
+ * within its window, usually the decoder reporting the same words a second time, it is suppressed
+ * instead of run twice. Hits and suppressions are counted to tune the windows.
+ * @param <T> owner of the commands
+ */
+public class QuickCommandIndex<T> {
+    private final HashMap<String, Entry<T>> mEntries = new HashMap<>();
+
+    public static class Entry<T> {
+        public final String phrase;
+        public final T owner;
+        private final long mDebounceMillis;
+        private long mLastRunTime;
+        private boolean mHasRun;
+        private int mHits;
+        private int mSuppressed;
+
+        Entry(String phrase, T owner, long debounceMillis) {
+            this.phrase = phrase;
+            this.owner = owner;
+            mDebounceMillis = debounceMillis;
+        }
+
+        public synchronized int getHits() {
+            return mHits;
+        }
+
+        public synchronized int getSuppressed() {
+            return mSuppressed;
+        }
+    }
+
+    /**
+     * Adds a command, a phrase already added keeps its first owner
+     * @param phrase words of the command
+     * @param owner owner of the command
+     * @param debounceMillis time after the command runs that it is not run again
+     */
+    public void add(String phrase, T owner, long debounceMillis) {
+        if (!mEntries.containsKey(phrase)) {
+            mEntries.put(phrase, new Entry<>(phrase, owner, debounceMillis));
+        }
+    }
+
+    /**
+     * @param phrase hypothesis
+     * @return the command of the phrase, null if it is not a quick command
+     */
+    public Entry<T> find(String phrase) {
+        return mEntries.get(phrase);
+    }
+
+    /**
+     * Counts the command as heard
+     * @param entry command heard
+     * @param now current time in milliseconds
+     * @return true if the command should run, false if it ran within its debounce window
+     */
+    public boolean hit(Entry<T> entry, long now) {
+        synchronized (entry) {
+            if (entry.mHasRun && now - entry.mLastRunTime < entry.mDebounceMillis) {
+                entry.mSuppressed++;
+                return false;
+            }
+            entry.mHasRun = true;
+            entry.mLastRunTime = now;
+            entry.mHits++;
+            return true;
+        }
+    }
+
+    public int size() {
+        return mEntries.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Entry<T> entry : mEntries.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format(Locale.US, "'%s' %d run/%d suppressed", entry.phrase,
+                    entry.getHits(), entry.getSuppressed()));
+        }
+        return sb.toString();
+    }
+}
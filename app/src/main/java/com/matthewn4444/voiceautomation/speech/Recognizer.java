@@ -0,0 +1,125 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * What the speech controller needs from a recognizer, implemented by BufferedSpeechRecognizer in
+ * this process and by RemoteRecognizer for one running in the speech process. Listeners are
+ * called on the handler the recognizer was created with. The hypotheses they get have trimmed text
+ * and are reused after the call returns, see TextHypothesis.
+ */
+public interface Recognizer {
+    public void addListener(RecognitionListener listener);
+
+    public void removeListener(RecognitionListener listener);
+
+    /**
+     * Starts decoding the search without a timeout
+     * @param searchName name of the search to decode with
+     * @param gated true to only decode once the voice activity gate opens
+     * @return false if the recognizer is already decoding
+     */
+    public boolean startListening(String searchName, boolean gated);
+
+    /**
+     * Starts decoding the search from the given position in the recorded audio
+     * @param searchName name of the search to decode with
+     * @param timeout milliseconds of silence before timing out
+     * @param position absolute sample position to start decoding from, or CURRENT_POSITION
+     * @return false if the recognizer is already decoding
+     */
+    public boolean startListening(String searchName, int timeout, long position);
+
+    /**
+     * Stops decoding without a result event, events not delivered yet are dropped
+     * @return false if it was not decoding
+     */
+    public boolean cancel();
+
+    /**
+     * Stops decoding and releases the microphone
+     */
+    public void stopCapture();
+
+    public void shutdown();
+
+    public DecoderProfile getProfile();
+
+    public int getSampleRate();
+
+    /**
+     * @return what the decoder heard when decoding last stopped, null if nothing. RemoteRecognizer
+     *         gives the last result delivered before it was cancelled instead of waiting for it
+     */
+    public String getFinalResult();
+
+    /**
+     * @return the confidence of the final result of a grammar search, UNKNOWN otherwise
+     */
+    public float getFinalResultConfidence();
+
+    /**
+     * @return the sample position of the result being dispatched
+     */
+    public long getLastResultPosition();
+
+    /**
+     * @return the confidence of the result being dispatched, see ResultConfidence
+     */
+    public float getLastResultConfidence();
+
+    /**
+     * @return background noise level heard behind the voice activity gate in decibels
+     */
+    public double getNoiseDecibels();
+
+    public ListeningStats getStats();
+
+    /**
+     * @return milliseconds each partial result took from the decoder to the listeners
+     */
+    public LatencyHistogram getDeliveryLatency();
+
+    public void setDutyCycled(boolean dutyCycled);
+
+    /**
+     * @param log utterance log to save decoded audio to, null to stop saving
+     */
+    public void setUtteranceLog(UtteranceLog log);
+
+    /**
+     * Marks the last recording of the search as accepted, see UtteranceLog.markAccepted()
+     */
+    public void markAccepted(String search, String text);
+
+    public boolean hasSearch(String name);
+
+    public void addGrammarSearch(String name, File file);
+
+    public void addFsgSearch(String name, File file);
+
+    public void addNgramSearch(String name, File file);
+
+    public void addAllphoneSearch(String name, File file);
+
+    /**
+     * @return true if the file was loaded, false if the search was unchanged
+     */
+    public boolean addKeywordSearch(String name, File file, String contentHash);
+
+    /**
+     * Adds the pronunciations of words in the phrases that the loaded dictionary does not have
+     * from the full dictionary bundled in the apk
+     * @param ctx context to open the full dictionary with
+     * @param phrases phrases to check
+     * @return words with no pronunciation in either dictionary
+     * @throws IOException if the full dictionary cannot be read
+     */
+    public Set<String> addMissingWords(Context ctx, Iterable<String> phrases) throws IOException;
+}
@@ -0,0 +1,456 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Set;
+
+import edu.cmu.pocketsphinx.Config;
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * Runs the BufferedSpeechRecognizer of a RemoteRecognizer in the speech process. Commands are read
+ * on a thread of their own and queued in order to the recognizer thread, the only thread that
+ * calls the recognizer. Its events are delivered on that thread too and written back as they come
+ * along with the time the decoder produced them, so they wait while a search is loading.
+ */
+public class RecognizerHost implements RecognitionListener {
+    private static final String TAG = "RecognizerHost";
+
+    private final Context mCtx;
+    private final DataInputStream mIn;
+    private final DataOutputStream mOut;
+    private final HandlerThread mRecognizerThread = new HandlerThread(TAG + " recognizer");
+    private final Thread mCommandThread;
+
+    private Handler mHandler;
+
+    // Only used on the recognizer thread
+    private BufferedSpeechRecognizer mRecognizer;
+    private UtteranceLog mUtteranceLog;
+    private boolean mClosed;
+
+    /**
+     * @param ctx Context to open the full dictionary with
+     * @param connection data of the connection message sent by RemoteRecognizer
+     */
+    public RecognizerHost(Context ctx, Bundle connection) {
+        mCtx = ctx;
+        ParcelFileDescriptor commands = connection.getParcelable(RecognizerProtocol.KEY_COMMANDS);
+        ParcelFileDescriptor events = connection.getParcelable(RecognizerProtocol.KEY_EVENTS);
+        mIn = new DataInputStream(new BufferedInputStream(
+                new ParcelFileDescriptor.AutoCloseInputStream(commands)));
+        mOut = new DataOutputStream(new BufferedOutputStream(
+                new ParcelFileDescriptor.AutoCloseOutputStream(events)));
+        mCommandThread = new CommandThread();
+    }
+
+    public void start() {
+        mRecognizerThread.start();
+        mHandler = new Handler(mRecognizerThread.getLooper());
+        mCommandThread.start();
+    }
+
+    /**
+     * @return true while the app is connected
+     */
+    public boolean isAlive() {
+        return mCommandThread.isAlive();
+    }
+
+    /**
+     * Closes the event pipe so the app sees the recognizer is gone, the command thread ends once
+     * the app closes its end of the command pipe
+     */
+    public void close() {
+        synchronized (mOut) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                mOut.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close the event pipe", e);
+            }
+        }
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+        writeEvent(RecognizerProtocol.BEGINNING_OF_SPEECH, null);
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+        writeEvent(RecognizerProtocol.END_OF_SPEECH, null);
+    }
+
+    @Override
+    public void onPartialResult(Hypothesis hypothesis) {
+        writeEvent(RecognizerProtocol.PARTIAL_RESULT, hypothesis);
+    }
+
+    @Override
+    public void onResult(Hypothesis hypothesis) {
+        writeEvent(RecognizerProtocol.RESULT, hypothesis);
+    }
+
+    @Override
+    public void onError(Exception e) {
+        writeError(e);
+    }
+
+    @Override
+    public void onTimeout() {
+        writeEvent(RecognizerProtocol.TIMEOUT, null);
+    }
+
+    private void writeEvent(byte type, Hypothesis hypothesis) {
+        BufferedSpeechRecognizer recognizer = mRecognizer;
+        if (recognizer == null) {
+            return;
+        }
+        boolean result = type == RecognizerProtocol.PARTIAL_RESULT || type == RecognizerProtocol.RESULT;
+        synchronized (mOut) {
+            if (mClosed) {
+                return;
+            }
+            try {
+                mOut.writeByte(type);
+                mOut.writeLong(result ? recognizer.getLastResultTime() : SystemClock.elapsedRealtime());
+                mOut.writeLong(recognizer.getLastResultPosition());
+                mOut.writeFloat(recognizer.getLastResultConfidence());
+                mOut.writeDouble(recognizer.getNoiseDecibels());
+                if (result) {
+                    RecognizerProtocol.writeNullableString(mOut,
+                            hypothesis != null ? hypothesis.getHypstr() : null);
+                    mOut.writeInt(hypothesis != null ? hypothesis.getBestScore() : 0);
+                } else if (type == RecognizerProtocol.CANCELLED || type == RecognizerProtocol.STATS) {
+                    recognizer.getStats().writeTo(mOut);
+                }
+                mOut.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot send event " + type, e);
+            }
+        }
+    }
+
+    private void writeError(Exception error) {
+        synchronized (mOut) {
+            if (mClosed) {
+                return;
+            }
+            try {
+                mOut.writeByte(RecognizerProtocol.ERROR);
+                mOut.writeLong(SystemClock.elapsedRealtime());
+                mOut.writeLong(0);
+                mOut.writeFloat(ResultConfidence.UNKNOWN);
+                mOut.writeDouble(0);
+                mOut.writeUTF(String.valueOf(error.getMessage()));
+                mOut.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot send error", e);
+            }
+        }
+    }
+
+    private void writeReply(RecognizerProtocol.Reply reply) throws IOException {
+        synchronized (mOut) {
+            if (mClosed) {
+                throw new EOFException("Event pipe is closed");
+            }
+            reply.writeTo(mOut);
+            mOut.flush();
+        }
+    }
+
+    /**
+     * Command that is answered, the reply it writes to is sent once it finished or replaced with
+     * the error if it failed
+     */
+    private abstract class ReplyCommand implements Runnable {
+        private final int mId;
+
+        ReplyCommand(int id) {
+            mId = id;
+        }
+
+        protected abstract void execute(RecognizerProtocol.Reply reply) throws Exception;
+
+        @Override
+        public void run() {
+            try {
+                RecognizerProtocol.Reply reply = new RecognizerProtocol.Reply(mId, true);
+                try {
+                    execute(reply);
+                } catch (Exception e) {
+                    Log.e(TAG, "Command failed", e);
+                    reply = new RecognizerProtocol.Reply(mId, false);
+                    reply.out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                writeReply(reply);
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot send reply " + mId, e);
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of a command and queues it to the recognizer thread
+     * @param command command type
+     * @return false once the app asked to shut down
+     * @throws IOException if the pipes broke
+     */
+    private boolean execute(byte command) throws IOException {
+        switch (command) {
+            case RecognizerProtocol.CREATE: {
+                int id = mIn.readInt();
+                final DecoderProfile profile = DecoderProfile.fromKey(mIn.readUTF());
+                final File assetsDir = new File(mIn.readUTF());
+                final String transform = RecognizerProtocol.readNullableString(mIn);
+                mHandler.post(new ReplyCommand(id) {
+                    @Override
+                    protected void execute(RecognizerProtocol.Reply reply) throws Exception {
+                        Config config = DecoderSetup.createConfig(assetsDir, profile,
+                                transform != null ? new File(transform) : null);
+                        BufferedSpeechRecognizer recognizer = new BufferedSpeechRecognizer(config, profile, mHandler);
+                        recognizer.addListener(RecognizerHost.this);
+                        mRecognizer = recognizer;
+                        reply.out.writeInt(recognizer.getSampleRate());
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.ADD_SEARCH: {
+                int id = mIn.readInt();
+                final byte kind = mIn.readByte();
+                final String name = mIn.readUTF();
+                final File file = new File(mIn.readUTF());
+                mHandler.post(new ReplyCommand(id) {
+                    @Override
+                    protected void execute(RecognizerProtocol.Reply reply) {
+                        switch (kind) {
+                            case RecognizerProtocol.SEARCH_GRAMMAR:
+                                mRecognizer.addGrammarSearch(name, file);
+                                break;
+                            case RecognizerProtocol.SEARCH_FSG:
+                                mRecognizer.addFsgSearch(name, file);
+                                break;
+                            case RecognizerProtocol.SEARCH_NGRAM:
+                                mRecognizer.addNgramSearch(name, file);
+                                break;
+                            case RecognizerProtocol.SEARCH_ALLPHONE:
+                                mRecognizer.addAllphoneSearch(name, file);
+                                break;
+                            default:
+                                throw new IllegalArgumentException("Unknown search kind " + kind);
+                        }
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.ADD_KEYWORD_SEARCH: {
+                int id = mIn.readInt();
+                final String name = mIn.readUTF();
+                final File file = new File(mIn.readUTF());
+                final String hash = RecognizerProtocol.readNullableString(mIn);
+                mHandler.post(new ReplyCommand(id) {
+                    @Override
+                    protected void execute(RecognizerProtocol.Reply reply) throws IOException {
+                        reply.out.writeBoolean(mRecognizer.addKeywordSearch(name, file, hash));
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.ADD_MISSING_WORDS: {
+                int id = mIn.readInt();
+                int count = mIn.readInt();
+                final ArrayList<String> phrases = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    phrases.add(mIn.readUTF());
+                }
+                mHandler.post(new ReplyCommand(id) {
+                    @Override
+                    protected void execute(RecognizerProtocol.Reply reply) throws IOException {
+                        Set<String> unknown = mRecognizer.addMissingWords(mCtx, phrases);
+                        reply.out.writeInt(unknown.size());
+                        for (String word : unknown) {
+                            reply.out.writeUTF(word);
+                        }
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.START: {
+                final String name = mIn.readUTF();
+                final boolean gated = mIn.readBoolean();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!mRecognizer.startListening(name, gated)) {
+                                Log.w(TAG, "Already listening, cannot start " + name);
+                            }
+                        } catch (RuntimeException e) {
+                            writeError(e);
+                        }
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.START_AT: {
+                final String name = mIn.readUTF();
+                final int timeout = mIn.readInt();
+                final long position = mIn.readLong();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!mRecognizer.startListening(name, timeout, position)) {
+                                Log.w(TAG, "Already listening, cannot start " + name);
+                            }
+                        } catch (RuntimeException e) {
+                            writeError(e);
+                        }
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.CANCEL:
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Sent even if nothing was decoding, the app drops events till it gets it
+                        if (mRecognizer != null) {
+                            mRecognizer.cancel();
+                        }
+                        writeEvent(RecognizerProtocol.CANCELLED, null);
+                    }
+                });
+                break;
+            case RecognizerProtocol.STOP_CAPTURE:
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mRecognizer != null) {
+                            mRecognizer.stopCapture();
+                        }
+                    }
+                });
+                break;
+            case RecognizerProtocol.SET_DUTY_CYCLED: {
+                final boolean dutyCycled = mIn.readBoolean();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mRecognizer != null) {
+                            mRecognizer.setDutyCycled(dutyCycled);
+                        }
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.SET_UTTERANCE_LOG: {
+                final String dir = RecognizerProtocol.readNullableString(mIn);
+                final long budget = mIn.readLong();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mRecognizer == null) {
+                            return;
+                        }
+                        if (dir == null) {
+                            mUtteranceLog = null;
+                        } else if (mUtteranceLog == null || mUtteranceLog.getBudgetBytes() != budget
+                                || !mUtteranceLog.getDir().getPath().equals(dir)) {
+                            mUtteranceLog = new UtteranceLog(new File(dir), budget, mRecognizer.getSampleRate());
+                        }
+                        mRecognizer.setUtteranceLog(mUtteranceLog);
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.MARK_ACCEPTED: {
+                final String search = mIn.readUTF();
+                final String text = mIn.readUTF();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mRecognizer != null) {
+                            mRecognizer.markAccepted(search, text);
+                        }
+                    }
+                });
+                break;
+            }
+            case RecognizerProtocol.GET_STATS:
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        writeEvent(RecognizerProtocol.STATS, null);
+                    }
+                });
+                break;
+            case RecognizerProtocol.SHUTDOWN:
+                return false;
+            default:
+                throw new IOException("Unknown command " + command);
+        }
+        return true;
+    }
+
+    private final class CommandThread extends Thread {
+        CommandThread() {
+            super(TAG);
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean running = true;
+                while (running) {
+                    running = execute(mIn.readByte());
+                }
+            } catch (EOFException e) {
+                Log.i(TAG, "App disconnected");
+            } catch (IOException e) {
+                Log.w(TAG, "Connection to the app broke", e);
+            }
+
+            // Queued after the commands already read so a search that is loading finishes first
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mRecognizer != null) {
+                        mRecognizer.removeListener(RecognizerHost.this);
+                        mRecognizer.shutdown();
+                        mRecognizer = null;
+                    }
+                    close();
+                    Looper.myLooper().quit();
+                }
+            });
+            try {
+                mIn.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close the command pipe", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Frames sent through the pipes between RemoteRecognizer and RecognizerHost. Each frame starts
+ * with its type followed by its fields written with DataOutputStream, so a partial result is a few
+ * dozen bytes instead of a parcel per binder call.
+ *
+ * Commands go from the app to the speech process, only the ones that load something get a reply
+ * and the caller waits for it. These carry a request id right after their type. The others are
+ * never waited for, what they return comes back as an event. Events go
+ * the other way and are interleaved with the replies, a reply is written as the request id, its
+ * length and payload so the reader can hand it to the caller waiting for that id without knowing
+ * what was asked. A reply nobody waits for anymore is dropped.
+ */
+final class RecognizerProtocol {
+    // Keys of the pipes in the connection message sent to the speech process
+    static final String KEY_COMMANDS = "commands";
+    static final String KEY_EVENTS = "events";
+
+    // Commands, the ones marked with a reply are followed by a request id and answered with REPLY
+    static final byte CREATE = 1;               // reply
+    static final byte ADD_SEARCH = 2;           // reply
+    static final byte ADD_KEYWORD_SEARCH = 3;   // reply
+    static final byte ADD_MISSING_WORDS = 4;    // reply
+    static final byte START = 5;
+    static final byte START_AT = 6;
+    static final byte CANCEL = 7;               // answered with CANCELLED
+    static final byte STOP_CAPTURE = 8;
+    static final byte SET_DUTY_CYCLED = 9;
+    static final byte SET_UTTERANCE_LOG = 10;
+    static final byte MARK_ACCEPTED = 11;
+    static final byte GET_STATS = 12;           // answered with STATS
+    static final byte SHUTDOWN = 13;
+
+    // Kinds of searches added with ADD_SEARCH
+    static final byte SEARCH_GRAMMAR = 1;
+    static final byte SEARCH_FSG = 2;
+    static final byte SEARCH_NGRAM = 3;
+    static final byte SEARCH_ALLPHONE = 4;
+
+    // Events, all start with the time the decoder produced them, the sample position, the
+    // confidence and the noise level
+    static final byte REPLY = 20;
+    static final byte BEGINNING_OF_SPEECH = 21;
+    static final byte END_OF_SPEECH = 22;
+    static final byte PARTIAL_RESULT = 23;     // then the hypothesis
+    static final byte RESULT = 24;             // then the hypothesis
+    static final byte TIMEOUT = 25;
+    static final byte ERROR = 26;              // then the message
+    static final byte CANCELLED = 27;          // then the stats, no event of the search follows
+    static final byte STATS = 28;              // then the stats
+
+    private RecognizerProtocol() {
+    }
+
+    /**
+     * Payload of a reply, starts with whether the command succeeded followed by its result or
+     * the error message
+     */
+    static class Reply {
+        private final int mId;
+        private final ByteArrayOutputStream mBytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(mBytes);
+
+        /**
+         * @param id request id of the command
+         * @param success true if the command succeeded
+         */
+        Reply(int id, boolean success) throws IOException {
+            mId = id;
+            out.writeBoolean(success);
+        }
+
+        void writeTo(DataOutputStream stream) throws IOException {
+            out.flush();
+            stream.writeByte(REPLY);
+            stream.writeInt(mId);
+            stream.writeInt(mBytes.size());
+            mBytes.writeTo(stream);
+        }
+    }
+
+    /**
+     * @param in reply payload
+     * @throws IOException with the speech process' message if the command failed
+     */
+    static void checkReply(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            throw new IOException("Speech process: " + in.readUTF());
+        }
+    }
+
+    /**
+     * @param out stream to write to
+     * @param text text that can be null
+     */
+    static void writeNullableString(DataOutputStream out, String text) throws IOException {
+        out.writeBoolean(text != null);
+        if (text != null) {
+            out.writeUTF(text);
+        }
+    }
+
+    static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
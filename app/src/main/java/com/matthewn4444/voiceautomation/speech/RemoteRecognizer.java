@@ -0,0 +1,772 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.matthewn4444.voiceautomation.SpeechProcessService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import edu.cmu.pocketsphinx.Hypothesis;
+import edu.cmu.pocketsphinx.RecognitionListener;
+
+/**
+ * Recognizer running in the speech process, see SpeechProcessService. The decoder, microphone and
+ * searches live there so a crash in the native decoder or a garbage collection in the app cannot
+ * stall the other, and the app keeps only the categories and the state machine.
+ *
+ * Commands are written to one pipe and events are read from another by a reader thread that
+ * posts them to the handler like BufferedSpeechRecognizer does, so listeners cannot tell the
+ * difference. Commands that load something wait for the reply with their request id, without
+ * holding the pipe so that other threads can send commands meanwhile, and give up after a
+ * timeout. The calls made on the main thread never wait on the speech process: cancelling drops the events of the search till the speech process confirms it,
+ * the final result is the last result delivered before cancelling and the stats are the last
+ * ones the speech process sent. The names of the searches and the noise level come with other
+ * replies and events for the same reason.
+ */
+public class RemoteRecognizer implements Recognizer {
+    private static final String TAG = "RemoteRecognizer";
+    public static final int MSG_CONNECT = 1;
+
+    private static final int CONNECT_TIMEOUT_SECONDS = 10;
+
+    // Loading the decoder or a search can take a while on a slow device
+    private static final long LOAD_TIMEOUT = 60 * 1000;
+
+    private final Context mCtx;
+    private final DecoderProfile mProfile;
+    private final Handler mHandler;
+    private final HashSet<RecognitionListener> mListeners = new HashSet<>();
+    private final Set<String> mSearches = new HashSet<>();
+    private final HashMap<String, String> mKeywordHashes = new HashMap<>();
+    private final HashMap<Integer, byte[]> mReplies = new HashMap<>();
+    private final LatencyHistogram mDeliveryLatency = new LatencyHistogram();
+    private final Object mWriteLock = new Object();
+    private final Object mEventLock = new Object();
+
+    private ServiceConnection mConnection;
+    private DataOutputStream mOut;
+    private DataInputStream mIn;
+    private Thread mReaderThread;
+    private volatile boolean mShutdown;
+    private boolean mDisconnected;
+    private int mNextRequestId;
+    private int mSampleRate;
+    private volatile ListeningStats mStats;
+    private boolean mDecoding;
+    private int mPendingCancels;
+    private String mDeliveredText;
+    private float mDeliveredConfidence = ResultConfidence.UNKNOWN;
+    private String mFinalResult;
+    private float mFinalResultConfidence = ResultConfidence.UNKNOWN;
+    private long mLastResultPosition;
+    private float mLastResultConfidence = ResultConfidence.UNKNOWN;
+    private double mNoiseDecibels;
+
+    /**
+     * Starts the speech process and loads the decoder in it, blocks till it is loaded so do not
+     * call on the main thread
+     * @param ctx Context
+     * @param profile search parameters of the decoder
+     * @param assetsDir directory with the synced assets
+     * @param transform speaker adaptation transform, can be null
+     * @param handler handler to deliver recognition events on
+     * @return the recognizer
+     * @throws IOException if the speech process cannot be started or the decoder cannot be loaded
+     */
+    public static RemoteRecognizer create(Context ctx, DecoderProfile profile, File assetsDir,
+                                          File transform, Handler handler) throws IOException {
+        RemoteRecognizer recognizer = new RemoteRecognizer(ctx.getApplicationContext(), profile, handler);
+        try {
+            recognizer.connect();
+            int id;
+            synchronized (recognizer.mWriteLock) {
+                id = recognizer.beginRequest(RecognizerProtocol.CREATE);
+                DataOutputStream out = recognizer.mOut;
+                out.writeUTF(profile.getKey());
+                out.writeUTF(assetsDir.getPath());
+                RecognizerProtocol.writeNullableString(out,
+                        transform != null ? transform.getPath() : null);
+                recognizer.send();
+            }
+            recognizer.mSampleRate = recognizer.awaitReply(id, LOAD_TIMEOUT).readInt();
+        } catch (IOException e) {
+            recognizer.shutdown();
+            throw e;
+        }
+        recognizer.mStats = new ListeningStats(recognizer.mSampleRate);
+        return recognizer;
+    }
+
+    private RemoteRecognizer(Context ctx, DecoderProfile profile, Handler handler) {
+        mCtx = ctx;
+        mProfile = profile;
+        mHandler = handler;
+    }
+
+    @Override
+    public void addListener(RecognitionListener listener) {
+        synchronized (mListeners) {
+            mListeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeListener(RecognitionListener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+
+    @Override
+    public boolean startListening(String searchName, boolean gated) {
+        if (mDecoding) {
+            return false;
+        }
+        try {
+            synchronized (mWriteLock) {
+                DataOutputStream out = beginCommand(RecognizerProtocol.START);
+                out.writeUTF(searchName);
+                out.writeBoolean(gated);
+                send();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot start listening", e);
+            return false;
+        }
+        mDecoding = true;
+        mDeliveredText = null;
+        mDeliveredConfidence = ResultConfidence.UNKNOWN;
+        return true;
+    }
+
+    @Override
+    public boolean startListening(String searchName, int timeout, long position) {
+        if (mDecoding) {
+            return false;
+        }
+        try {
+            synchronized (mWriteLock) {
+                DataOutputStream out = beginCommand(RecognizerProtocol.START_AT);
+                out.writeUTF(searchName);
+                out.writeInt(timeout);
+                out.writeLong(position);
+                send();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot start listening", e);
+            return false;
+        }
+        mDecoding = true;
+        mDeliveredText = null;
+        mDeliveredConfidence = ResultConfidence.UNKNOWN;
+        return true;
+    }
+
+    /**
+     * Does not wait for the speech process to stop, the final result is the last result the
+     * listeners got since decoding started
+     */
+    @Override
+    public boolean cancel() {
+        if (!mDecoding) {
+            mFinalResult = null;
+            mFinalResultConfidence = ResultConfidence.UNKNOWN;
+            return false;
+        }
+        mDecoding = false;
+        mFinalResult = mDeliveredText;
+        mFinalResultConfidence = mDeliveredConfidence;
+
+        // Events of the search still in the pipe are dropped till the speech process confirms
+        synchronized (mEventLock) {
+            mPendingCancels++;
+            mHandler.removeCallbacksAndMessages(this);
+        }
+        sendCommand(RecognizerProtocol.CANCEL);
+        return true;
+    }
+
+    @Override
+    public void stopCapture() {
+        sendCommand(RecognizerProtocol.STOP_CAPTURE);
+        mDecoding = false;
+    }
+
+    @Override
+    public void shutdown() {
+        if (mShutdown) {
+            return;
+        }
+        mShutdown = true;
+        sendCommand(RecognizerProtocol.SHUTDOWN);
+        synchronized (mWriteLock) {
+            if (mOut != null) {
+                try {
+                    mOut.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot close the command pipe", e);
+                }
+                mOut = null;
+            }
+        }
+        if (mConnection != null) {
+            mCtx.unbindService(mConnection);
+            mConnection = null;
+        }
+        mHandler.removeCallbacksAndMessages(this);
+    }
+
+    @Override
+    public DecoderProfile getProfile() {
+        return mProfile;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public String getFinalResult() {
+        return mFinalResult;
+    }
+
+    @Override
+    public float getFinalResultConfidence() {
+        return mFinalResultConfidence;
+    }
+
+    @Override
+    public long getLastResultPosition() {
+        return mLastResultPosition;
+    }
+
+    @Override
+    public float getLastResultConfidence() {
+        return mLastResultConfidence;
+    }
+
+    /**
+     * @return the noise level sent with the last event
+     */
+    @Override
+    public double getNoiseDecibels() {
+        return mNoiseDecibels;
+    }
+
+    /**
+     * @return the last stats the speech process sent, newer ones are asked for the next call
+     */
+    @Override
+    public ListeningStats getStats() {
+        if (!mShutdown) {
+            sendCommand(RecognizerProtocol.GET_STATS);
+        }
+        return mStats;
+    }
+
+    /**
+     * @return milliseconds each partial result took from the decoding thread in the speech process
+     *         to the listeners, only read on the handler's thread
+     */
+    @Override
+    public LatencyHistogram getDeliveryLatency() {
+        return mDeliveryLatency;
+    }
+
+    @Override
+    public void setDutyCycled(boolean dutyCycled) {
+        try {
+            synchronized (mWriteLock) {
+                beginCommand(RecognizerProtocol.SET_DUTY_CYCLED).writeBoolean(dutyCycled);
+                send();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot set duty cycling", e);
+        }
+    }
+
+    /**
+     * The speech process saves the audio to the same folder with a log of its own
+     */
+    @Override
+    public void setUtteranceLog(UtteranceLog log) {
+        try {
+            synchronized (mWriteLock) {
+                DataOutputStream out = beginCommand(RecognizerProtocol.SET_UTTERANCE_LOG);
+                RecognizerProtocol.writeNullableString(out,
+                        log != null ? log.getDir().getPath() : null);
+                out.writeLong(log != null ? log.getBudgetBytes() : 0);
+                send();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot set the utterance log", e);
+        }
+    }
+
+    @Override
+    public void markAccepted(String search, String text) {
+        try {
+            synchronized (mWriteLock) {
+                DataOutputStream out = beginCommand(RecognizerProtocol.MARK_ACCEPTED);
+                out.writeUTF(search);
+                out.writeUTF(text);
+                send();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot mark the utterance as accepted", e);
+        }
+    }
+
+    @Override
+    public boolean hasSearch(String name) {
+        synchronized (mSearches) {
+            return mSearches.contains(name);
+        }
+    }
+
+    @Override
+    public void addGrammarSearch(String name, File file) {
+        addSearch(RecognizerProtocol.SEARCH_GRAMMAR, name, file);
+    }
+
+    @Override
+    public void addFsgSearch(String name, File file) {
+        addSearch(RecognizerProtocol.SEARCH_FSG, name, file);
+    }
+
+    @Override
+    public void addNgramSearch(String name, File file) {
+        addSearch(RecognizerProtocol.SEARCH_NGRAM, name, file);
+    }
+
+    @Override
+    public void addAllphoneSearch(String name, File file) {
+        addSearch(RecognizerProtocol.SEARCH_ALLPHONE, name, file);
+    }
+
+    @Override
+    public boolean addKeywordSearch(String name, File file, String contentHash) {
+        synchronized (mSearches) {
+            if (contentHash != null && contentHash.equals(mKeywordHashes.get(name))) {
+                return false;
+            }
+        }
+        boolean loaded;
+        try {
+            int id;
+            synchronized (mWriteLock) {
+                id = beginRequest(RecognizerProtocol.ADD_KEYWORD_SEARCH);
+                mOut.writeUTF(name);
+                mOut.writeUTF(file.getPath());
+                RecognizerProtocol.writeNullableString(mOut, contentHash);
+                send();
+            }
+            loaded = awaitReply(id, LOAD_TIMEOUT).readBoolean();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot load keyword search " + name, e);
+        }
+        synchronized (mSearches) {
+            mSearches.add(name);
+            mKeywordHashes.put(name, contentHash);
+        }
+        return loaded;
+    }
+
+    @Override
+    public Set<String> addMissingWords(Context ctx, Iterable<String> phrases) throws IOException {
+        LinkedHashSet<String> list = new LinkedHashSet<>();
+        for (String phrase : phrases) {
+            list.add(phrase);
+        }
+        int id;
+        synchronized (mWriteLock) {
+            id = beginRequest(RecognizerProtocol.ADD_MISSING_WORDS);
+            mOut.writeInt(list.size());
+            for (String phrase : list) {
+                mOut.writeUTF(phrase);
+            }
+            send();
+        }
+        DataInputStream in = awaitReply(id, LOAD_TIMEOUT);
+        int count = in.readInt();
+        Set<String> unknown = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            unknown.add(in.readUTF());
+        }
+        return unknown;
+    }
+
+    private void addSearch(byte kind, String name, File file) {
+        try {
+            int id;
+            synchronized (mWriteLock) {
+                id = beginRequest(RecognizerProtocol.ADD_SEARCH);
+                mOut.writeByte(kind);
+                mOut.writeUTF(name);
+                mOut.writeUTF(file.getPath());
+                send();
+            }
+            awaitReply(id, LOAD_TIMEOUT);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot load search " + name, e);
+        }
+        synchronized (mSearches) {
+            mSearches.add(name);
+        }
+    }
+
+    /**
+     * Binds the speech process and gives it the ends of the pipes it uses
+     */
+    private void connect() throws IOException {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final Messenger[] service = new Messenger[1];
+        mConnection = new ServiceConnection() {
+            @Override
+            public void onServiceConnected(ComponentName name, IBinder binder) {
+                service[0] = new Messenger(binder);
+                connected.countDown();
+            }
+
+            @Override
+            public void onServiceDisconnected(ComponentName name) {
+                // The speech process died, the reader thread reports it when the pipe closes
+                Log.w(TAG, "Speech process disconnected");
+            }
+        };
+        if (!mCtx.bindService(new Intent(mCtx, SpeechProcessService.class), mConnection,
+                Context.BIND_AUTO_CREATE)) {
+            throw new IOException("Cannot bind the speech process");
+        }
+        try {
+            if (!connected.await(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IOException("Speech process did not start in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting the speech process");
+        }
+
+        ParcelFileDescriptor[] commands = ParcelFileDescriptor.createPipe();
+        ParcelFileDescriptor[] events = ParcelFileDescriptor.createPipe();
+        Bundle data = new Bundle();
+        data.putParcelable(RecognizerProtocol.KEY_COMMANDS, commands[0]);
+        data.putParcelable(RecognizerProtocol.KEY_EVENTS, events[1]);
+        Message msg = Message.obtain(null, MSG_CONNECT);
+        msg.setData(data);
+        try {
+            service[0].send(msg);
+        } catch (RemoteException e) {
+            throw new IOException("Cannot connect to the speech process");
+        } finally {
+            // The speech process has its own copies of its ends now
+            commands[0].close();
+            events[1].close();
+        }
+        mOut = new DataOutputStream(new BufferedOutputStream(
+                new ParcelFileDescriptor.AutoCloseOutputStream(commands[1])));
+        mIn = new DataInputStream(new BufferedInputStream(
+                new ParcelFileDescriptor.AutoCloseInputStream(events[0])));
+        mReaderThread = new ReaderThread();
+        mReaderThread.start();
+    }
+
+    /**
+     * Starts writing a command, hold mWriteLock till it is sent
+     * @param command command type
+     * @return stream to write the command's fields to
+     */
+    private DataOutputStream beginCommand(byte command) throws IOException {
+        if (mOut == null) {
+            throw new IOException("Speech process is shut down");
+        }
+        mOut.writeByte(command);
+        return mOut;
+    }
+
+    /**
+     * Starts writing a command that is answered, hold mWriteLock till it is sent and wait for the
+     * reply with awaitReply() after releasing it
+     * @param command command type
+     * @return request id of the command
+     */
+    private int beginRequest(byte command) throws IOException {
+        int id = ++mNextRequestId;
+        beginCommand(command).writeInt(id);
+        synchronized (mReplies) {
+            mReplies.put(id, null);
+        }
+        return id;
+    }
+
+    private void send() throws IOException {
+        mOut.flush();
+    }
+
+    /**
+     * Waits for the reply to a request, do not hold mWriteLock while calling
+     * @param id request id from beginRequest()
+     * @param timeout milliseconds to wait before giving up
+     * @return the reply after its success flag
+     * @throws IOException if the speech process is gone, did not answer in time or the command
+     *                     failed
+     */
+    private DataInputStream awaitReply(int id, long timeout) throws IOException {
+        byte[] reply;
+        synchronized (mReplies) {
+            long deadline = SystemClock.elapsedRealtime() + timeout;
+            try {
+                while ((reply = mReplies.get(id)) == null && !mDisconnected) {
+                    long remaining = deadline - SystemClock.elapsedRealtime();
+                    if (remaining <= 0) {
+                        throw new IOException("Speech process did not answer in " + timeout + "ms");
+                    }
+                    mReplies.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the speech process");
+            } finally {
+                // A reply that comes after giving up is dropped instead of given to the next caller
+                mReplies.remove(id);
+            }
+        }
+        if (reply == null) {
+            throw new EOFException("Speech process is gone");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(reply));
+        RecognizerProtocol.checkReply(in);
+        return in;
+    }
+
+    private void sendCommand(byte command) {
+        try {
+            synchronized (mWriteLock) {
+                beginCommand(command);
+                send();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot send command " + command, e);
+        }
+    }
+
+    private void post(Runnable event) {
+        synchronized (mEventLock) {
+            // Tag events with this recognizer so that they are removed when decoding is cancelled
+            if (mPendingCancels == 0) {
+                mHandler.postAtTime(event, this, SystemClock.uptimeMillis());
+            }
+        }
+    }
+
+    private final class ReaderThread extends Thread {
+        ReaderThread() {
+            super(TAG);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    byte type = mIn.readByte();
+                    if (type == RecognizerProtocol.REPLY) {
+                        int id = mIn.readInt();
+                        byte[] reply = new byte[mIn.readInt()];
+                        mIn.readFully(reply);
+                        synchronized (mReplies) {
+                            if (mReplies.containsKey(id)) {
+                                mReplies.put(id, reply);
+                                mReplies.notifyAll();
+                            }
+                        }
+                        continue;
+                    }
+                    long time = mIn.readLong();
+                    long position = mIn.readLong();
+                    float confidence = mIn.readFloat();
+                    double noise = mIn.readDouble();
+                    switch (type) {
+                        case RecognizerProtocol.PARTIAL_RESULT:
+                        case RecognizerProtocol.RESULT:
+                            String text = RecognizerProtocol.readNullableString(mIn);
+                            TextHypothesis hypothesis = null;
+                            if (text != null) {
+                                hypothesis = new TextHypothesis();
+                                hypothesis.set(text, mIn.readInt());
+                            } else {
+                                mIn.readInt();
+                            }
+                            post(new ResultEvent(time, position, confidence, noise, hypothesis,
+                                    type == RecognizerProtocol.RESULT));
+                            break;
+                        case RecognizerProtocol.ERROR:
+                            post(new OnErrorEvent(time, position, confidence, noise,
+                                    new IOException(mIn.readUTF())));
+                            break;
+                        case RecognizerProtocol.CANCELLED:
+                            mStats = ListeningStats.readFrom(mIn);
+                            synchronized (mEventLock) {
+                                mPendingCancels--;
+                            }
+                            break;
+                        case RecognizerProtocol.STATS:
+                            mStats = ListeningStats.readFrom(mIn);
+                            break;
+                        default:
+                            post(new StateEvent(time, position, confidence, noise, type));
+                            break;
+                    }
+                }
+            } catch (IOException e) {
+                // The pipe closed, expected after shutdown
+            }
+            try {
+                mIn.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Cannot close the event pipe", e);
+            }
+            synchronized (mReplies) {
+                mDisconnected = true;
+                mReplies.notifyAll();
+            }
+            if (!mShutdown) {
+                Log.e(TAG, "Lost the speech process");
+                mHandler.post(new OnErrorEvent(SystemClock.elapsedRealtime(), mLastResultPosition,
+                        ResultConfidence.UNKNOWN, mNoiseDecibels, new IOException("Speech process stopped")));
+            }
+        }
+    }
+
+    private abstract class RecognitionEvent implements Runnable {
+        private final long mTime;
+        private final long mPosition;
+        private final float mConfidence;
+        private final double mNoise;
+
+        RecognitionEvent(long time, long position, float confidence, double noise) {
+            mTime = time;
+            mPosition = position;
+            mConfidence = confidence;
+            mNoise = noise;
+        }
+
+        @Override
+        public void run() {
+            mLastResultPosition = mPosition;
+            mLastResultConfidence = mConfidence;
+            mNoiseDecibels = mNoise;
+            RecognitionListener[] listeners;
+            synchronized (mListeners) {
+                listeners = mListeners.toArray(new RecognitionListener[mListeners.size()]);
+            }
+            for (RecognitionListener listener : listeners) {
+                execute(listener);
+            }
+        }
+
+        protected long getTime() {
+            return mTime;
+        }
+
+        protected float getConfidence() {
+            return mConfidence;
+        }
+
+        protected abstract void execute(RecognitionListener listener);
+    }
+
+    private class StateEvent extends RecognitionEvent {
+        private final byte mType;
+
+        StateEvent(long time, long position, float confidence, double noise, byte type) {
+            super(time, position, confidence, noise);
+            mType = type;
+        }
+
+        @Override
+        protected void execute(RecognitionListener listener) {
+            switch (mType) {
+                case RecognizerProtocol.BEGINNING_OF_SPEECH:
+                    listener.onBeginningOfSpeech();
+                    break;
+                case RecognizerProtocol.END_OF_SPEECH:
+                    listener.onEndOfSpeech();
+                    break;
+                case RecognizerProtocol.TIMEOUT:
+                    listener.onTimeout();
+                    break;
+            }
+        }
+    }
+
+    private class ResultEvent extends RecognitionEvent {
+        private final Hypothesis mHypothesis;
+        private final boolean mFinalResult;
+
+        ResultEvent(long time, long position, float confidence, double noise, Hypothesis hypothesis,
+                    boolean finalResult) {
+            super(time, position, confidence, noise);
+            mHypothesis = hypothesis;
+            mFinalResult = finalResult;
+        }
+
+        @Override
+        public void run() {
+            if (!mFinalResult) {
+                mDeliveryLatency.add(SystemClock.elapsedRealtime() - getTime());
+            }
+            mDeliveredText = mHypothesis != null ? mHypothesis.getHypstr() : null;
+            mDeliveredConfidence = getConfidence();
+            super.run();
+        }
+
+        @Override
+        protected void execute(RecognitionListener listener) {
+            if (mFinalResult) {
+                listener.onResult(mHypothesis);
+            } else {
+                listener.onPartialResult(mHypothesis);
+            }
+        }
+    }
+
+    private class OnErrorEvent extends RecognitionEvent {
+        private final Exception mException;
+
+        OnErrorEvent(long time, long position, float confidence, double noise, Exception exception) {
+            super(time, position, confidence, noise);
+            mException = exception;
+        }
+
+        @Override
+        protected void execute(RecognitionListener listener) {
+            listener.onError(mException);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.util.HashSet;
+import java.util.Iterator;
+
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.LogMath;
+import edu.cmu.pocketsphinx.NBest;
+import edu.cmu.pocketsphinx.NBestList;
+
+/**
+ * How sure the decoder is of its best hypothesis, scored from its N-best list. The best
+ * hypothesis' share of the likelihood of the distinct alternatives is close to 1 when nothing
+ * else in the grammar comes close and falls towards 0 when noise fits several phrases about as
+ * well. Only a few paths are read as the list is built as it is iterated.
+ */
+public class ResultConfidence {
+    public static final float UNKNOWN = -1;
+
+    private static final int MAX_ALTERNATIVES = 5;
+
+    // Paths read at most, many of them can repeat the same words when the grammar has few phrases
+    private static final int MAX_PATHS = 4 * MAX_ALTERNATIVES;
+
+    // Acoustic scores make the likelihoods far sharper than how sure the decoder really is, the
+    // differences are scaled down before comparing them
+    private static final float SCORE_SCALE = 1 / 10f;
+
+    /**
+     * Must be called on the thread decoding or once decoding stopped
+     * @param decoder decoder with a grammar search
+     * @return the confidence of the best hypothesis from 0 to 1, UNKNOWN if the decoder has no
+     *         hypothesis or N-best list
+     */
+    public static float compute(Decoder decoder) {
+        NBestList list = decoder.nbest();
+        if (list == null) {
+            return UNKNOWN;
+        }
+        LogMath logMath = decoder.getLogmath();
+        HashSet<String> seen = new HashSet<>();
+        Iterator<NBest> it = list.iterator();
+        int bestScore = 0;
+        double total = 0;
+        int paths = 0;
+        while (it.hasNext() && seen.size() < MAX_ALTERNATIVES && paths++ < MAX_PATHS) {
+            NBest nbest = it.next();
+            String text = nbest.getHypstr();
+
+            // Paths through different silences and fillers give the same words, the first one
+            // is the most likely
+            if (text == null || !seen.add(text.trim())) {
+                continue;
+            }
+            if (seen.size() == 1) {
+                bestScore = nbest.getScore();
+            }
+            total += logMath.exp(Math.round((nbest.getScore() - bestScore) * SCORE_SCALE));
+        }
+        return total > 0 ? (float) (1 / total) : UNKNOWN;
+    }
+}
@@ -0,0 +1,241 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.Hypothesis;
+
+/**
+ * Adapts the acoustic model to the voices of the household from the utterances kept by
+ * UtteranceLog that ended in an accepted command. A transform of the model's means is estimated
+ * from most of them and kept only if it explains the rest better than the model alone does, so a
+ * bad batch of recordings cannot make recognition worse.
+ *
+ * Transforms are versioned and kept in a folder next to the synced assets, named after the means
+ * of the model they were estimated for so a transform is never loaded with a different model.
+ * The previous version is kept to compare with.
+ */
+public class SpeakerAdaptation {
+    public static final String DIR_NAME = "adaptation";
+
+    // About a minute of speech, fewer frames give a transform that fits the recordings too closely
+    public static final int MIN_FRAMES = 6000;
+
+    private static final String TRANSFORM_PREFIX = "mllr_matrix.";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SEARCH_NAME = "adaptation";
+    private static final int VERSIONS_KEPT = 2;
+
+    // Every so many utterances one is held out to check the transform
+    private static final int HELD_OUT_EVERY = 5;
+
+    /**
+     * @param assetsDir directory with the synced assets
+     * @return the latest transform for the synced acoustic model, null if there is none
+     */
+    public static File findTransform(File assetsDir) {
+        List<File> transforms;
+        try {
+            transforms = listTransforms(assetsDir);
+        } catch (IOException e) {
+            return null;
+        }
+        return transforms.isEmpty() ? null : transforms.get(transforms.size() - 1);
+    }
+
+    /**
+     * Estimates a new transform from the accepted utterances, takes a while so must not be run on
+     * the main thread
+     * @param assetsDir directory with the synced assets
+     * @param utteranceDir folder of the utterance log
+     * @return the new transform, null if there were not enough utterances or it did not help
+     * @throws IOException if the model or utterances cannot be read or the transform written
+     */
+    public static File update(File assetsDir, File utteranceDir) throws IOException {
+        AcousticModel model = new AcousticModel(new File(assetsDir, DecoderSetup.ACOUSTIC_MODEL_DIR));
+        MllrEstimator estimator = new MllrEstimator(model);
+        List<UtteranceLog.Recording> heldOut = new ArrayList<>();
+        Decoder baseline = new Decoder(DecoderSetup.createConfig(assetsDir, DecoderProfile.ACCURATE, null));
+        try {
+            int count = 0;
+            for (UtteranceLog.Recording recording : UtteranceLog.listAccepted(utteranceDir)) {
+                List<String> phones = lookupPhones(baseline, recording.getText());
+                if (phones == null) {
+                    continue;
+                }
+                if (++count % HELD_OUT_EVERY == 0) {
+                    heldOut.add(recording);
+                } else {
+                    estimator.addUtterance(readAudio(recording.getAudioFile()), phones);
+                }
+            }
+            if (estimator.getFrames() < MIN_FRAMES || heldOut.isEmpty()) {
+                return null;
+            }
+
+            File dir = new File(assetsDir.getParentFile(), DIR_NAME);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            List<File> transforms = listTransforms(assetsDir);
+            int version = transforms.isEmpty() ? 1 : getVersion(transforms.get(transforms.size() - 1)) + 1;
+            File temp = new File(dir, TRANSFORM_PREFIX + getModelName(assetsDir) + TEMP_SUFFIX);
+            estimator.write(temp);
+
+            Decoder adapted = new Decoder(DecoderSetup.createConfig(assetsDir, DecoderProfile.ACCURATE, temp));
+            try {
+                if (scoreHeldOut(adapted, heldOut) <= scoreHeldOut(baseline, heldOut)) {
+                    temp.delete();
+                    return null;
+                }
+            } finally {
+                adapted.delete();
+            }
+            File transform = new File(dir, TRANSFORM_PREFIX + getModelName(assetsDir) + "." + version);
+            if (!temp.renameTo(transform)) {
+                temp.delete();
+                throw new IOException("Cannot create " + transform);
+            }
+            deleteOldTransforms(dir, transform);
+            return transform;
+        } finally {
+            baseline.delete();
+        }
+    }
+
+    /**
+     * Forces the decoder through the transcript of each utterance
+     * @return the average score per utterance, higher when the model fits the audio better
+     */
+    private static double scoreHeldOut(Decoder decoder, List<UtteranceLog.Recording> recordings)
+            throws IOException {
+        double total = 0;
+        for (UtteranceLog.Recording recording : recordings) {
+            decoder.setJsgfString(SEARCH_NAME, "#JSGF V1.0;\ngrammar " + SEARCH_NAME + ";\npublic <"
+                    + SEARCH_NAME + "> = " + recording.getText() + ";\n");
+            decoder.setSearch(SEARCH_NAME);
+            short[] audio = readAudio(recording.getAudioFile());
+            decoder.startUtt();
+            decoder.processRaw(audio, audio.length, false, true);
+            decoder.endUtt();
+            Hypothesis hypothesis = decoder.hyp();
+
+            // Not reaching the end of the transcript at all is the worst score
+            total += hypothesis != null ? hypothesis.getBestScore() : Integer.MIN_VALUE;
+        }
+        return total / recordings.size();
+    }
+
+    /**
+     * @return the phones of the words in order, null if a word is not in the dictionary
+     */
+    private static List<String> lookupPhones(Decoder decoder, String text) {
+        List<String> phones = new ArrayList<>();
+        for (String word : text.split("\\s+")) {
+            String pronunciation = decoder.lookupWord(word);
+            if (pronunciation == null) {
+                return null;
+            }
+            phones.addAll(Arrays.asList(pronunciation.trim().split("\\s+")));
+        }
+        return phones.isEmpty() ? null : phones;
+    }
+
+    /**
+     * @return the transforms for the synced acoustic model from oldest to newest
+     */
+    private static List<File> listTransforms(File assetsDir) throws IOException {
+        final String prefix = TRANSFORM_PREFIX + getModelName(assetsDir) + ".";
+        List<File> transforms = new ArrayList<>();
+        File[] files = new File(assetsDir.getParentFile(), DIR_NAME).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(prefix) && getVersion(file) > 0) {
+                    transforms.add(file);
+                }
+            }
+        }
+        Collections.sort(transforms, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return getVersion(lhs) - getVersion(rhs);
+            }
+        });
+        return transforms;
+    }
+
+    /**
+     * Keeps the newest versions for the model of the new transform and deletes the transforms of
+     * other models
+     */
+    private static void deleteOldTransforms(File dir, File transform) {
+        String name = transform.getName();
+        String prefix = name.substring(0, name.lastIndexOf('.') + 1);
+        int oldestKept = getVersion(transform) - VERSIONS_KEPT + 1;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().startsWith(prefix) || getVersion(file) < oldestKept) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return version of the transform, 0 if it is not a transform
+     */
+    private static int getVersion(File transform) {
+        String name = transform.getName();
+        try {
+            return Integer.parseInt(name.substring(name.lastIndexOf('.') + 1));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return short hash of the acoustic model's means, which are what the transform changes
+     */
+    private static String getModelName(File assetsDir) throws IOException {
+        File means = new File(new File(assetsDir, DecoderSetup.ACOUSTIC_MODEL_DIR), AcousticModel.MEANS_FILE);
+        return HashedFile.hash(readFile(means, false)).substring(0, 12);
+    }
+
+    private static short[] readAudio(File file) throws IOException {
+        byte[] bytes = readFile(file, true);
+        short[] audio = new short[bytes.length / 2];
+        for (int i = 0; i < audio.length; i++) {
+            audio[i] = (short) ((bytes[i * 2] & 0xFF) | (bytes[i * 2 + 1] << 8));
+        }
+        return audio;
+    }
+
+    private static byte[] readFile(File file, boolean gzipped) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        InputStream in = new FileInputStream(file);
+        try {
+            if (gzipped) {
+                in = new GZIPInputStream(in);
+            }
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,123 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.matthewn4444.voiceautomation.TimeoutScheduler;
+
+import java.io.File;
+
+/**
+ * Process wide holder of the speech recognizer so that the acoustic model, dictionary and loaded
+ * searches outlive the activity using them. A controller acquires the recognizer when it starts
+ * and releases it when it shuts down; a released recognizer is kept for a while so that a
+ * recreated activity can continue listening right away instead of loading everything again.
+ */
+public class SpeechEngine {
+    private static final String TAG = "SpeechEngine";
+    private static final long RELEASE_DELAY = 60 * 1000;
+
+    private static SpeechEngine sInstance;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Recognizer mRecognizer;
+    private File mAssetDir;
+    private boolean mInUse;
+    private TimeoutScheduler.Token mReleaseTimer;
+
+    private final Runnable mReleaseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (SpeechEngine.this) {
+                mReleaseTimer = null;
+                if (!mInUse && mRecognizer != null) {
+                    Log.i(TAG, "Releasing unused recognizer");
+                    mRecognizer.shutdown();
+                    mRecognizer = null;
+                    mAssetDir = null;
+                }
+            }
+        }
+    };
+
+    private SpeechEngine() {
+    }
+
+    public static synchronized SpeechEngine getInstance() {
+        if (sInstance == null) {
+            sInstance = new SpeechEngine();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return handler on the main thread that recognizers post their events to
+     */
+    public Handler getHandler() {
+        return mHandler;
+    }
+
+    /**
+     * Takes the retained recognizer, it is not given to anyone else till it is released
+     * @param profile decoder profile the recognizer must use, one loaded with another profile
+     *                is shut down
+     * @param isolated true if the recognizer must run in the speech process, see RemoteRecognizer
+     * @return the recognizer or null if none is retained, it is already in use or it used
+     *         another profile or process
+     */
+    public synchronized Recognizer acquire(DecoderProfile profile, boolean isolated) {
+        if (mRecognizer == null || mInUse) {
+            return null;
+        }
+        if (mRecognizer.getProfile() != profile || (mRecognizer instanceof RemoteRecognizer) != isolated) {
+            Log.i(TAG, "Releasing recognizer loaded with the " + mRecognizer.getProfile().getKey()
+                    + " profile" + (mRecognizer instanceof RemoteRecognizer ? " in the speech process" : ""));
+            mRecognizer.shutdown();
+            mRecognizer = null;
+            mAssetDir = null;
+            return null;
+        }
+        if (mReleaseTimer != null) {
+            mReleaseTimer.cancel();
+            mReleaseTimer = null;
+        }
+        mInUse = true;
+        return mRecognizer;
+    }
+
+    /**
+     * @return the synced assets directory the retained recognizer was loaded from
+     */
+    public synchronized File getAssetDir() {
+        return mAssetDir;
+    }
+
+    /**
+     * Gives back a recognizer when it is no longer used. The microphone is released right away
+     * while the decoder is kept loaded for the next controller.
+     * @param recognizer recognizer acquired or created by the caller
+     * @param assetDir synced assets directory the recognizer was loaded from
+     */
+    public synchronized void release(Recognizer recognizer, File assetDir) {
+        recognizer.stopCapture();
+        if (recognizer == mRecognizer) {
+            mInUse = false;
+        } else if (mRecognizer == null || !mInUse) {
+            if (mRecognizer != null) {
+                mRecognizer.shutdown();
+            }
+            mRecognizer = recognizer;
+            mAssetDir = assetDir;
+            mInUse = false;
+        } else {
+            // Another controller is using the retained one, no need for two
+            recognizer.shutdown();
+            return;
+        }
+        if (mReleaseTimer != null) {
+            mReleaseTimer.cancel();
+        }
+        mReleaseTimer = TimeoutScheduler.getInstance().scheduleOnMainThread(mReleaseRunnable, RELEASE_DELAY);
+    }
+}
@@ -0,0 +1,59 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import edu.cmu.pocketsphinx.Hypothesis;
+
+/**
+ * Hypothesis kept in Java that can be changed and reused. The ones the decoder returns hold native
+ * memory and read their text through JNI, which allocates a new string every time. Recognizers
+ * give these to their listeners so reading a partial result allocates nothing.
+ */
+public class TextHypothesis extends Hypothesis {
+    private String mText;
+    private int mBestScore;
+    private int mProb;
+
+    public TextHypothesis() {
+        // No native hypothesis behind it, the fields are kept here instead
+        super(0, false);
+    }
+
+    /**
+     * @param text hypothesis text, already trimmed
+     * @param bestScore score of the best path
+     */
+    public void set(String text, int bestScore) {
+        mText = text;
+        mBestScore = bestScore;
+        mProb = 0;
+    }
+
+    @Override
+    public String getHypstr() {
+        return mText;
+    }
+
+    @Override
+    public void setHypstr(String text) {
+        mText = text;
+    }
+
+    @Override
+    public int getBestScore() {
+        return mBestScore;
+    }
+
+    @Override
+    public void setBestScore(int bestScore) {
+        mBestScore = bestScore;
+    }
+
+    @Override
+    public int getProb() {
+        return mProb;
+    }
+
+    @Override
+    public void setProb(int prob) {
+        mProb = prob;
+    }
+}
@@ -0,0 +1,114 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+
+/**
+ * Keyword detection thresholds per phrase, as produced by the threshold tuner. Each line of the
+ * profile is a phrase and its threshold separated by a tab; lines starting with @ hold information
+ * about the profile such as its revision and what it was tuned for.
+ */
+public class ThresholdProfile {
+    public static final int FORMAT_VERSION = 1;
+
+    public static final String INFO_FORMAT = "format";
+    public static final String INFO_REVISION = "revision";
+
+    private final LinkedHashMap<String, String> mInfo = new LinkedHashMap<>();
+    private final LinkedHashMap<String, String> mThresholds = new LinkedHashMap<>();
+
+    public ThresholdProfile() {
+        mInfo.put(INFO_FORMAT, String.valueOf(FORMAT_VERSION));
+        mInfo.put(INFO_REVISION, "0");
+    }
+
+    /**
+     * Reads a profile
+     * @param in stream to read from, it is not closed
+     * @return the profile
+     * @throws IOException if the profile is invalid or written in a newer format
+     */
+    public static ThresholdProfile read(InputStream in) throws IOException {
+        ThresholdProfile profile = new ThresholdProfile();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("@")) {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw new IOException("Threshold profile line " + lineNumber + " has no value");
+                }
+                profile.mInfo.put(line.substring(1, space), line.substring(space + 1).trim());
+                continue;
+            }
+            int tab = line.lastIndexOf('\t');
+            if (tab < 0) {
+                throw new IOException("Threshold profile line " + lineNumber + " has no threshold");
+            }
+            profile.mThresholds.put(line.substring(0, tab).trim(), line.substring(tab + 1).trim());
+        }
+        int format;
+        try {
+            format = Integer.parseInt(profile.mInfo.get(INFO_FORMAT));
+        } catch (NumberFormatException e) {
+            throw new IOException("Threshold profile has an invalid format version");
+        }
+        if (format > FORMAT_VERSION) {
+            throw new IOException("Threshold profile format " + format + " is not supported");
+        }
+        return profile;
+    }
+
+    public void write(Writer out) throws IOException {
+        for (String key : mInfo.keySet()) {
+            out.write("@" + key + " " + mInfo.get(key) + "\n");
+        }
+        for (String phrase : mThresholds.keySet()) {
+            out.write(phrase + "\t" + mThresholds.get(phrase) + "\n");
+        }
+        out.flush();
+    }
+
+    /**
+     * @param phrase keyword phrase
+     * @param fallback threshold to use when the phrase was not tuned
+     * @return the tuned threshold of the phrase or the fallback
+     */
+    public String getThreshold(String phrase, String fallback) {
+        String threshold = mThresholds.get(phrase);
+        return threshold != null ? threshold : fallback;
+    }
+
+    public void setThreshold(String phrase, String threshold) {
+        mThresholds.put(phrase, threshold);
+    }
+
+    public int getRevision() {
+        try {
+            return Integer.parseInt(mInfo.get(INFO_REVISION));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public void setRevision(int revision) {
+        mInfo.put(INFO_REVISION, String.valueOf(revision));
+    }
+
+    public String getInfo(String key) {
+        return mInfo.get(key);
+    }
+
+    public void setInfo(String key, String value) {
+        mInfo.put(key, value);
+    }
+}
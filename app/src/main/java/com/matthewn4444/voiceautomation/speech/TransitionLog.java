@@ -0,0 +1,90 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import android.util.Log;
+
+/**
+ * Keeps the most recent state transitions of a state machine with the time they happened, along
+ * with the total time spent in each state. Entries are preallocated and reused so recording a
+ * transition does not allocate.
+ * @param <S> enum of states
+ */
+public class TransitionLog<S extends Enum<S>> {
+    private final Entry<S>[] mEntries;
+    private final long[] mTimeInState;
+    private final int[] mEnterCount;
+    private int mNext;
+    private int mCount;
+
+    public static class Entry<S> {
+        public S from;
+        public S to;
+        public String reason;
+        public long time;
+    }
+
+    @SuppressWarnings("unchecked")
+    public TransitionLog(int capacity, int stateCount) {
+        mEntries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++) {
+            mEntries[i] = new Entry<>();
+        }
+        mTimeInState = new long[stateCount];
+        mEnterCount = new int[stateCount];
+    }
+
+    /**
+     * Records a transition
+     * @param from state being left
+     * @param to state being entered
+     * @param reason constant describing what caused the transition
+     * @param time elapsed realtime of the transition in milliseconds
+     */
+    public synchronized void record(S from, S to, String reason, long time) {
+        Entry<S> last = mCount > 0 ? mEntries[(mNext + mEntries.length - 1) % mEntries.length] : null;
+        if (last != null && from != null) {
+            mTimeInState[from.ordinal()] += time - last.time;
+        }
+        Entry<S> entry = mEntries[mNext];
+        entry.from = from;
+        entry.to = to;
+        entry.reason = reason;
+        entry.time = time;
+        mEnterCount[to.ordinal()]++;
+        mNext = (mNext + 1) % mEntries.length;
+        mCount = Math.min(mCount + 1, mEntries.length);
+    }
+
+    /**
+     * @param state the state
+     * @return milliseconds spent in the state, not counting the current visit
+     */
+    public synchronized long getTimeInState(S state) {
+        return mTimeInState[state.ordinal()];
+    }
+
+    public synchronized int getEnterCount(S state) {
+        return mEnterCount[state.ordinal()];
+    }
+
+    /**
+     * @return elapsed realtime of the last transition or 0 if there was none
+     */
+    public synchronized long getLastTransitionTime() {
+        return mCount > 0 ? mEntries[(mNext + mEntries.length - 1) % mEntries.length].time : 0;
+    }
+
+    /**
+     * Writes the recorded transitions from oldest to newest to the log
+     * @param tag log tag
+     */
+    public synchronized void dump(String tag) {
+        int start = (mNext - mCount + mEntries.length) % mEntries.length;
+        long previous = 0;
+        for (int i = 0; i < mCount; i++) {
+            Entry<S> entry = mEntries[(start + i) % mEntries.length];
+            Log.i(tag, entry.from + " -> " + entry.to + " (" + entry.reason + ") at " + entry.time
+                    + (previous > 0 ? " +" + (entry.time - previous) + "ms" : ""));
+            previous = entry.time;
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.matthewn4444.voiceautomation.speech;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+import edu.cmu.pocketsphinx.Hypothesis;
+
+/**
+ * Keeps the decoded audio of recent utterances on disk within a fixed size budget. The decoder
+ * thread only copies audio into memory; each finished utterance is compressed and written on a
+ * background thread, and the oldest recordings are deleted once the budget is exceeded.
+ *
+ * Recordings are saved as gzipped 16-bit raw audio in a folder per search, next to a text file
+ * with the hypothesis, which is the corpus layout the benchmark reads. The hypothesis is what the
+ * decoder heard, not what was said, so recordings should be checked before used for tuning.
+ * Recordings that ended in a command being accepted are marked with an empty file, their
+ * hypothesis is trusted enough to adapt the acoustic model with.
+ */
+public class UtteranceLog {
+    private static final String TAG = "UtteranceLog";
+    private static final String AUDIO_EXTENSION = ".raw.gz";
+    private static final String LABEL_EXTENSION = ".txt";
+    private static final String ACCEPTED_EXTENSION = ".accepted";
+    private static final int MAX_UTTERANCE_SECONDS = 30;
+
+    private final File mDir;
+    private final long mBudgetBytes;
+    private final short[] mSamples;
+    private final ExecutorService mWriter;
+    private final SimpleDateFormat mNameFormat = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US);
+    private String mSearch;
+    private int mLength;
+    private long mUsedBytes = -1;
+
+    // Last recording saved, only used on the writer thread
+    private File mLastSavedDir;
+    private String mLastSavedName;
+    private String mLastSavedSearch;
+    private String mLastSavedText;
+
+    /**
+     * A recording with its hypothesis
+     */
+    public static class Recording {
+        private final File mAudioFile;
+        private final String mText;
+
+        Recording(File audioFile, String text) {
+            mAudioFile = audioFile;
+            mText = text;
+        }
+
+        public File getAudioFile() {
+            return mAudioFile;
+        }
+
+        public String getText() {
+            return mText;
+        }
+    }
+
+    /**
+     * @param dir folder to keep the recordings in
+     * @param budgetBytes most bytes the recordings may use
+     * @param sampleRate sample rate of the audio
+     */
+    public UtteranceLog(File dir, long budgetBytes, int sampleRate) {
+        mDir = dir;
+        mBudgetBytes = budgetBytes;
+        mSamples = new short[sampleRate * MAX_UTTERANCE_SECONDS];
+        mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public File getDir() {
+        return mDir;
+    }
+
+    public long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    /**
+     * Starts recording an utterance, called from the decoding thread
+     * @param search name of the search decoding it
+     */
+    void begin(String search) {
+        mSearch = search;
+        mLength = 0;
+    }
+
+    /**
+     * Adds decoded audio to the current utterance, called from the decoding thread. Utterances
+     * longer than the max length are split.
+     */
+    void append(short[] samples, int length, Hypothesis hypothesis) {
+        if (mSearch == null) {
+            return;
+        }
+        int offset = 0;
+        while (offset < length) {
+            int count = Math.min(length - offset, mSamples.length - mLength);
+            System.arraycopy(samples, offset, mSamples, mLength, count);
+            mLength += count;
+            offset += count;
+            if (mLength == mSamples.length) {
+                String search = mSearch;
+                end(hypothesis);
+                begin(search);
+            }
+        }
+    }
+
+    /**
+     * Finishes the current utterance and saves it in the background, called from the decoding
+     * thread
+     * @param hypothesis what the decoder heard, can be null
+     */
+    void end(Hypothesis hypothesis) {
+        if (mSearch == null || mLength == 0) {
+            mSearch = null;
+            return;
+        }
+        final String search = mSearch;
+        final String text = hypothesis != null ? hypothesis.getHypstr().trim() : "";
+        final short[] audio = Arrays.copyOf(mSamples, mLength);
+        final Date time = new Date();
+        mSearch = null;
+        mLength = 0;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    save(search, text, audio, time);
+                    trim();
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot save utterance", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Marks the last recording of the search as accepted if the decoder heard the accepted text.
+     * Must be called after the search stopped so its recording is already queued to be saved.
+     * @param search name of the search that decoded the command
+     * @param text the accepted command
+     */
+    public void markAccepted(final String search, final String text) {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (mLastSavedName == null || !search.equals(mLastSavedSearch)
+                        || !text.trim().equals(mLastSavedText)) {
+                    return;
+                }
+                try {
+                    File marker = new File(mLastSavedDir, mLastSavedName + ACCEPTED_EXTENSION);
+                    if (!marker.createNewFile() && !marker.exists()) {
+                        throw new IOException("Cannot create " + marker);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot mark utterance as accepted", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @param dir folder of the recordings
+     * @return recordings marked as accepted in every search, oldest first
+     */
+    public static List<Recording> listAccepted(File dir) {
+        List<Recording> recordings = new ArrayList<>();
+        File[] dirs = dir.listFiles();
+        if (dirs == null) {
+            return recordings;
+        }
+        for (File searchDir : dirs) {
+            File[] markers = searchDir.listFiles();
+            if (markers == null) {
+                continue;
+            }
+            Arrays.sort(markers);
+            for (File marker : markers) {
+                String name = marker.getName();
+                if (!name.endsWith(ACCEPTED_EXTENSION)) {
+                    continue;
+                }
+                name = name.substring(0, name.length() - ACCEPTED_EXTENSION.length());
+                File audioFile = new File(searchDir, name + AUDIO_EXTENSION);
+                String text = readLabel(new File(searchDir, name + LABEL_EXTENSION));
+                if (audioFile.exists() && text != null && !text.isEmpty()) {
+                    recordings.add(new Recording(audioFile, text));
+                }
+            }
+        }
+        return recordings;
+    }
+
+    private static String readLabel(File file) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line = reader.readLine();
+            return line != null ? line.trim() : null;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {}
+            }
+        }
+    }
+
+    private void save(String search, String text, short[] audio, Date time) throws IOException {
+        File dir = new File(mDir, search.replaceAll("[^\\w.-]", "_"));
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        String name = mNameFormat.format(time);
+        File audioFile = new File(dir, name + AUDIO_EXTENSION);
+        byte[] bytes = new byte[audio.length * 2];
+        for (int i = 0; i < audio.length; i++) {
+            bytes[i * 2] = (byte) audio[i];
+            bytes[i * 2 + 1] = (byte) (audio[i] >> 8);
+        }
+        OutputStream out = null;
+        try {
+            out = new GZIPOutputStream(new FileOutputStream(audioFile));
+            out.write(bytes);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+        File labelFile = new File(dir, name + LABEL_EXTENSION);
+        FileWriter writer = new FileWriter(labelFile);
+        try {
+            writer.write(text + "\n");
+        } finally {
+            writer.close();
+        }
+        if (mUsedBytes >= 0) {
+            mUsedBytes += audioFile.length() + labelFile.length();
+        }
+        mLastSavedDir = dir;
+        mLastSavedName = name;
+        mLastSavedSearch = search;
+        mLastSavedText = text;
+    }
+
+    /**
+     * Deletes the oldest recordings till they fit in the budget
+     */
+    private void trim() {
+        if (mUsedBytes >= 0 && mUsedBytes <= mBudgetBytes) {
+            return;
+        }
+        List<File> files = new ArrayList<>();
+        File[] dirs = mDir.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] children = dir.listFiles();
+                if (children != null) {
+                    Collections.addAll(files, children);
+                }
+            }
+        }
+        long used = 0;
+        for (File file : files) {
+            used += file.length();
+        }
+
+        // Names start with the time they were recorded
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        for (int i = 0; i < files.size() && used > mBudgetBytes; i++) {
+            File file = files.get(i);
+            long length = file.length();
+            if (file.delete()) {
+                used -= length;
+            }
+        }
+        mUsedBytes = used;
+    }
+}
@@ -0,0 +1,92 @@
+package com.matthewn4444.voiceautomation.speech;
+
+/**
+ * Cheap energy based voice activity detector used to keep the decoder idle while the room is
+ * quiet. It follows the background noise level and opens when a block of audio is clearly louder
+ * than it, then stays open until the audio has been back at the noise level for a while.
+ */
+public class VoiceActivityGate {
+    // Audio must be this many times more energetic than the background noise to open
+    private static final double OPEN_RATIO = 4.0;
+
+    // Mean square amplitude below which audio is always silence, around -60dBFS
+    private static final double MIN_ENERGY = 1100;
+
+    // How fast the noise level follows louder and quieter audio when the gate is closed
+    private static final double NOISE_RISE_RATE = 0.02;
+    private static final double NOISE_FALL_RATE = 0.3;
+
+    private static final float HANGOVER_SECONDS = 1.0f;
+
+    private final int mHangoverSamples;
+    private volatile double mNoiseLevel = MIN_ENERGY;
+    private int mQuietSamples;
+    private boolean mIsOpen;
+
+    public VoiceActivityGate(int sampleRate) {
+        mHangoverSamples = Math.round(sampleRate * HANGOVER_SECONDS);
+    }
+
+    /**
+     * Feeds the next block of audio
+     * @param samples audio
+     * @param length amount of samples in the block
+     * @return true if the gate is open after this block
+     */
+    public boolean process(short[] samples, int length) {
+        return process(samples, 0, length);
+    }
+
+    /**
+     * Feeds the next block of audio
+     * @param samples audio
+     * @param offset index of the first sample of the block
+     * @param length amount of samples in the block
+     * @return true if the gate is open after this block
+     */
+    public boolean process(short[] samples, int offset, int length) {
+        if (length <= 0) {
+            return mIsOpen;
+        }
+        long sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += samples[i] * samples[i];
+        }
+        double energy = (double) sum / length;
+        boolean loud = energy > Math.max(mNoiseLevel * OPEN_RATIO, MIN_ENERGY);
+
+        if (mIsOpen) {
+            mQuietSamples = loud ? 0 : mQuietSamples + length;
+            if (mQuietSamples >= mHangoverSamples) {
+                mIsOpen = false;
+            }
+        } else if (loud) {
+            mIsOpen = true;
+            mQuietSamples = 0;
+        } else {
+            double rate = energy > mNoiseLevel ? NOISE_RISE_RATE : NOISE_FALL_RATE;
+            mNoiseLevel = Math.max(MIN_ENERGY, mNoiseLevel + (energy - mNoiseLevel) * rate);
+        }
+        return mIsOpen;
+    }
+
+    /**
+     * @return the background noise level learned while the gate was closed, in decibels above
+     *         the level that is always silence
+     */
+    public double getNoiseDecibels() {
+        return 10 * Math.log10(mNoiseLevel / MIN_ENERGY);
+    }
+
+    public boolean isOpen() {
+        return mIsOpen;
+    }
+
+    /**
+     * Closes the gate, the learned noise level is kept
+     */
+    public void close() {
+        mIsOpen = false;
+        mQuietSamples = 0;
+    }
+}
@@ -0,0 +1,171 @@
+package com.matthewn4444.voiceautomation.benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Labelled recordings to benchmark with. Each search has a folder named after it holding 16kHz
+ * 16-bit mono recordings, either wav files, raw files or the gzipped raw files the app keeps in
+ * its utterance log, which can be copied here as they are. The expected phrase of a recording is in a text file with the same name next to it;
+ * recordings without one are negative samples where nothing should be recognized.
+ */
+public class AudioCorpus {
+    public static final int SAMPLE_RATE = 16000;
+
+    public static class Utterance {
+        public final File file;
+        public final String expected;
+        public final short[] samples;
+
+        Utterance(File file, String expected, short[] samples) {
+            this.file = file;
+            this.expected = expected;
+            this.samples = samples;
+        }
+
+        public boolean isNegative() {
+            return expected == null;
+        }
+
+        public double getDuration() {
+            return (double) samples.length / SAMPLE_RATE;
+        }
+    }
+
+    /**
+     * Loads all recordings of a search folder
+     * @param dir folder of the search
+     * @return the utterances sorted by file name
+     * @throws IOException if a recording cannot be read or is not in the expected format
+     */
+    public static List<Utterance> load(File dir) throws IOException {
+        List<Utterance> utterances = new ArrayList<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return utterances;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            String name = file.getName();
+            boolean isWav = name.endsWith(".wav");
+            boolean isGzip = name.endsWith(".raw.gz");
+            if (!isWav && !isGzip && !name.endsWith(".raw")) {
+                continue;
+            }
+            String baseName = name.substring(0, name.length() - (isGzip ? 7 : 4));
+            File label = new File(dir, baseName + ".txt");
+            byte[] data = readFile(file, isGzip);
+            short[] samples = isWav ? decodeWav(file, data) : toSamples(data, 0, data.length);
+            utterances.add(new Utterance(file, readLabel(label), samples));
+        }
+        return utterances;
+    }
+
+    private static String readLabel(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line = reader.readLine();
+            if (line == null || line.trim().isEmpty()) {
+                return null;
+            }
+            return line.trim().replaceAll("\\s+", " ");
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private static short[] decodeWav(File file, byte[] data) throws IOException {
+        if (data.length < 12 || !new String(data, 0, 4, "US-ASCII").equals("RIFF")
+                || !new String(data, 8, 4, "US-ASCII").equals("WAVE")) {
+            throw new IOException(file + " is not a wav file");
+        }
+        int pos = 12;
+        boolean formatChecked = false;
+        while (pos + 8 <= data.length) {
+            String chunk = new String(data, pos, 4, "US-ASCII");
+            int size = readInt(data, pos + 4);
+            int body = pos + 8;
+            if (chunk.equals("fmt ")) {
+                int format = readShort(data, body);
+                int channels = readShort(data, body + 2);
+                int sampleRate = readInt(data, body + 4);
+                int bits = readShort(data, body + 14);
+                if (format != 1 || channels != 1 || sampleRate != SAMPLE_RATE || bits != 16) {
+                    throw new IOException(file + " must be 16-bit mono PCM at " + SAMPLE_RATE + "Hz");
+                }
+                formatChecked = true;
+            } else if (chunk.equals("data")) {
+                if (!formatChecked) {
+                    throw new IOException(file + " has no format before its data");
+                }
+                return toSamples(data, body, Math.min(size, data.length - body));
+            }
+            pos = body + size + (size & 1);
+        }
+        throw new IOException(file + " has no audio data");
+    }
+
+    private static short[] toSamples(byte[] data, int offset, int length) {
+        short[] samples = new short[length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) readShort(data, offset + i * 2);
+        }
+        return samples;
+    }
+
+    private static int readShort(byte[] data, int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] << 8);
+    }
+
+    private static int readInt(byte[] data, int pos) {
+        return (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8) | ((data[pos + 2] & 0xFF) << 16)
+                | (data[pos + 3] << 24);
+    }
+
+    private static byte[] readFile(File file, boolean gzipped) throws IOException {
+        if (gzipped) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            InputStream in = null;
+            try {
+                in = new GZIPInputStream(new FileInputStream(file));
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                if (in != null) {
+                    in.close();
+                }
+            }
+            return out.toByteArray();
+        }
+        byte[] data = new byte[(int) file.length()];
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            in.readFully(data);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+        return data;
+    }
+}
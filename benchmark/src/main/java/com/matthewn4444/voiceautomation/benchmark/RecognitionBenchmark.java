@@ -0,0 +1,380 @@
+package com.matthewn4444.voiceautomation.benchmark;
+
+import com.matthewn4444.voiceautomation.speech.DecoderProfile;
+import com.matthewn4444.voiceautomation.speech.DecoderSetup;
+import com.matthewn4444.voiceautomation.speech.FsgGrammar;
+import com.matthewn4444.voiceautomation.speech.PronunciationDictionary;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import edu.cmu.pocketsphinx.Decoder;
+import edu.cmu.pocketsphinx.FsgModel;
+import edu.cmu.pocketsphinx.Hypothesis;
+
+/**
+ * Decodes a labelled corpus of recordings offline with the same decoder setup as the app and
+ * reports the real time factor, the decode latency per utterance and the false accept and false
+ * reject rates for each speech model.
+ *
+ * Usage: RecognitionBenchmark --corpus dir [--assets dir] [--keywords commands.gram]
+ *                             [--search name:MODEL:file]... [--csv file]
+ *                             [--decoder-profile low_power|balanced|accurate]
+ *
+ * The corpus has a folder for each search, see AudioCorpus. By default the lights and music
+ * grammars are benchmarked; the keyword search is added when the keyword list the app generated
+ * (commands.gram, pulled from the device) is given and is read from the "keywords" folder. The
+ * native pocketsphinx_jni library for this machine must be on java.library.path. Searches use the
+ * balanced decoder profile unless another is given, to compare the profiles' cost and accuracy.
+ */
+public class RecognitionBenchmark {
+    public static final String KEYWORD_SEARCH = "keywords";
+    public static final String KEYWORD_MODEL = "KEYWORD";
+
+    // The app feeds the decoder a tenth of a second at a time
+    private static final int CHUNK_SIZE = AudioCorpus.SAMPLE_RATE / 10;
+
+    private final Decoder mDecoder;
+    private final DecoderProfile mProfile;
+    private final File mFullDictionary;
+    private final short[] mChunk = new short[CHUNK_SIZE];
+    private final LinkedHashMap<String, String> mSearchModels = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Stats> mModelStats = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Stats> mSearchStats = new LinkedHashMap<>();
+    private PrintWriter mCsv;
+
+    public static class Result {
+        public String hypothesis;
+        public double decodeSeconds;
+        public double latencySeconds;
+    }
+
+    private static class Stats {
+        int utterances;
+        int positives;
+        int negatives;
+        int falseAccepts;
+        int falseRejects;
+        double audioSeconds;
+        double negativeAudioSeconds;
+        double decodeSeconds;
+        final List<Double> latencies = new ArrayList<>();
+
+        void add(AudioCorpus.Utterance utterance, Result result) {
+            boolean heard = result.hypothesis != null;
+            utterances++;
+            audioSeconds += utterance.getDuration();
+            decodeSeconds += result.decodeSeconds;
+            latencies.add(result.latencySeconds);
+            if (utterance.isNegative()) {
+                negatives++;
+                negativeAudioSeconds += utterance.getDuration();
+                if (heard) {
+                    falseAccepts++;
+                }
+            } else {
+                positives++;
+                if (!utterance.expected.equals(result.hypothesis)) {
+                    falseRejects++;
+                    if (heard) {
+                        // Recognized the wrong phrase, which also runs the wrong command
+                        falseAccepts++;
+                    }
+                }
+            }
+        }
+    }
+
+    public RecognitionBenchmark(File assetsDir) {
+        this(assetsDir, DecoderProfile.BALANCED);
+    }
+
+    /**
+     * @param assetsDir directory with the synced assets
+     * @param profile search parameters, applied per search like the app does
+     */
+    public RecognitionBenchmark(File assetsDir, DecoderProfile profile) {
+        mProfile = profile;
+        mDecoder = new Decoder(DecoderSetup.createConfig(assetsDir, profile));
+        mFullDictionary = new File(assetsDir.getParentFile(), DecoderSetup.FULL_DICTIONARY_FILE);
+    }
+
+    /**
+     * Adds the keyword search, words not in the pruned dictionary are added from the full one like
+     * the app does for commands the user changed
+     * @param keywordFile keyword list
+     * @throws IOException if the keyword list or full dictionary cannot be read
+     */
+    public void addKeywordSearch(File keywordFile) throws IOException {
+        Set<String> missing = PronunciationDictionary.findMissingWords(mDecoder, readPhrases(keywordFile));
+        if (!missing.isEmpty()) {
+            InputStream in = new FileInputStream(mFullDictionary);
+            try {
+                Set<String> unknown = PronunciationDictionary.addWords(mDecoder, missing, in);
+                if (!unknown.isEmpty()) {
+                    throw new IOException("No pronunciation for " + unknown);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        mProfile.applyToSearch(mDecoder.getConfig());
+        mDecoder.setKws(KEYWORD_SEARCH, keywordFile.getPath());
+        mSearchModels.put(KEYWORD_SEARCH, KEYWORD_MODEL);
+    }
+
+    /**
+     * Adds a search the same way the app adds the search of a category
+     * @param name search name, also the name of its corpus folder
+     * @param model DEFAULT, LANGUAGE or PHONETIC
+     * @param file grammar, language model or phonetic model file
+     */
+    public void addSearch(String name, String model, File file) {
+        mProfile.forShortSearches().applyToSearch(mDecoder.getConfig());
+        switch (model) {
+            case "DEFAULT":
+                File fsgFile = FsgGrammar.getFsgFile(file);
+                if (FsgGrammar.isCompiledFrom(fsgFile, file)) {
+                    mDecoder.setFsg(name, new FsgModel(fsgFile.getPath(), mDecoder.getLogmath(),
+                            (float) mDecoder.getConfig().getFloat("-lw")));
+                } else {
+                    mDecoder.setJsgfFile(name, file.getPath());
+                }
+                break;
+            case "LANGUAGE":
+                mDecoder.setLmFile(name, file.getPath());
+                break;
+            case "PHONETIC":
+                mDecoder.setAllphoneFile(name, file.getPath());
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid speech model " + model);
+        }
+        mSearchModels.put(name, model);
+    }
+
+    /**
+     * Reads the phrases of a keyword list, one phrase per line optionally followed by /threshold/
+     */
+    static List<String> readPhrases(File file) throws IOException {
+        List<String> phrases = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int slash = line.indexOf('/');
+                String phrase = (slash >= 0 ? line.substring(0, slash) : line).trim();
+                if (!phrase.isEmpty() && !phrases.contains(phrase)) {
+                    phrases.add(phrase);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return phrases;
+    }
+
+    public void setCsvOutput(PrintWriter csv) {
+        mCsv = csv;
+        mCsv.println("search,model,file,expected,hypothesis,audio_s,decode_s,latency_s");
+    }
+
+    /**
+     * Decodes one utterance the way the app streams audio to the decoder
+     * @param search search to decode with
+     * @param samples audio
+     * @return what was heard and how long it took
+     */
+    public Result decode(String search, short[] samples) {
+        Result result = new Result();
+        mDecoder.setSearch(search);
+        long start = System.nanoTime();
+        mDecoder.startUtt();
+        for (int pos = 0; pos < samples.length; pos += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, samples.length - pos);
+            System.arraycopy(samples, pos, mChunk, 0, length);
+            mDecoder.processRaw(mChunk, length, false, false);
+        }
+
+        // Latency is the time from the last audio till the final hypothesis is known
+        long lastAudio = System.nanoTime();
+        mDecoder.endUtt();
+        Hypothesis hypothesis = mDecoder.hyp();
+        long end = System.nanoTime();
+
+        if (hypothesis != null) {
+            String text = hypothesis.getHypstr().trim().replaceAll("\\s+", " ");
+            result.hypothesis = text.isEmpty() ? null : text;
+        }
+        result.decodeSeconds = (end - start) / 1e9;
+        result.latencySeconds = (end - lastAudio) / 1e9;
+        return result;
+    }
+
+    public void run(File corpusDir) throws IOException {
+        for (String search : mSearchModels.keySet()) {
+            String model = mSearchModels.get(search);
+            List<AudioCorpus.Utterance> utterances = AudioCorpus.load(new File(corpusDir, search));
+            if (utterances.isEmpty()) {
+                System.err.println("No recordings for search " + search);
+                continue;
+            }
+            for (AudioCorpus.Utterance utterance : utterances) {
+                Result result = decode(search, utterance.samples);
+                getStats(mModelStats, model).add(utterance, result);
+                getStats(mSearchStats, search).add(utterance, result);
+                if (mCsv != null) {
+                    mCsv.println(search + "," + model + "," + utterance.file.getName() + ","
+                            + (utterance.expected != null ? utterance.expected : "") + ","
+                            + (result.hypothesis != null ? result.hypothesis : "") + ","
+                            + format(utterance.getDuration()) + "," + format(result.decodeSeconds)
+                            + "," + format(result.latencySeconds));
+                }
+            }
+        }
+    }
+
+    public void printReport(PrintWriter out) {
+        out.println("Per speech model");
+        printTable(out, mModelStats);
+        out.println();
+        out.println("Per search");
+        printTable(out, mSearchStats);
+        out.flush();
+    }
+
+    private static void printTable(PrintWriter out, LinkedHashMap<String, Stats> table) {
+        out.println(String.format(Locale.US, "%-12s %6s %8s %7s %9s %9s %9s %7s %7s %8s",
+                "", "utts", "audio s", "RTF", "lat mean", "lat p95", "lat max", "FA %", "FR %", "FA/hour"));
+        for (String name : table.keySet()) {
+            Stats stats = table.get(name);
+            List<Double> latencies = new ArrayList<>(stats.latencies);
+            Collections.sort(latencies);
+            double total = 0;
+            for (double latency : latencies) {
+                total += latency;
+            }
+            double mean = latencies.isEmpty() ? 0 : total / latencies.size();
+            double p95 = latencies.isEmpty() ? 0 : latencies.get((int) Math.ceil(latencies.size() * 0.95) - 1);
+            double max = latencies.isEmpty() ? 0 : latencies.get(latencies.size() - 1);
+            out.println(String.format(Locale.US, "%-12s %6d %8.1f %7.3f %7.1fms %7.1fms %7.1fms %7.2f %7.2f %8s",
+                    name, stats.utterances, stats.audioSeconds,
+                    stats.audioSeconds > 0 ? stats.decodeSeconds / stats.audioSeconds : 0,
+                    mean * 1000, p95 * 1000, max * 1000,
+                    stats.utterances > 0 ? 100.0 * stats.falseAccepts / stats.utterances : 0,
+                    stats.positives > 0 ? 100.0 * stats.falseRejects / stats.positives : 0,
+                    stats.negativeAudioSeconds > 0 ? String.format(Locale.US, "%.2f",
+                            stats.falseAccepts * 3600 / stats.negativeAudioSeconds) : "-"));
+        }
+    }
+
+    private static Stats getStats(LinkedHashMap<String, Stats> table, String name) {
+        Stats stats = table.get(name);
+        if (stats == null) {
+            stats = new Stats();
+            table.put(name, stats);
+        }
+        return stats;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.4f", value);
+    }
+
+    public static void main(String[] args) throws IOException {
+        File assetsDir = new File("app/src/main/assets/sync");
+        File corpusDir = null;
+        File keywordFile = null;
+        File csvFile = null;
+        DecoderProfile profile = DecoderProfile.BALANCED;
+        List<String[]> searches = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--assets":
+                    assetsDir = new File(value);
+                    break;
+                case "--corpus":
+                    corpusDir = new File(value);
+                    break;
+                case "--keywords":
+                    keywordFile = new File(value);
+                    break;
+                case "--csv":
+                    csvFile = new File(value);
+                    break;
+                case "--decoder-profile":
+                    profile = DecoderProfile.fromKey(value);
+                    if (profile == null) {
+                        usage("Unknown decoder profile " + value);
+                    }
+                    break;
+                case "--search":
+                    String[] parts = value.split(":", 3);
+                    if (parts.length != 3) {
+                        usage("Search must be name:MODEL:file");
+                    }
+                    searches.add(parts);
+                    break;
+                default:
+                    usage("Unknown option " + arg);
+            }
+        }
+        if (corpusDir == null) {
+            usage("The corpus folder is required");
+        }
+        if (searches.isEmpty()) {
+            searches.add(new String[] {"lights", "DEFAULT", "lights.gram"});
+            searches.add(new String[] {"music", "DEFAULT", "music.gram"});
+        }
+
+        RecognitionBenchmark benchmark = new RecognitionBenchmark(assetsDir, profile);
+        if (keywordFile != null) {
+            benchmark.addKeywordSearch(keywordFile);
+        }
+        for (String[] search : searches) {
+            File file = new File(search[2]);
+            if (!file.isAbsolute() && !file.exists()) {
+                file = new File(assetsDir, search[2]);
+            }
+            benchmark.addSearch(search[0], search[1], file);
+        }
+
+        PrintWriter csv = null;
+        try {
+            if (csvFile != null) {
+                csv = new PrintWriter(new FileWriter(csvFile));
+                benchmark.setCsvOutput(csv);
+            }
+            benchmark.run(corpusDir);
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+        }
+        benchmark.printReport(new PrintWriter(System.out));
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: RecognitionBenchmark --corpus dir [--assets dir] [--keywords commands.gram]"
+                + " [--search name:MODEL:file]... [--csv file] [--decoder-profile low_power|balanced|accurate]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,207 @@
+package com.matthewn4444.voiceautomation.benchmark;
+
+import com.matthewn4444.voiceautomation.speech.ThresholdProfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sweeps the threshold of each keyword phrase over a labelled corpus and picks the most sensitive
+ * threshold that stays under a target number of false alarms per hour. The chosen thresholds are
+ * written as a threshold profile that the app reads when generating its keyword list.
+ *
+ * Usage: ThresholdTuner --corpus dir --keywords commands.gram --profile thresholds.profile
+ *                       [--assets dir] [--target falseAlarmsPerHour] [--step exponentStep]
+ *
+ * The corpus is the "keywords" folder layout of the benchmark, every recording labelled with the
+ * phrase said in it. Recordings of other phrases and unlabelled recordings count as the audio a
+ * phrase should not be detected in. An existing profile is updated and its revision increased.
+ */
+public class ThresholdTuner {
+    private static final int MIN_EXPONENT = -50;
+    private static final int MAX_EXPONENT = 0;
+
+    private final RecognitionBenchmark mBenchmark;
+    private final List<AudioCorpus.Utterance> mCorpus;
+    private final File mKeywordFile;
+
+    public static class Choice {
+        public String threshold;
+        public double falseAlarmsPerHour;
+        public double recall;
+        public boolean meetsTarget;
+    }
+
+    public ThresholdTuner(File assetsDir, File corpusDir) throws IOException {
+        mBenchmark = new RecognitionBenchmark(assetsDir);
+        mCorpus = AudioCorpus.load(new File(corpusDir, RecognitionBenchmark.KEYWORD_SEARCH));
+        mKeywordFile = File.createTempFile("tune", ".gram");
+        mKeywordFile.deleteOnExit();
+    }
+
+    /**
+     * Finds the threshold of a phrase
+     * @param phrase keyword phrase
+     * @param target most false alarms per hour allowed
+     * @param step exponent step between the thresholds tried
+     * @return the chosen threshold, null if the corpus has no recordings of the phrase
+     * @throws IOException if the keyword file cannot be written
+     */
+    public Choice tune(String phrase, double target, int step) throws IOException {
+        int positives = 0;
+        double otherSeconds = 0;
+        for (AudioCorpus.Utterance utterance : mCorpus) {
+            if (phrase.equals(utterance.expected)) {
+                positives++;
+            } else {
+                otherSeconds += utterance.getDuration();
+            }
+        }
+        if (positives == 0 || otherSeconds == 0) {
+            return null;
+        }
+
+        // Go from the strictest to the most sensitive threshold and keep the last one under target
+        Choice best = null;
+        for (int exponent = MAX_EXPONENT; exponent >= MIN_EXPONENT; exponent -= step) {
+            String threshold = "1e" + exponent;
+            writeKeywordFile(phrase, threshold);
+            mBenchmark.addKeywordSearch(mKeywordFile);
+
+            int hits = 0;
+            int falseAlarms = 0;
+            for (AudioCorpus.Utterance utterance : mCorpus) {
+                boolean detected = contains(mBenchmark.decode(RecognitionBenchmark.KEYWORD_SEARCH,
+                        utterance.samples).hypothesis, phrase);
+                if (phrase.equals(utterance.expected)) {
+                    hits += detected ? 1 : 0;
+                } else {
+                    falseAlarms += detected ? 1 : 0;
+                }
+            }
+            Choice choice = new Choice();
+            choice.threshold = threshold;
+            choice.falseAlarmsPerHour = falseAlarms * 3600 / otherSeconds;
+            choice.recall = (double) hits / positives;
+            choice.meetsTarget = choice.falseAlarmsPerHour <= target;
+            if (best == null || choice.meetsTarget) {
+                best = choice;
+            } else {
+                // More sensitive thresholds only raise more false alarms
+                break;
+            }
+        }
+        return best;
+    }
+
+    private void writeKeywordFile(String phrase, String threshold) throws IOException {
+        Writer out = new FileWriter(mKeywordFile);
+        try {
+            out.write(phrase + " /" + threshold + "/\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean contains(String hypothesis, String phrase) {
+        if (hypothesis == null) {
+            return false;
+        }
+        String padded = " " + hypothesis + " ";
+        return padded.contains(" " + phrase + " ");
+    }
+
+    public static void main(String[] args) throws IOException {
+        File assetsDir = new File("app/src/main/assets/sync");
+        File corpusDir = null;
+        File keywordFile = null;
+        File profileFile = null;
+        double target = 0.5;
+        int step = 2;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--assets":
+                    assetsDir = new File(value);
+                    break;
+                case "--corpus":
+                    corpusDir = new File(value);
+                    break;
+                case "--keywords":
+                    keywordFile = new File(value);
+                    break;
+                case "--profile":
+                    profileFile = new File(value);
+                    break;
+                case "--target":
+                    target = Double.parseDouble(value);
+                    break;
+                case "--step":
+                    step = Math.max(1, Integer.parseInt(value));
+                    break;
+                default:
+                    usage("Unknown option " + arg);
+            }
+        }
+        if (corpusDir == null || keywordFile == null || profileFile == null) {
+            usage("The corpus, keywords and profile are required");
+        }
+
+        ThresholdProfile profile = new ThresholdProfile();
+        if (profileFile.exists()) {
+            InputStream in = new FileInputStream(profileFile);
+            try {
+                profile = ThresholdProfile.read(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        ThresholdTuner tuner = new ThresholdTuner(assetsDir, corpusDir);
+        for (String phrase : RecognitionBenchmark.readPhrases(keywordFile)) {
+            Choice choice = tuner.tune(phrase, target, step);
+            if (choice == null) {
+                System.out.println(String.format(Locale.US, "%-24s no recordings, kept %s", phrase,
+                        profile.getThreshold(phrase, "code default")));
+                continue;
+            }
+            System.out.println(String.format(Locale.US, "%-24s %-6s recall %5.1f%%  %.2f false alarms/hour%s",
+                    phrase, choice.threshold, choice.recall * 100, choice.falseAlarmsPerHour,
+                    choice.meetsTarget ? "" : "  (above target)"));
+            profile.setThreshold(phrase, choice.threshold);
+        }
+
+        profile.setRevision(profile.getRevision() + 1);
+        profile.setInfo("target_false_alarms_per_hour", String.valueOf(target));
+        profile.setInfo("corpus", corpusDir.getName());
+        profile.setInfo("tuned", new SimpleDateFormat("yyyy-MM-dd", Locale.US).format(new Date()));
+        Writer out = new FileWriter(profileFile);
+        try {
+            out.write("# Keyword detection thresholds per phrase, generate with the benchmark module's ThresholdTuner.\n");
+            out.write("# Phrases not listed here use the thresholds defined in code.\n");
+            profile.write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote revision " + profile.getRevision() + " to " + profileFile);
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("Usage: ThresholdTuner --corpus dir --keywords commands.gram --profile thresholds.profile"
+                + " [--assets dir] [--target falseAlarmsPerHour] [--step exponentStep]");
+        System.exit(1);
+    }
+}